@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex;
+
+import net.talpidae.multiflex.format.Chunk;
+import net.talpidae.multiflex.format.Descriptor;
+import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.ChunkCursor;
+import net.talpidae.multiflex.store.Store;
+import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.StoreOptions;
+import net.talpidae.multiflex.util.Wave;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * End-to-end store benchmark simulating a recorder: writes one chunk per second of recording with an integer,
+ * a text and a binary track, then performs random point look-ups and range scans.
+ * <p>
+ * The workload is configured using system properties (prefix "load."), ie. load.hours=24, load.samples=1000,
+ * load.encoding=INT32_DELTA_VAR_BYTE_FAST_PFOR, load.batch=3600, load.lookups=10000, load.scans=100,
+ * load.scanSeconds=600, load.journalMode=WAL, load.synchronous=NORMAL, load.readers=0, load.writerThread=false,
+ * load.file=/path/store.mfx.
+ */
+public class StoreLoadBenchmark
+{
+    private final int hours = Integer.getInteger("load.hours", 1);
+
+    private final int samples = Integer.getInteger("load.samples", 1000);
+
+    private final Encoding encoding = Encoding.valueOf(System.getProperty("load.encoding", Encoding.INT32_VAR_BYTE_FAST_PFOR.name()));
+
+    private final int batch = Integer.getInteger("load.batch", 0);
+
+    private final int lookups = Integer.getInteger("load.lookups", 10000);
+
+    private final int scans = Integer.getInteger("load.scans", 100);
+
+    private final int scanSeconds = Integer.getInteger("load.scanSeconds", 600);
+
+    private final StoreOptions options;
+
+    private final File file;
+
+
+    private StoreLoadBenchmark() throws IOException
+    {
+        final StoreOptions.Builder builder = StoreOptions.builder();
+        final String journalMode = System.getProperty("load.journalMode");
+        if (journalMode != null)
+        {
+            builder.journalMode(StoreOptions.JournalMode.valueOf(journalMode));
+        }
+
+        final String synchronous = System.getProperty("load.synchronous");
+        if (synchronous != null)
+        {
+            builder.synchronous(StoreOptions.Synchronous.valueOf(synchronous));
+        }
+
+        builder.readers(Integer.getInteger("load.readers", 0));
+        builder.writerThread(Boolean.getBoolean("load.writerThread"));
+        options = builder.build();
+
+        final String path = System.getProperty("load.file");
+        if (path != null)
+        {
+            file = new File(path);
+        }
+        else
+        {
+            file = File.createTempFile(StoreLoadBenchmark.class.getSimpleName(), ".mfx");
+            file.deleteOnExit();
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception
+    {
+        new StoreLoadBenchmark().run();
+    }
+
+
+    private static String formatLatencies(long[] latencies)
+    {
+        Arrays.sort(latencies);
+
+        return String.format("p50 %.1f us, p99 %.1f us, max %.1f us",
+                percentile(latencies, 0.5) / 1000.0, percentile(latencies, 0.99) / 1000.0, latencies[latencies.length - 1] / 1000.0);
+    }
+
+
+    private static long percentile(long[] sortedLatencies, double percentile)
+    {
+        return sortedLatencies[Math.min(sortedLatencies.length - 1, (int) (sortedLatencies.length * percentile))];
+    }
+
+
+    private static double perSecond(long count, long nanos)
+    {
+        return count / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+
+    private void run() throws StoreException
+    {
+        final long seconds = TimeUnit.HOURS.toSeconds(hours);
+        System.out.println("store: " + file + ", " + hours + " h, " + samples + " samples per chunk, " + encoding.name()
+                + ", batch: " + batch + ", journal mode: " + Objects.toString(options.getJournalMode(), "default")
+                + ", synchronous: " + Objects.toString(options.getSynchronous(), "default")
+                + ", readers: " + options.getReaders());
+
+        try (final Store store = Multiflex.openSqlite(file, true, options))
+        {
+            write(store, seconds);
+            lookup(store, seconds);
+            scan(store, seconds);
+        }
+
+        final File wal = new File(file.getPath() + "-wal");
+        System.out.println(String.format("file size: %.2f MB", (file.length() + (wal.exists() ? wal.length() : 0)) / (1024.0 * 1024.0)));
+    }
+
+
+    private void write(Store store, long seconds) throws StoreException
+    {
+        final Descriptor descriptor = store.descriptorBuilder()
+                .track(1, encoding)
+                .track(2, Encoding.UTF8_STRING)
+                .track(3, Encoding.BINARY)
+                .build();
+
+        final Chunk.Builder builder = store.chunkBuilder(descriptor);
+        final Random random = new Random(86);
+        final long[] latencies = new long[(int) seconds];
+        long bytes = 0;
+
+        final Store.Batch writeBatch = batch > 0 ? store.writeBatch(batch) : null;
+        final long begin = System.nanoTime();
+        for (long t = 0; t < seconds; ++t)
+        {
+            builder.timestamp(t);
+            builder.integers(1, Wave.sine(Short.MIN_VALUE, Short.MAX_VALUE, 1000, samples, (149 * random.nextDouble()) + 1));
+            final String text = "state-" + (t % 7);
+            builder.text(2, text);
+            builder.binary(3, ByteBuffer.wrap(new byte[]{0x17, 0x33, 0x44}));
+            final Chunk chunk = builder.build();
+
+            // uncompressed payload
+            bytes += samples * 4L + text.length() + 3;
+
+            final long putBegin = System.nanoTime();
+            if (writeBatch != null)
+            {
+                writeBatch.put(chunk);
+            }
+            else
+            {
+                store.put(chunk);
+            }
+            latencies[(int) t] = System.nanoTime() - putBegin;
+        }
+
+        if (writeBatch != null)
+        {
+            writeBatch.close();
+        }
+        final long elapsed = System.nanoTime() - begin;
+
+        System.out.println(String.format("write:  %.0f chunks/s, %.2f MB/s, put latency %s",
+                perSecond(seconds, elapsed), perSecond(bytes, elapsed) / (1024.0 * 1024.0), formatLatencies(latencies)));
+    }
+
+
+    private void lookup(Store store, long seconds) throws StoreException
+    {
+        final Random random = new Random(69);
+        final long[] latencies = new long[Math.max(1, lookups)];
+        long bytes = 0;
+
+        final long begin = System.nanoTime();
+        for (int i = 0; i < lookups; ++i)
+        {
+            final long lookupBegin = System.nanoTime();
+            final Chunk chunk = store.findByTimestamp((long) (random.nextDouble() * seconds));
+            bytes += chunk.getIntegers(1).length * 4L;
+            latencies[i] = System.nanoTime() - lookupBegin;
+        }
+        final long elapsed = System.nanoTime() - begin;
+
+        System.out.println(String.format("lookup: %.0f chunks/s, %.2f MB/s, latency %s",
+                perSecond(lookups, elapsed), perSecond(bytes, elapsed) / (1024.0 * 1024.0), formatLatencies(latencies)));
+    }
+
+
+    private void scan(Store store, long seconds) throws StoreException
+    {
+        final Random random = new Random(42);
+        final long[] latencies = new long[Math.max(1, scans)];
+        long chunks = 0;
+        long bytes = 0;
+
+        final long begin = System.nanoTime();
+        for (int i = 0; i < scans; ++i)
+        {
+            final long scanBegin = System.nanoTime();
+            final long tsBegin = (long) (random.nextDouble() * Math.max(1, seconds - scanSeconds));
+            try (final ChunkCursor cursor = store.scan(tsBegin, tsBegin + scanSeconds))
+            {
+                while (cursor.hasNext())
+                {
+                    bytes += cursor.next().getIntegers(1).length * 4L;
+                    ++chunks;
+                }
+            }
+            latencies[i] = System.nanoTime() - scanBegin;
+        }
+        final long elapsed = System.nanoTime() - begin;
+
+        System.out.println(String.format("scan:   %.0f chunks/s, %.2f MB/s, latency %s",
+                perSecond(chunks, elapsed), perSecond(bytes, elapsed) / (1024.0 * 1024.0), formatLatencies(latencies)));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.StoreException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of the binary encodings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockEncodingBenchmark
+{
+    @Param({"1024", "65536"})
+    public int length;
+
+    @Param({"BINARY", "BINARY_DEFLATE", "BINARY_LZ4"})
+    public Encoding encoding;
+
+    private ByteBuffer binary;
+
+    private ByteBuffer encodeBuffer;
+
+    private ByteBuffer encoded;
+
+    private ByteBuffer decoded;
+
+
+    @Setup
+    public void setup()
+    {
+        // semi-structured payload like serialized records
+        final Random random = new Random(42);
+        final StringBuilder payload = new StringBuilder(length);
+        while (payload.length() < length)
+        {
+            payload.append("{\"state\":\"").append(random.nextBoolean() ? "RUNNING" : "IDLE")
+                    .append("\",\"value\":").append(random.nextInt(1000)).append("}\n");
+        }
+
+        binary = ByteBuffer.wrap(payload.substring(0, length).getBytes(StandardCharsets.UTF_8));
+
+        encodeBuffer = ByteBuffer.allocate(Encoder.maxEncodedBlockBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+
+        encoded = ByteBuffer.allocate(Encoder.maxEncodedBlockBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+        Encoder.encodeBinary(binary.duplicate(), encoded, encoding);
+        encoded.flip();
+
+        decoded = ByteBuffer.allocate(length);
+    }
+
+
+    @Benchmark
+    public ByteBuffer encode()
+    {
+        encodeBuffer.clear();
+        Encoder.encodeBinary(binary.duplicate(), encodeBuffer, encoding);
+
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer decode() throws StoreException
+    {
+        decoded.clear();
+        Encoder.decodeBinary(encoded.duplicate(), length, decoded, encoding);
+
+        return decoded;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Chunk;
+import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.util.Signal;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of building a chunk with an integer, a text and a binary track and of decoding its integers again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkBenchmark
+{
+    @Param({"INT32_VAR_BYTE_FAST_PFOR", "INT32_DELTA_VAR_BYTE_FAST_PFOR", "INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR", "INT32_AUTO", "INT32_RLE", "INT32_DELTA_ZIGZAG_FAST_PFOR"})
+    public Encoding encoding;
+
+    @Param({"64", "1000", "16384"})
+    public int length;
+
+    @Param({"SINE", "RANDOM", "SAMPLE"})
+    public Signal signal;
+
+    private int[] integers;
+
+    private final ByteBuffer binary = ByteBuffer.wrap(new byte[]{0x17, 0x33, 0x44});
+
+    private BaseChunk.Builder builder;
+
+    private BaseChunk chunk;
+
+
+    @Setup
+    public void setup() throws StoreException
+    {
+        integers = signal.create(length);
+        builder = new BaseChunk.Builder(DescriptorBenchmark.createDescriptor(new int[]{1, 2, 3},
+                new Encoding[]{encoding, Encoding.UTF8_STRING, Encoding.BINARY}), null);
+
+        chunk = (BaseChunk) build();
+    }
+
+
+    @Benchmark
+    public Chunk build() throws StoreException
+    {
+        builder.timestamp(1L);
+        builder.integers(1, integers);
+        builder.text(2, "blub");
+        builder.binary(3, binary.duplicate());
+
+        return builder.build();
+    }
+
+    @Benchmark
+    public int[] getIntegers() throws StoreException
+    {
+        // use a fresh chunk every time, the index is decompressed lazily
+        return new BaseChunk(chunk.getDescriptor(), 1000000L, 1000000L, chunk.getData(), null, null, null).getIntegers(1);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.StoreException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of decoding descriptors (done for every descriptor cache miss).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DescriptorBenchmark
+{
+    private static final UUID STORE_ID = UUID.randomUUID();
+
+    @Param({"1", "16", "256"})
+    public int trackCount;
+
+    private ByteBuffer encoded;
+
+
+    /**
+     * Create a descriptor without a store.
+     */
+    static BaseDescriptor createDescriptor(int[] trackIds, Encoding[] encodings) throws StoreException
+    {
+        return BaseDescriptor.decode(encode(trackIds, encodings), 1L, STORE_ID);
+    }
+
+
+    private static ByteBuffer encode(int[] trackIds, Encoding[] encodings) throws StoreException
+    {
+        final int[] ordinals = new int[encodings.length];
+        for (int i = 0; i < encodings.length; ++i)
+        {
+            ordinals[i] = encodings[i].ordinal();
+        }
+
+        // same layout as BaseDescriptor.encode()
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + Encoder.maxEncodedIntegersBytes(trackIds.length) * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(trackIds.length);
+        Encoder.encodeIntegers(trackIds, buffer, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR);
+        Encoder.encodeIntegers(ordinals, buffer, Encoding.INT32_VAR_BYTE_FAST_PFOR);
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    @Setup
+    public void setup() throws StoreException
+    {
+        final int[] trackIds = new int[trackCount];
+        final Encoding[] encodings = new Encoding[trackCount];
+        for (int i = 0; i < trackCount; ++i)
+        {
+            trackIds[i] = i * 3 + 1;
+            encodings[i] = Encoding.values.get(1 + (i % (Encoding.values.size() - 1)));
+        }
+
+        encoded = createDescriptor(trackIds, encodings).encode();
+        encoded.flip();
+    }
+
+
+    @Benchmark
+    public BaseDescriptor decode() throws StoreException
+    {
+        return BaseDescriptor.decode(encoded.duplicate(), 1L, STORE_ID);
+    }
+}
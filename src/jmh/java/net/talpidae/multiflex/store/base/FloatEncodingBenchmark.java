@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.util.XorEncoding;
+import net.talpidae.multiflex.util.Signal;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of the float[] and double[] encodings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FloatEncodingBenchmark
+{
+    @Param({"64", "1000", "16384"})
+    public int length;
+
+    @Param({"SINE", "RANDOM", "SAMPLE"})
+    public Signal signal;
+
+    private float[] floats;
+
+    private double[] doubles;
+
+    private ByteBuffer encodeBuffer;
+
+    private ByteBuffer encodedFloats;
+
+    private ByteBuffer encodedDoubles;
+
+    private float[] decodedFloats;
+
+    private double[] decodedDoubles;
+
+
+    @Setup
+    public void setup() throws StoreException
+    {
+        // scaled to fractions like sensor readings
+        final int[] integers = signal.create(length);
+        floats = new float[length];
+        doubles = new double[length];
+        for (int i = 0; i < length; ++i)
+        {
+            floats[i] = integers[i] / 100f;
+            doubles[i] = integers[i] / 100.0;
+        }
+
+        encodeBuffer = ByteBuffer.allocate(XorEncoding.maxEncodedDoublesBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+
+        encodedFloats = ByteBuffer.allocate(XorEncoding.maxEncodedFloatsBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+        Encoder.encodeFloats(floats, encodedFloats, Encoding.FLOAT32_XOR);
+        encodedFloats.flip();
+
+        encodedDoubles = ByteBuffer.allocate(XorEncoding.maxEncodedDoublesBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+        Encoder.encodeDoubles(doubles, encodedDoubles, Encoding.FLOAT64_XOR);
+        encodedDoubles.flip();
+
+        decodedFloats = new float[length];
+        decodedDoubles = new double[length];
+    }
+
+
+    @Benchmark
+    public ByteBuffer encodeFloats() throws StoreException
+    {
+        encodeBuffer.clear();
+        Encoder.encodeFloats(floats, encodeBuffer, Encoding.FLOAT32_XOR);
+
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeDoubles() throws StoreException
+    {
+        encodeBuffer.clear();
+        Encoder.encodeDoubles(doubles, encodeBuffer, Encoding.FLOAT64_XOR);
+
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public float[] decodeFloats() throws StoreException
+    {
+        Encoder.decodeFloats(encodedFloats.duplicate(), decodedFloats, 0, length, Encoding.FLOAT32_XOR);
+
+        return decodedFloats;
+    }
+
+    @Benchmark
+    public double[] decodeDoubles() throws StoreException
+    {
+        Encoder.decodeDoubles(encodedDoubles.duplicate(), decodedDoubles, 0, length, Encoding.FLOAT64_XOR);
+
+        return decodedDoubles;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.util.Signal;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of Encoder.encodeIntegers() and Encoder.decodeIntegers() for all int[] encodings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntegerEncodingBenchmark
+{
+    @Param({"INT32_VAR_BYTE_FAST_PFOR", "INT32_DELTA_VAR_BYTE_FAST_PFOR", "INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR", "INT32_AUTO", "INT32_RLE", "INT32_DELTA_ZIGZAG_FAST_PFOR"})
+    public Encoding encoding;
+
+    @Param({"64", "1000", "16384"})
+    public int length;
+
+    @Param({"SINE", "RANDOM", "SAMPLE"})
+    public Signal signal;
+
+    private int[] integers;
+
+    private ByteBuffer encodeBuffer;
+
+    private ByteBuffer encoded;
+
+    private int[] decoded;
+
+
+    @Setup
+    public void setup() throws StoreException
+    {
+        integers = signal.create(length);
+        encodeBuffer = ByteBuffer.allocate(Encoder.maxEncodedIntegersBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(Encoder.maxEncodedIntegersBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+        Encoder.encodeIntegers(integers, buffer, encoding);
+        buffer.flip();
+        encoded = buffer;
+
+        decoded = new int[length];
+    }
+
+
+    @Benchmark
+    public ByteBuffer encode() throws StoreException
+    {
+        encodeBuffer.clear();
+        Encoder.encodeIntegers(integers, encodeBuffer, encoding);
+
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public int[] decode() throws StoreException
+    {
+        return Encoder.decodeIntegers(encoded.duplicate().order(ByteOrder.LITTLE_ENDIAN), length, encoding);
+    }
+
+    @Benchmark
+    public int[] decodeInto() throws StoreException
+    {
+        Encoder.decodeIntegers(encoded.duplicate().order(ByteOrder.LITTLE_ENDIAN), decoded, 0, length, encoding);
+
+        return decoded;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.util.LongEncoding;
+import net.talpidae.multiflex.util.Signal;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of the long[] encodings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LongEncodingBenchmark
+{
+    @Param({"INT64_DELTA_OF_DELTA", "INT64_ZIGZAG_VAR_BYTE"})
+    public Encoding encoding;
+
+    @Param({"64", "1000", "16384"})
+    public int length;
+
+    @Param({"SINE", "RANDOM", "SAMPLE"})
+    public Signal signal;
+
+    private long[] longs;
+
+    private ByteBuffer encodeBuffer;
+
+    private ByteBuffer encoded;
+
+    private long[] decoded;
+
+
+    @Setup
+    public void setup() throws StoreException
+    {
+        // nanosecond timestamps at 1 kHz with the signal as jitter
+        final int[] jitter = signal.create(length);
+        longs = new long[length];
+        for (int i = 0; i < length; ++i)
+        {
+            longs[i] = 1500000000000000000L + i * 1000000L + jitter[i];
+        }
+
+        encodeBuffer = ByteBuffer.allocate(LongEncoding.maxEncodedLongsBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+
+        encoded = ByteBuffer.allocate(LongEncoding.maxEncodedLongsBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+        Encoder.encodeLongs(longs, encoded, encoding);
+        encoded.flip();
+
+        decoded = new long[length];
+    }
+
+
+    @Benchmark
+    public ByteBuffer encode() throws StoreException
+    {
+        encodeBuffer.clear();
+        Encoder.encodeLongs(longs, encodeBuffer, encoding);
+
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public long[] decode() throws StoreException
+    {
+        Encoder.decodeLongs(encoded.duplicate(), decoded, 0, length, encoding);
+
+        return decoded;
+    }
+}
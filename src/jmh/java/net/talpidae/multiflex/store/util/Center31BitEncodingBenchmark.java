@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.util;
+
+import net.talpidae.multiflex.util.Signal;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of the Center31BitEncoding transformation alone (without integer compression).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Center31BitEncodingBenchmark
+{
+    @Param({"64", "1000", "16384"})
+    public int length;
+
+    @Param({"SINE", "RANDOM", "SAMPLE"})
+    public Signal signal;
+
+    private int[] curve;
+
+    private int[] encoded;
+
+    private int[] encodedOut;
+
+    private int[] decodedOut;
+
+
+    @Setup
+    public void setup()
+    {
+        curve = signal.create(length);
+        encoded = Center31BitEncoding.encode(curve);
+        encodedOut = new int[Center31BitEncoding.maxEncodedLength(length)];
+        decodedOut = new int[length];
+    }
+
+
+    @Benchmark
+    public int[] encode()
+    {
+        return Center31BitEncoding.encode(curve);
+    }
+
+    @Benchmark
+    public int[] decode()
+    {
+        return Center31BitEncoding.decode(encoded);
+    }
+
+    @Benchmark
+    public int encodeRange()
+    {
+        return Center31BitEncoding.encode(curve, 0, curve.length, encodedOut, 0);
+    }
+
+    @Benchmark
+    public int decodeRange()
+    {
+        return Center31BitEncoding.decode(encoded, 0, encoded.length, decodedOut, 0, decodedOut.length);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Random;
+
+
+/**
+ * Signal shapes used as benchmark input.
+ */
+public enum Signal
+{
+    /**
+     * Smooth sine wave, 16-bit amplitude.
+     */
+    SINE
+            {
+                @Override
+                public int[] create(int length)
+                {
+                    return Wave.sine(Short.MIN_VALUE, Short.MAX_VALUE, length, 1000, 5);
+                }
+            },
+
+    /**
+     * Uniformly distributed noise, 16-bit amplitude.
+     */
+    RANDOM
+            {
+                @Override
+                public int[] create(int length)
+                {
+                    final Random random = new Random(86);
+                    final int[] signal = new int[length];
+                    for (int i = 0; i < length; ++i)
+                    {
+                        signal[i] = random.nextInt(Short.MAX_VALUE - Short.MIN_VALUE + 1) + Short.MIN_VALUE;
+                    }
+
+                    return signal;
+                }
+            },
+
+    /**
+     * Recorded sample series (test_series.asc in the working directory), repeated as necessary.
+     */
+    SAMPLE
+            {
+                @Override
+                public int[] create(int length)
+                {
+                    final int[] samples;
+                    try
+                    {
+                        samples = SampleFile.readToIntArray(Paths.get("test_series.asc"));
+                    }
+                    catch (IOException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+
+                    final int[] signal = new int[length];
+                    for (int i = 0; i < length; ++i)
+                    {
+                        signal[i] = samples[i % samples.length];
+                    }
+
+                    return signal;
+                }
+            };
+
+
+    /**
+     * Create a signal with the specified number of samples.
+     */
+    public abstract int[] create(int length);
+}
@@ -20,8 +20,10 @@ package net.talpidae.multiflex;
 
 import net.talpidae.multiflex.store.Store;
 import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.StoreOptions;
 import net.talpidae.multiflex.store.sqlite.AlmworksSqliteDAO;
 import net.talpidae.multiflex.store.base.BaseStore;
+import net.talpidae.multiflex.store.base.ConcurrentStore;
 
 import java.io.File;
 
@@ -38,7 +40,27 @@ public class Multiflex
      */
     public static Store openSqlite(File dbFile, boolean writable) throws StoreException
     {
-        final Store store = new BaseStore(new AlmworksSqliteDAO(dbFile));
+        return openSqlite(dbFile, writable, StoreOptions.DEFAULT);
+    }
+
+    /**
+     * Open the store at the specified location read-write or read-only using the regular SQLite wrapper.
+     * <p>
+     * Stores with a writer thread or concurrent readers confine their connections to threads of their own,
+     * so putAsync() returns without waiting for the writer.
+     *
+     * @param dbFile   The store file
+     * @param writable Open the store in writable mode or not
+     * @param options  Tuning options applied before the schema is initialized, may enable concurrent readers
+     *                 or a writer thread
+     * @return An open store instance
+     */
+    public static Store openSqlite(File dbFile, boolean writable, StoreOptions options) throws StoreException
+    {
+        final Store store = writable && options.isWriterThread() || options.getReaders() > 0
+                ? new ConcurrentStore(() -> new BaseStore(new AlmworksSqliteDAO(dbFile, options)),
+                                      options.getReaders(), options.getWriteQueueCapacity())
+                : new BaseStore(new AlmworksSqliteDAO(dbFile, options));
         try
         {
             return store.open(writable);
@@ -20,10 +20,11 @@ package net.talpidae.multiflex.format;
 import net.talpidae.multiflex.store.StoreException;
 
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 
 /**
- * A chunk represents a single part of a track of exactly one second length.
+ * A chunk represents a single part of a track, one second long unless a different duration is specified.
  */
 public interface Chunk extends AutoCloseable
 {
@@ -33,15 +34,71 @@ public interface Chunk extends AutoCloseable
     Descriptor getDescriptor();
 
     /**
-     * Get the chunk's timestamp in microseconds since the containing store's epoch.
+     * Get the chunk's timestamp in seconds since the containing store's epoch (rounded down).
      */
     long getTimestamp();
 
+    /**
+     * Get the chunk's timestamp in microseconds since the containing store's epoch.
+     */
+    long getTimestampMicros();
+
+    /**
+     * Get the length of the time span covered by this chunk in microseconds.
+     */
+    long getDurationMicros();
+
     /**
      * Get the integers for the field identified by the specified track ID.
      */
     int[] getIntegers(int trackId) throws StoreException;
 
+    /**
+     * Get the number of integers stored for the field identified by the specified track ID (must be of an integer type).
+     * <p>
+     * This only reads the chunk's index and does not decode the field.
+     *
+     * @return The number of integers or -1 if there is no such track
+     */
+    int getIntegerCount(int trackId) throws StoreException;
+
+    /**
+     * Decode the integers for the field identified by the specified track ID into a caller supplied array.
+     *
+     * @param trackId    The ID of the track to get the data for
+     * @param dest       The array to store the integers in
+     * @param destOffset The index of dest at which to store the first integer
+     * @return The number of integers stored in dest or -1 if there is no such track
+     * @throws IndexOutOfBoundsException If dest can't hold getIntegerCount(trackId) integers starting at destOffset
+     */
+    int getIntegers(int trackId, int[] dest, int destOffset) throws StoreException;
+
+    /**
+     * Decode the integers for the field identified by the specified track ID into a caller supplied buffer.
+     * <p>
+     * The integers are stored at the buffer's position which is advanced accordingly.
+     * Buffers not backed by an accessible array require an additional copy.
+     *
+     * @return The number of integers stored in dest or -1 if there is no such track
+     * @throws java.nio.BufferOverflowException If the buffer has less than getIntegerCount(trackId) remaining
+     */
+    int getIntegers(int trackId, IntBuffer dest) throws StoreException;
+
+    /**
+     * Get the longs for the field identified by the specified track ID (must be of a 64-bit integer type).
+     */
+    long[] getLongs(int trackId) throws StoreException;
+
+    /**
+     * Get the floats for the field identified by the specified track ID (must be of a 32-bit floating-point type).
+     */
+    float[] getFloats(int trackId) throws StoreException;
+
+    /**
+     * Get the doubles for the field identified by the specified track ID (must be of a 64-bit floating-point type).
+     */
+    double[] getDoubles(int trackId) throws StoreException;
+
     /**
      * Get the text for the field identified by the specified track ID (must be of a text type).
      */
@@ -52,6 +109,62 @@ public interface Chunk extends AutoCloseable
      */
     ByteBuffer getBinary(int trackId) throws StoreException;
 
+    /**
+     * Decode the binary data for the field identified by the specified track ID into a caller supplied buffer.
+     * <p>
+     * The bytes are stored at the buffer's position which is advanced accordingly.
+     *
+     * @return The number of bytes stored in dest or -1 if there is no such track
+     * @throws java.nio.BufferOverflowException If the buffer has less remaining than the field's uncompressed length
+     */
+    int getBinary(int trackId, ByteBuffer dest) throws StoreException;
+
+    /**
+     * Get the statistics of the integers stored for the field identified by the specified track ID.
+     * <p>
+     * The statistics are computed when the chunk is built and stored alongside it, the field is not decoded.
+     *
+     * @return The statistics or null if there is no such track, it isn't an int[] track or the chunk has none
+     */
+    Stats getStats(int trackId) throws StoreException;
+
+
+    /**
+     * Statistics of the integers of a single field.
+     */
+    interface Stats
+    {
+        /**
+         * Get the number of integers.
+         */
+        int getCount();
+
+        /**
+         * Get the smallest integer (0 if there are none).
+         */
+        int getMin();
+
+        /**
+         * Get the largest integer (0 if there are none).
+         */
+        int getMax();
+
+        /**
+         * Get the sum of all integers.
+         */
+        long getSum();
+
+        /**
+         * Get the first integer (0 if there are none).
+         */
+        int getFirst();
+
+        /**
+         * Get the last integer (0 if there are none).
+         */
+        int getLast();
+    }
+
 
     /**
      * A re-usable builder for chunks.
@@ -63,6 +176,21 @@ public interface Chunk extends AutoCloseable
          */
         Builder timestamp(long timestamp);
 
+        /**
+         * Set the timestamp for this chunk in microseconds since the store's epoch.
+         */
+        Builder timestampMicros(long timestampMicros);
+
+        /**
+         * Set the length of the time span covered by this chunk in microseconds (default: one second).
+         * <p>
+         * Chunks of the same store should not overlap, long chunks reduce the per-chunk overhead of low-rate tracks,
+         * short chunks keep the fields of high-rate tracks small.
+         *
+         * @throws IllegalArgumentException If durationMicros is not positive
+         */
+        Builder durationMicros(long durationMicros);
+
         /**
          * Set integer data for the track with ID trackId.
          *
@@ -73,8 +201,40 @@ public interface Chunk extends AutoCloseable
          */
         Builder integers(int trackId, int[] integers) throws StoreException;
 
+        /**
+         * Set 64-bit integer data for the track with ID trackId.
+         *
+         * @param trackId The ID of the track to set the data for
+         * @param longs   An array of longs
+         * @return This instance
+         * @throws StoreException If the data could not be set
+         */
+        Builder longs(int trackId, long[] longs) throws StoreException;
+
+        /**
+         * Set 32-bit floating-point data for the track with ID trackId.
+         *
+         * @param trackId The ID of the track to set the data for
+         * @param floats  An array of floats
+         * @return This instance
+         * @throws StoreException If the data could not be set
+         */
+        Builder floats(int trackId, float[] floats) throws StoreException;
+
+        /**
+         * Set 64-bit floating-point data for the track with ID trackId.
+         *
+         * @param trackId The ID of the track to set the data for
+         * @param doubles An array of doubles
+         * @return This instance
+         * @throws StoreException If the data could not be set
+         */
+        Builder doubles(int trackId, double[] doubles) throws StoreException;
+
         /**
          * Set text data for the track with ID trackId.
+         * <p>
+         * UTF8_DICTIONARY encoded text is added to the dictionary of the store when the chunk is put.
          *
          * @param trackId The ID of the track to set the data for
          * @param text    A String with the text data
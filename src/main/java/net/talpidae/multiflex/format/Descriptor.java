@@ -39,6 +39,12 @@ public interface Descriptor extends Iterable<Track>
     {
         Builder track(int trackId, Encoding encoding);
 
+        /**
+         * Add a track using a lossy encoding (INT32_CENTER31BIT_LOSSY) that guarantees
+         * |decoded - original| &lt;= maxError for every value.
+         */
+        Builder track(int trackId, Encoding encoding, int maxError);
+
         /**
          * Builds a descriptor with the specified tracks and resets this builder.
          */
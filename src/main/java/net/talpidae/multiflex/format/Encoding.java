@@ -57,7 +57,78 @@ public enum Encoding
      * Array of 32-bit signed integers that doesn't contain the number -2147483648,
      * compressed using an arithmetic coding scheme, VariableByte and FastPFOR, 0x4
      */
-    INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR;
+    INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR,
+
+    /**
+     * Array of 32-bit IEEE 754 floating-point numbers, each XORed with its predecessor and stored
+     * using only the meaningful bits (lossless), 0x5
+     */
+    FLOAT32_XOR,
+
+    /**
+     * Array of 64-bit IEEE 754 floating-point numbers, each XORed with its predecessor and stored
+     * using only the meaningful bits (lossless), 0x6
+     */
+    FLOAT64_XOR,
+
+    /**
+     * Array of 64-bit signed integers, compressed by storing the differences between successive deltas
+     * using variable length bit fields (a single bit for series with a constant rate of change), 0x7
+     */
+    INT64_DELTA_OF_DELTA,
+
+    /**
+     * Array of 64-bit signed integers, zig-zag encoded and compressed using VariableByte, 0x8
+     */
+    INT64_ZIGZAG_VAR_BYTE,
+
+    /**
+     * Array of 32-bit signed integers, compressed using the int[] encoding that performs best on a sample
+     * of the array, selected separately for every chunk and stored as a leading tag byte, 0x9
+     */
+    INT32_AUTO,
+
+    /**
+     * Array of 32-bit signed integers, stored as runs of equal values with the run values and lengths
+     * compressed using VariableByte and FastPFOR, 0xA
+     */
+    INT32_RLE,
+
+    /**
+     * Array of 32-bit signed integers, stored as zigzag mapped deltas compressed using VariableByte and FastPFOR, 0xB
+     */
+    INT32_DELTA_ZIGZAG_FAST_PFOR,
+
+    /**
+     * UTF-8 string stored once per store in a dictionary, fields only contain its ID, 0xC
+     */
+    UTF8_DICTIONARY,
+
+    /**
+     * Binary data compressed using Deflate (raw, without zlib header), 0xD
+     */
+    BINARY_DEFLATE,
+
+    /**
+     * Binary data compressed using the LZ4 block format, 0xE
+     */
+    BINARY_LZ4,
+
+    /**
+     * UTF-8 string compressed using Deflate (raw, without zlib header), 0xF
+     */
+    UTF8_DEFLATE,
+
+    /**
+     * UTF-8 string compressed using the LZ4 block format, 0x10
+     */
+    UTF8_LZ4,
+
+    /**
+     * Array of 32-bit signed integers that doesn't contain the number -2147483648, compressed like
+     * INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR but lossy: decoded values differ by at most the track's max error, 0x11
+     */
+    INT32_CENTER31BIT_LOSSY;
 
     public static final List<Encoding> values = Arrays.asList(values());
 }
@@ -22,4 +22,12 @@ public interface Track
     int getId();
 
     Encoding getEncoding();
+
+    /**
+     * Maximum absolute error of decoded values, only non-zero for tracks using a lossy encoding.
+     */
+    default int getMaxError()
+    {
+        return 0;
+    }
 }
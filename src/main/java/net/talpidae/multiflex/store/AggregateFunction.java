@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store;
+
+
+/**
+ * Functions that Store.aggregate() computes over the integers of each time window.
+ */
+public enum AggregateFunction
+{
+    /**
+     * Smallest integer (NaN for empty windows).
+     */
+    MIN,
+
+    /**
+     * Largest integer (NaN for empty windows).
+     */
+    MAX,
+
+    /**
+     * Arithmetic mean of the integers (NaN for empty windows).
+     */
+    AVG,
+
+    /**
+     * Number of integers.
+     */
+    COUNT,
+
+    /**
+     * First integer of the window's first non-empty chunk (NaN for empty windows).
+     */
+    FIRST,
+
+    /**
+     * Last integer of the window's last non-empty chunk (NaN for empty windows).
+     */
+    LAST
+}
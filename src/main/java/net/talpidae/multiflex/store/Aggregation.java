@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store;
+
+
+/**
+ * Columnar result of Store.aggregate(): one value per time window for each requested function.
+ */
+public interface Aggregation
+{
+    /**
+     * Get the number of windows.
+     */
+    int size();
+
+    /**
+     * Get the first timestamp (in seconds since epoch) of every window.
+     */
+    long[] getTimestamps();
+
+    /**
+     * Get the value of the specified function for every window.
+     *
+     * @throws IllegalArgumentException If the function has not been requested
+     */
+    double[] getValues(AggregateFunction function);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store;
+
+import net.talpidae.multiflex.format.Chunk;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Iterates over chunks that are loaded from the store one at a time.
+ * <p>
+ * The methods of Iterator throw an UncheckedStoreException in case a chunk can't be read.
+ * A cursor must be closed after use and be used from the thread that created it.
+ */
+public interface ChunkCursor extends Iterator<Chunk>, AutoCloseable
+{
+    /**
+     * Get a sequential Stream view of the remaining chunks. Closing the stream closes this cursor.
+     */
+    default Stream<Chunk> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() ->
+                {
+                    try
+                    {
+                        close();
+                    }
+                    catch (StoreException e)
+                    {
+                        throw new UncheckedStoreException(e);
+                    }
+                });
+    }
+
+    /**
+     * Release all resources held by this cursor. This instance can't be used afterwards.
+     */
+    @Override
+    void close() throws StoreException;
+}
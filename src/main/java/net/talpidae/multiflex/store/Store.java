@@ -24,6 +24,7 @@ import net.talpidae.multiflex.format.Descriptor;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -44,14 +45,65 @@ public interface Store extends AutoCloseable
 
     /**
      * Insert new or replace existing chunk.
+     * <p>
+     * The chunk is committed by itself before returning, even if a batch is open (its pending chunks are committed first).
      */
     void put(Chunk chunk) throws StoreException;
 
     /**
-     * Find a single chunk by exact timestamp (in seconds since epoch).
+     * Insert new or replace existing chunk without waiting for it to be written.
+     * <p>
+     * Stores with a dedicated writer thread queue the chunk and commit all queued chunks together,
+     * blocking the caller only while the queue is full. Other stores write the chunk before returning.
+     *
+     * @return A future that completes once the chunk has been committed or fails with a StoreException
+     */
+    CompletableFuture<Void> putAsync(Chunk chunk);
+
+    /**
+     * Insert new or replace existing chunks, committing them in batches of a default size.
+     * <p>
+     * In case of an error the chunks of already committed batches stay in the store.
+     */
+    void putAll(Iterable<? extends Chunk> chunks) throws StoreException;
+
+    /**
+     * Begin a write batch with a default maximum batch size.
+     *
+     * @see #writeBatch(int)
+     */
+    Batch writeBatch() throws StoreException;
+
+    /**
+     * Begin a write batch. Chunks put into the batch share a transaction that is committed every time
+     * maxBatchSize chunks are pending and when the batch is flushed or closed.
+     * <p>
+     * Only one batch may be open at a time, other operations on this store join the batch's transaction
+     * (an operation failing within the batch only rolls back its own changes). Chunks written by put() and
+     * putAsync() are not part of the batch, they commit the pending chunks and are committed by themselves.
+     * Registering a new descriptor or dictionary value (when putting the first chunk using it) commits the pending
+     * chunks, it is committed by itself so that a later rollback can't take back its ID.
+     *
+     * @param maxBatchSize Maximum number of chunks written per transaction
+     * @return A new batch that must be closed to commit the remaining chunks
+     */
+    Batch writeBatch(int maxBatchSize) throws StoreException;
+
+    /**
+     * Find a single chunk by exact timestamp (in seconds since epoch), the chunk must begin at the full second.
+     * <p>
+     * If the chunk has been merged by compact(), the part that began at this timestamp is returned.
      */
     Chunk findByTimestamp(long ts) throws StoreException;
 
+    /**
+     * Find a single chunk by exact timestamp (in seconds since epoch), reading only the data of the specified track.
+     * <p>
+     * The chunk is read using a single statement and only the index and the track's field are copied and decoded,
+     * accessing other tracks of the returned chunk fails though. The database still reads the whole chunk from disk.
+     */
+    Chunk findByTimestamp(long ts, int trackId) throws StoreException;
+
     /**
      * Find chunks by timestamp (in seconds since epoch) range.
      *
@@ -61,6 +113,81 @@ public interface Store extends AutoCloseable
      */
     List<Chunk> findByTimestampRange(long tsFirst, long tsLast) throws StoreException;
 
+    /**
+     * Iterate over the chunks within the timestamp (in seconds since epoch) range, loading one chunk at a time.
+     * <p>
+     * Unlike findByTimestampRange() the memory used is independent of the length of the range.
+     *
+     * @param tsFirst The begin of the range (inclusive)
+     * @param tsLast  The upper limit of the range (exclusive, same as findByTimestampRange())
+     * @return An open cursor that must be closed after use
+     */
+    ChunkCursor scan(long tsFirst, long tsLast) throws StoreException;
+
+    /**
+     * Iterate over the chunks beginning within the timestamp (in microseconds since epoch) range, loading one chunk at a time.
+     *
+     * @param tsFirstMicros The begin of the range (inclusive)
+     * @param tsLastMicros  The upper limit of the range (exclusive)
+     * @return An open cursor that must be closed after use
+     * @see #scan(long, long)
+     */
+    ChunkCursor scanMicros(long tsFirstMicros, long tsLastMicros) throws StoreException;
+
+    /**
+     * Aggregate the integers of a track over consecutive time windows of equal length.
+     * <p>
+     * The stored statistics of each chunk are used, only chunks stored without statistics are decoded.
+     * Each chunk is attributed to the window containing its begin. Memory use only depends on the number of windows.
+     *
+     * @param trackId       The ID of the int[] track to aggregate
+     * @param tsFirst       The begin of the range and the first window (inclusive)
+     * @param tsLast        The upper limit of the range (exclusive, same as scan())
+     * @param windowSeconds The length of each window (the last window may be truncated by tsLast)
+     * @param functions     The functions to compute for each window
+     */
+    Aggregation aggregate(int trackId, long tsFirst, long tsLast, long windowSeconds, AggregateFunction... functions) throws StoreException;
+
+    /**
+     * Aggregate the integers of a track into MIN, MAX, AVG and COUNT per window for display at the specified resolution.
+     * <p>
+     * The window length is the range divided by maxWindows (rounded up). If rollups are enabled, the coarsest rollup level
+     * not longer than that is read instead of the chunks, the window length is then rounded up to a multiple of the level
+     * and the first window begins at tsFirst rounded down to the level. Buckets are added whole, so the first and last window
+     * may include values just outside the range. Without rollups this is the same as aggregate().
+     *
+     * @param trackId    The ID of the int[] track to aggregate
+     * @param tsFirst    The begin of the range (inclusive)
+     * @param tsLast     The upper limit of the range (exclusive, same as scan())
+     * @param maxWindows The resolution, at most maxWindows + 1 windows are returned
+     * @see #rebuildRollups()
+     */
+    Aggregation overview(int trackId, long tsFirst, long tsLast, int maxWindows) throws StoreException;
+
+    /**
+     * Enable rollups and (re)compute them from all chunks.
+     * <p>
+     * Rollups hold the count, sum, min and max of every int[] track per minute, quarter hour, hour and day.
+     * Once enabled, put() keeps them up to date so overview() reads a number of rows proportional to the requested
+     * resolution instead of all chunks in the range.
+     */
+    void rebuildRollups() throws StoreException;
+
+    /**
+     * Merge adjacent chunks with the same descriptor into larger chunks, re-encoding their fields in one pass.
+     * <p>
+     * Chunks are merged if they begin within the same window of targetSpanSeconds (aligned to multiples of the span)
+     * and each one ends where the next one begins. Merged chunks are still found by findByTimestamp() using the timestamp
+     * of any of the original chunks, ranges and scans return them whole. Chunks with dictionary encoded text or lossy
+     * encoded integers are never merged, re-encoding would change their values.
+     *
+     * @param tsFirst           The begin of the range (inclusive)
+     * @param tsLast            The upper limit of the range (exclusive, same as scan())
+     * @param targetSpanSeconds The maximum span of a merged chunk
+     * @return The number of chunks removed by merging
+     */
+    int compact(long tsFirst, long tsLast, long targetSpanSeconds) throws StoreException;
+
     /**
      * Find this store's epoch (in microseconds since the UNIX epoch).
      *
@@ -118,6 +245,31 @@ public interface Store extends AutoCloseable
     void close() throws StoreException;
 
 
+    /**
+     * A write session that persists many chunks using few transactions.
+     */
+    interface Batch extends AutoCloseable
+    {
+        /**
+         * Insert new or replace existing chunk as part of the current transaction.
+         * <p>
+         * If writing the chunk fails, all chunks pending since the last commit are rolled back.
+         */
+        void put(Chunk chunk) throws StoreException;
+
+        /**
+         * Commit all pending chunks.
+         */
+        void flush() throws StoreException;
+
+        /**
+         * Commit all pending chunks and end this batch. This instance can't be used afterwards.
+         */
+        @Override
+        void close() throws StoreException;
+    }
+
+
     /**
      * Represents meta keys reserved for store internal purposes, these can not be set using setMeta().
      */
@@ -125,7 +277,8 @@ public interface Store extends AutoCloseable
     {
         ID,
         EPOCH_MICROS,
-        VERSION;
+        VERSION,
+        ROLLUPS;
 
         public static final List<ReservedMetaKey> values = Arrays.asList(values());
 
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store;
+
+/**
+ * Tuning options applied when a store is opened (before any schema migration is performed).
+ * <p>
+ * Options that are not set keep the defaults of the underlying database.
+ */
+public final class StoreOptions
+{
+    /**
+     * Keep all database defaults.
+     */
+    public static final StoreOptions DEFAULT = builder().build();
+
+    private final JournalMode journalMode;
+
+    private final Synchronous synchronous;
+
+    private final Integer pageSize;
+
+    private final Integer cacheSize;
+
+    private final Long mmapSize;
+
+    private final TempStore tempStore;
+
+    private final Long busyTimeout;
+
+    private final int readers;
+
+    private final boolean writerThread;
+
+    private final int writeQueueCapacity;
+
+
+    private StoreOptions(Builder builder)
+    {
+        this.journalMode = builder.journalMode;
+        this.synchronous = builder.synchronous;
+        this.pageSize = builder.pageSize;
+        this.cacheSize = builder.cacheSize;
+        this.mmapSize = builder.mmapSize;
+        this.tempStore = builder.tempStore;
+        this.busyTimeout = builder.busyTimeout;
+        this.readers = builder.readers;
+        this.writerThread = builder.writerThread;
+        this.writeQueueCapacity = builder.writeQueueCapacity;
+    }
+
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+
+    /**
+     * Get the journal mode or null if not set.
+     */
+    public JournalMode getJournalMode()
+    {
+        return journalMode;
+    }
+
+    /**
+     * Get the synchronous level or null if not set.
+     */
+    public Synchronous getSynchronous()
+    {
+        return synchronous;
+    }
+
+    /**
+     * Get the page size in bytes or null if not set.
+     */
+    public Integer getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * Get the cache size (pages if positive, KiB if negative) or null if not set.
+     */
+    public Integer getCacheSize()
+    {
+        return cacheSize;
+    }
+
+    /**
+     * Get the maximum number of bytes to access using memory-mapped I/O or null if not set.
+     */
+    public Long getMmapSize()
+    {
+        return mmapSize;
+    }
+
+    /**
+     * Get the location of temporary tables and indices or null if not set.
+     */
+    public TempStore getTempStore()
+    {
+        return tempStore;
+    }
+
+    /**
+     * Get the time in milliseconds to wait for a locked database or null if not set.
+     */
+    public Long getBusyTimeout()
+    {
+        return busyTimeout;
+    }
+
+    /**
+     * Get the number of read-only connections used to serve reads concurrently (0 if reads share the single connection).
+     */
+    public int getReaders()
+    {
+        return readers;
+    }
+
+    /**
+     * Check if writes are performed by a dedicated writer thread (always the case with concurrent readers).
+     */
+    public boolean isWriterThread()
+    {
+        return writerThread || readers > 0;
+    }
+
+    /**
+     * Get the maximum number of chunks queued by putAsync() before producers are blocked.
+     */
+    public int getWriteQueueCapacity()
+    {
+        return writeQueueCapacity;
+    }
+
+
+    /**
+     * How the rollback journal is maintained. WAL allows readers to proceed concurrently with a writer.
+     */
+    public enum JournalMode
+    {
+        DELETE,
+        TRUNCATE,
+        PERSIST,
+        MEMORY,
+        WAL,
+        OFF
+    }
+
+
+    /**
+     * How often the database waits for data to reach the disk. Lower levels trade durability for throughput.
+     */
+    public enum Synchronous
+    {
+        OFF,
+        NORMAL,
+        FULL
+    }
+
+
+    /**
+     * Where temporary tables and indices are stored.
+     */
+    public enum TempStore
+    {
+        DEFAULT,
+        FILE,
+        MEMORY
+    }
+
+
+    public static final class Builder
+    {
+        private JournalMode journalMode;
+
+        private Synchronous synchronous;
+
+        private Integer pageSize;
+
+        private Integer cacheSize;
+
+        private Long mmapSize;
+
+        private TempStore tempStore;
+
+        private Long busyTimeout;
+
+        private int readers = 0;
+
+        private boolean writerThread = false;
+
+        private int writeQueueCapacity = 1024;
+
+
+        private Builder()
+        {
+
+        }
+
+
+        public Builder journalMode(JournalMode journalMode)
+        {
+            this.journalMode = journalMode;
+            return this;
+        }
+
+        public Builder synchronous(Synchronous synchronous)
+        {
+            this.synchronous = synchronous;
+            return this;
+        }
+
+        /**
+         * Set the page size, only has an effect on new stores (a power of two between 512 and 65536).
+         */
+        public Builder pageSize(int pageSize)
+        {
+            if (pageSize < 512 || pageSize > 65536 || Integer.bitCount(pageSize) != 1)
+            {
+                throw new IllegalArgumentException("page size must be a power of two between 512 and 65536: " + pageSize);
+            }
+
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Set the cache size in pages (positive) or KiB (negative).
+         */
+        public Builder cacheSize(int cacheSize)
+        {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of bytes to access using memory-mapped I/O (0 disables memory-mapped I/O).
+         */
+        public Builder mmapSize(long mmapSize)
+        {
+            if (mmapSize < 0)
+            {
+                throw new IllegalArgumentException("negative mmap size specified: " + mmapSize);
+            }
+
+            this.mmapSize = mmapSize;
+            return this;
+        }
+
+        public Builder tempStore(TempStore tempStore)
+        {
+            this.tempStore = tempStore;
+            return this;
+        }
+
+        /**
+         * Set the time in milliseconds to wait for a locked database before failing (0 fails immediately).
+         */
+        public Builder busyTimeout(long busyTimeout)
+        {
+            if (busyTimeout < 0)
+            {
+                throw new IllegalArgumentException("negative busy timeout specified: " + busyTimeout);
+            }
+
+            this.busyTimeout = busyTimeout;
+            return this;
+        }
+
+        /**
+         * Serve reads from a pool of read-only connections, each owned by a thread of its own,
+         * while a single connection performs all writes.
+         * <p>
+         * Readers only proceed concurrently with the writer in WAL journal mode.
+         *
+         * @param readers Number of read-only connections (0 disables the pool, the writer serves reads)
+         */
+        public Builder readers(int readers)
+        {
+            if (readers < 0)
+            {
+                throw new IllegalArgumentException("negative number of readers specified: " + readers);
+            }
+
+            this.readers = readers;
+            return this;
+        }
+
+        /**
+         * Perform all writes on a thread of their own, so putAsync() queues chunks for group commit instead of
+         * writing them before returning. Synchronous writes pay for the hand-off to the writer thread.
+         * <p>
+         * Stores with concurrent readers always have a writer thread.
+         */
+        public Builder writerThread(boolean writerThread)
+        {
+            this.writerThread = writerThread;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of chunks queued by putAsync() before producers are blocked.
+         * All queued chunks are committed together, so this also limits the size of a group commit.
+         * <p>
+         * Only used by stores with a writer thread.
+         */
+        public Builder writeQueueCapacity(int writeQueueCapacity)
+        {
+            if (writeQueueCapacity < 1)
+            {
+                throw new IllegalArgumentException("write queue capacity must be larger than 0: " + writeQueueCapacity);
+            }
+
+            this.writeQueueCapacity = writeQueueCapacity;
+            return this;
+        }
+
+        public StoreOptions build()
+        {
+            return new StoreOptions(this);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store;
+
+/**
+ * Wraps a StoreException where checked exceptions can't be thrown, ie. from Iterator and Stream methods.
+ */
+public class UncheckedStoreException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedStoreException(StoreException cause)
+    {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized StoreException getCause()
+    {
+        return (StoreException) super.getCause();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Chunk;
+import net.talpidae.multiflex.store.AggregateFunction;
+import net.talpidae.multiflex.store.Aggregation;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+
+/**
+ * Accumulates chunk statistics into fixed size time windows.
+ */
+public class BaseAggregation implements Aggregation
+{
+    // bounds the memory used by a single aggregation
+    static final int MAX_WINDOWS = 1 << 24;
+
+    private final EnumSet<AggregateFunction> functions;
+
+    private final long tsFirst;
+
+    private final long windowSeconds;
+
+    private final long[] counts;
+
+    private final long[] sums;
+
+    private final int[] mins;
+
+    private final int[] maxs;
+
+    private final int[] firsts;
+
+    private final int[] lasts;
+
+
+    /**
+     * Create an empty aggregation of the timestamp range tsFirst (inclusive) to tsLast (exclusive).
+     */
+    BaseAggregation(long tsFirst, long tsLast, long windowSeconds, AggregateFunction... functions)
+    {
+        if (windowSeconds <= 0)
+        {
+            throw new IllegalArgumentException("windowSeconds must be positive: " + windowSeconds);
+        }
+        else if (tsLast < tsFirst)
+        {
+            throw new IllegalArgumentException("tsLast " + tsLast + " is smaller than tsFirst " + tsFirst);
+        }
+        else if (functions.length == 0)
+        {
+            throw new IllegalArgumentException("no aggregate function specified");
+        }
+
+        final long windows = (tsLast - tsFirst + windowSeconds - 1) / windowSeconds;
+        if (windows > MAX_WINDOWS)
+        {
+            throw new IllegalArgumentException("range " + tsFirst + " to " + tsLast + " has more than " + MAX_WINDOWS + " windows");
+        }
+
+        final int size = (int) windows;
+        this.functions = EnumSet.noneOf(AggregateFunction.class);
+        this.functions.addAll(Arrays.asList(functions));
+        this.tsFirst = tsFirst;
+        this.windowSeconds = windowSeconds;
+        this.counts = new long[size];
+        this.sums = new long[size];
+        this.mins = new int[size];
+        this.maxs = new int[size];
+        this.firsts = new int[size];
+        this.lasts = new int[size];
+    }
+
+
+    /**
+     * Add the statistics of the chunk with the specified timestamp, chunks must be added in timestamp order.
+     */
+    void add(long timestamp, Chunk.Stats stats)
+    {
+        final int count = stats.getCount();
+        if (count == 0)
+        {
+            return;
+        }
+
+        final int window = (int) window(timestamp);
+        if (counts[window] == 0)
+        {
+            firsts[window] = stats.getFirst();
+        }
+
+        lasts[window] = stats.getLast();
+        add(timestamp, count, stats.getSum(), stats.getMin(), stats.getMax());
+    }
+
+    /**
+     * Add the count, sum, min and max of a rollup bucket (which must not span multiple windows).
+     * <p>
+     * Rollups don't record the first and last values, only aggregations without FIRST and LAST should use this.
+     */
+    void add(long timestamp, long count, long sum, int min, int max)
+    {
+        if (count == 0)
+        {
+            return;
+        }
+
+        final int window = (int) window(timestamp);
+        if (counts[window] == 0)
+        {
+            mins[window] = min;
+            maxs[window] = max;
+        }
+        else
+        {
+            mins[window] = Math.min(mins[window], min);
+            maxs[window] = Math.max(maxs[window], max);
+        }
+
+        counts[window] += count;
+        sums[window] += sum;
+    }
+
+
+    /**
+     * Get the index of the window containing the timestamp.
+     */
+    long window(long timestamp)
+    {
+        return Math.floorDiv(timestamp - tsFirst, windowSeconds);
+    }
+
+
+    @Override
+    public int size()
+    {
+        return counts.length;
+    }
+
+    @Override
+    public long[] getTimestamps()
+    {
+        final long[] timestamps = new long[counts.length];
+        for (int i = 0; i < timestamps.length; ++i)
+        {
+            timestamps[i] = tsFirst + i * windowSeconds;
+        }
+
+        return timestamps;
+    }
+
+    @Override
+    public double[] getValues(AggregateFunction function)
+    {
+        if (!functions.contains(function))
+        {
+            throw new IllegalArgumentException("function has not been requested: " + function);
+        }
+
+        final double[] values = new double[counts.length];
+        for (int i = 0; i < values.length; ++i)
+        {
+            final long count = counts[i];
+            if (function == AggregateFunction.COUNT)
+            {
+                values[i] = count;
+            }
+            else if (count == 0)
+            {
+                values[i] = Double.NaN;
+            }
+            else
+            {
+                switch (function)
+                {
+                    case MIN:
+                        values[i] = mins[i];
+                        break;
+
+                    case MAX:
+                        values[i] = maxs[i];
+                        break;
+
+                    case AVG:
+                        values[i] = (double) sums[i] / count;
+                        break;
+
+                    case FIRST:
+                        values[i] = firsts[i];
+                        break;
+
+                    case LAST:
+                        values[i] = lasts[i];
+                        break;
+                }
+            }
+        }
+
+        return values;
+    }
+}
@@ -19,25 +19,51 @@ package net.talpidae.multiflex.store.base;
 
 import net.talpidae.multiflex.format.Chunk;
 import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.format.Track;
 import net.talpidae.multiflex.store.StoreException;
 import net.talpidae.multiflex.store.base.BaseDescriptor.SQLiteTrack;
+import net.talpidae.multiflex.store.util.LongEncoding;
+import net.talpidae.multiflex.store.util.XorEncoding;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.UUID;
 
 
 public class BaseChunk implements Chunk
 {
-    // TODO Optimize read access by utilizing SQLiteBlob
+    static final long MICROS_PER_SECOND = 1000000L;
+
+    static final long DEFAULT_DURATION_MICROS = MICROS_PER_SECOND;
 
     private final BaseDescriptor descriptor;
 
-    private final long timestamp;
+    private final long timestampMicros;
+
+    private final long durationMicros;
+
+    // resolves the text of UTF8_DICTIONARY tracks
+    private final BaseDictionary dictionary;
 
+    // null for partial chunks (see readTrack())
     private final ByteBuffer data;
 
+    // statistics of the int[] fields (see BaseStats), null if there are none
+    private final ByteBuffer stats;
+
+    // index of the merged chunks (see BaseChunkParts), null unless created by Store.compact()
+    private final ByteBuffer parts;
+
+    // only the fields loaded by readTrack() (null for complete chunks)
+    private ByteBuffer[] fields;
+
+    // text of the UTF8_DICTIONARY fields until the chunk is put (see Builder.text()), null if there is none
+    private String[] texts;
+
     private transient int[] offsets;
 
     private transient int[] lengths;
@@ -46,11 +72,50 @@ public class BaseChunk implements Chunk
     private transient int fieldOffset = -1;
 
 
-    BaseChunk(BaseDescriptor descriptor, long timestamp, ByteBuffer data)
+    BaseChunk(BaseDescriptor descriptor, long timestampMicros, long durationMicros, ByteBuffer data, ByteBuffer stats, ByteBuffer parts, BaseDictionary dictionary)
     {
         this.descriptor = descriptor;
-        this.timestamp = timestamp;
-        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        this.timestampMicros = timestampMicros;
+        this.durationMicros = durationMicros;
+        this.dictionary = dictionary;
+        this.data = data != null ? data.order(ByteOrder.LITTLE_ENDIAN) : null;
+        this.stats = stats;
+        this.parts = parts;
+    }
+
+
+    /**
+     * Create a partial chunk by reading only the index and the field of the specified track.
+     * <p>
+     * The fields of all other tracks are inaccessible, but only a fraction of the chunk data needs to be read.
+     *
+     * @param descriptor The descriptor of the stored chunk
+     * @param dictionary The dictionary of the store
+     * @param timestamp  The timestamp of the stored chunk (microseconds)
+     * @param duration   The duration of the stored chunk (microseconds)
+     * @param stats      The statistics of the stored chunk (may be null)
+     * @param parts      The index of the chunks merged into the stored chunk (may be null)
+     * @param trackId    The ID of the track to read
+     * @param reader     Reads ranges of the stored chunk data
+     */
+    static BaseChunk readTrack(BaseDescriptor descriptor, BaseDictionary dictionary, long timestamp, long duration, ByteBuffer stats, ByteBuffer parts,
+                               int trackId, DAO.RangeReader reader) throws StoreException
+    {
+        final BaseChunk chunk = new BaseChunk(descriptor, timestamp, duration, null, stats, parts, dictionary);
+        chunk.fields = new ByteBuffer[descriptor.size()];
+        chunk.decompressIndex(reader.read(0, maxIndexBytes(descriptor.size())));
+
+        final SQLiteTrack track = descriptor.getTrack(trackId);
+        if (track != null)
+        {
+            final int index = track.getIndex();
+            final int nextIndex = index + 1;
+            final int length = nextIndex < chunk.offsets.length ? chunk.offsets[nextIndex] - chunk.offsets[index] : -1;
+
+            chunk.fields[index] = reader.read(chunk.fieldOffset + chunk.offsets[index], length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        return chunk;
     }
 
 
@@ -63,37 +128,148 @@ public class BaseChunk implements Chunk
     @Override
     public long getTimestamp()
     {
-        return timestamp;
+        return Math.floorDiv(timestampMicros, MICROS_PER_SECOND);
+    }
+
+    @Override
+    public long getTimestampMicros()
+    {
+        return timestampMicros;
+    }
+
+    @Override
+    public long getDurationMicros()
+    {
+        return durationMicros;
+    }
+
+
+    /**
+     * Convert seconds to microseconds, saturating instead of overflowing (for range bounds).
+     */
+    static long toMicros(long seconds)
+    {
+        if (seconds > Long.MAX_VALUE / MICROS_PER_SECOND)
+        {
+            return Long.MAX_VALUE;
+        }
+        else if (seconds < Long.MIN_VALUE / MICROS_PER_SECOND)
+        {
+            return Long.MIN_VALUE;
+        }
+
+        return seconds * MICROS_PER_SECOND;
+    }
+
+    /**
+     * Convert microseconds to seconds, rounding down.
+     */
+    static long toSeconds(long micros)
+    {
+        return Math.floorDiv(micros, MICROS_PER_SECOND);
     }
 
 
     /**
      * Return this Chunk or a representation suitable for use with the specified store ID.
      * <p>
-     * The associated descriptor is also made local to the store.
+     * The associated descriptor is also made local to the store, dictionary encoded text is interned or re-encoded.
      */
-    BaseChunk forStore(UUID storeId)
+    BaseChunk forStore(UUID storeId, BaseDictionary dictionary) throws StoreException
     {
         final BaseDescriptor localDescriptor = descriptor.forStore(storeId);
+        if (texts != null)
+        {
+            return transcode(localDescriptor, dictionary);
+        }
+
         if (localDescriptor != descriptor)
         {
-            return new BaseChunk(localDescriptor, timestamp, data);
+            if (dictionary != this.dictionary && hasDictionaryTrack())
+            {
+                return transcode(localDescriptor, dictionary);
+            }
+
+            final BaseChunk chunk = new BaseChunk(localDescriptor, timestampMicros, durationMicros, data, stats, parts, dictionary);
+            chunk.fields = fields;
+            chunk.offsets = offsets;
+            chunk.lengths = lengths;
+            chunk.fieldOffset = fieldOffset;
+
+            return chunk;
         }
 
         return this;
     }
 
 
+    private boolean hasDictionaryTrack()
+    {
+        for (final Track track : descriptor)
+        {
+            if (track.getEncoding() == Encoding.UTF8_DICTIONARY)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Copy all fields into a new chunk, replacing the dictionary IDs (or text not interned yet) with the IDs of the
+     * specified dictionary.
+     */
+    private BaseChunk transcode(BaseDescriptor localDescriptor, BaseDictionary localDictionary) throws StoreException
+    {
+        if (fieldOffset < 0)
+        {
+            decompressIndex(data);
+        }
+
+        final Builder builder = new Builder(localDescriptor, localDictionary);
+        builder.timestampMicros(timestampMicros);
+        builder.durationMicros(durationMicros);
+        builder.parts(parts);
+        for (final Track track : descriptor)
+        {
+            final SQLiteTrack localTrack = (SQLiteTrack) track;
+            final int index = localTrack.getIndex();
+            if (track.getEncoding() == Encoding.UTF8_DICTIONARY && (texts == null || texts[index] != null))
+            {
+                builder.internText(localTrack, getText(track.getId()));
+            }
+            else
+            {
+                builder.setValue(localTrack, getField(index), lengths[index]);
+                builder.stats[index] = getStats(track.getId());
+            }
+        }
+
+        return (BaseChunk) builder.build();
+    }
+
+
     /**
-     * Decompress index if necessary.
+     * Upper bound of the compressed size of offsets and lengths.
      */
-    private void decompressIndex() throws StoreException
+    private static int maxIndexBytes(int indexSize)
+    {
+        return Encoder.maxEncodedIntegersBytes(indexSize) * 2;
+    }
+
+
+    /**
+     * Decompress index from the start of the specified chunk data.
+     */
+    private void decompressIndex(ByteBuffer chunkData) throws StoreException
     {
         final int indexSize = descriptor.size();
-        final ByteBuffer indexData = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer indexData = chunkData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
 
         indexData.position(0);
-        indexData.limit(Math.min(indexSize * 8 + (indexSize * 4), indexData.remaining()));
+        indexData.limit(Math.min(maxIndexBytes(indexSize), indexData.limit()));
 
         // TODO Fix decompression issue here
         offsets = Encoder.decodeIntegers(indexData, indexSize, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR);
@@ -113,7 +289,7 @@ public class BaseChunk implements Chunk
         {
             if (fieldOffset < 0)
             {
-                decompressIndex();
+                decompressIndex(data);
             }
 
             return track;
@@ -129,9 +305,153 @@ public class BaseChunk implements Chunk
         final SQLiteTrack track = locateTrack(streamId);
         if (track != null)
         {
-            final int length = lengths[track.getIndex()];
+            final int[] integers = new int[integerCount(track.getIndex())];
+            decodeIntegers(track, integers, 0, integers.length);
+
+            return integers;
+        }
+
+        return null;
+    }
+
+
+    @Override
+    public int getIntegerCount(int streamId) throws StoreException
+    {
+        final SQLiteTrack track = locateTrack(streamId);
+
+        return track != null ? integerCount(track.getIndex()) : -1;
+    }
 
-            return Encoder.decodeIntegers(getField(track.getIndex()), length, track.getEncoding());
+
+    @Override
+    public int getIntegers(int streamId, int[] dest, int destOffset) throws StoreException
+    {
+        final SQLiteTrack track = locateTrack(streamId);
+        if (track != null)
+        {
+            final int length = integerCount(track.getIndex());
+            if (destOffset < 0 || destOffset > dest.length - length)
+            {
+                throw new IndexOutOfBoundsException("can't store " + length + " integers at offset " + destOffset
+                        + " of array with length " + dest.length);
+            }
+
+            decodeIntegers(track, dest, destOffset, length);
+
+            return length;
+        }
+
+        return -1;
+    }
+
+
+    @Override
+    public int getIntegers(int streamId, IntBuffer dest) throws StoreException
+    {
+        final SQLiteTrack track = locateTrack(streamId);
+        if (track != null)
+        {
+            final int length = integerCount(track.getIndex());
+            if (dest.remaining() < length)
+            {
+                throw new BufferOverflowException();
+            }
+
+            final int position = dest.position();
+            if (dest.hasArray())
+            {
+                decodeIntegers(track, dest.array(), dest.arrayOffset() + position, length);
+                dest.position(position + length);
+            }
+            else
+            {
+                final int[] integers = new int[length];
+                decodeIntegers(track, integers, 0, length);
+                dest.put(integers);
+            }
+
+            return length;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Get the number of integers in the field at index (constant fields store the count negated).
+     */
+    private int integerCount(int index)
+    {
+        return Math.abs(lengths[index]);
+    }
+
+
+    /**
+     * Decode the track's integers into dest, constant fields are filled with their single stored value.
+     */
+    private void decodeIntegers(SQLiteTrack track, int[] dest, int destOffset, int length) throws StoreException
+    {
+        final int index = track.getIndex();
+        final ByteBuffer field = getField(index);
+        if (lengths[index] < 0)
+        {
+            if (field.remaining() < 4)
+            {
+                throw new StoreException("constant field " + index + " is truncated");
+            }
+
+            Arrays.fill(dest, destOffset, destOffset + length, field.getInt());
+        }
+        else
+        {
+            Encoder.decodeIntegers(field, dest, destOffset, length, track.getEncoding());
+        }
+    }
+
+
+    @Override
+    public long[] getLongs(int streamId) throws StoreException
+    {
+        final SQLiteTrack track = locateTrack(streamId);
+        if (track != null)
+        {
+            final long[] longs = new long[lengths[track.getIndex()]];
+            Encoder.decodeLongs(getField(track.getIndex()), longs, 0, longs.length, track.getEncoding());
+
+            return longs;
+        }
+
+        return null;
+    }
+
+
+    @Override
+    public float[] getFloats(int streamId) throws StoreException
+    {
+        final SQLiteTrack track = locateTrack(streamId);
+        if (track != null)
+        {
+            final float[] floats = new float[lengths[track.getIndex()]];
+            Encoder.decodeFloats(getField(track.getIndex()), floats, 0, floats.length, track.getEncoding());
+
+            return floats;
+        }
+
+        return null;
+    }
+
+
+    @Override
+    public double[] getDoubles(int streamId) throws StoreException
+    {
+        final SQLiteTrack track = locateTrack(streamId);
+        if (track != null)
+        {
+            final double[] doubles = new double[lengths[track.getIndex()]];
+            Encoder.decodeDoubles(getField(track.getIndex()), doubles, 0, doubles.length, track.getEncoding());
+
+            return doubles;
         }
 
         return null;
@@ -144,7 +464,13 @@ public class BaseChunk implements Chunk
         final SQLiteTrack track = locateTrack(streamId);
         if (track != null)
         {
-            return Encoder.decodeText(getField(track.getIndex()), track.getEncoding());
+            final int index = track.getIndex();
+            if (track.getEncoding() == Encoding.UTF8_DICTIONARY)
+            {
+                return texts != null ? texts[index] : getDictionary().get(Encoder.decodeDictionaryId(getField(index)));
+            }
+
+            return Encoder.decodeText(getField(index), lengths[index], track.getEncoding());
         }
 
         return null;
@@ -157,30 +483,142 @@ public class BaseChunk implements Chunk
         final SQLiteTrack track = locateTrack(streamId);
         if (track != null)
         {
-            return Encoder.decodeBinary(getField(track.getIndex()), track.getEncoding());
+            return Encoder.decodeBinary(getField(track.getIndex()), lengths[track.getIndex()], track.getEncoding());
         }
 
         return null;
     }
 
 
+    @Override
+    public int getBinary(int streamId, ByteBuffer dest) throws StoreException
+    {
+        final SQLiteTrack track = locateTrack(streamId);
+        if (track != null)
+        {
+            final int length = lengths[track.getIndex()];
+            if (dest.remaining() < length)
+            {
+                throw new BufferOverflowException();
+            }
+
+            Encoder.decodeBinary(getField(track.getIndex()), length, dest, track.getEncoding());
+
+            return length;
+        }
+
+        return -1;
+    }
+
+
     public ByteBuffer getData()
     {
+        if (isPartial())
+        {
+            throw new IllegalStateException("partial chunk holds only some of its fields");
+        }
+
+        if (texts != null)
+        {
+            throw new IllegalStateException("dictionary encoded text is not interned before the chunk is put");
+        }
+
         return data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
     }
 
 
+    /**
+     * Check if this chunk has been created using readTrack() and holds only some of its fields.
+     */
+    boolean isPartial()
+    {
+        return data == null;
+    }
+
+
     @Override
-    public void close() throws Exception
+    public void close()
     {
-        fieldOffset = -1;
-        offsets = null;
-        lengths = null;
+        if (!isPartial())
+        {
+            // the index of partial chunks can't be restored
+            fieldOffset = -1;
+            offsets = null;
+            lengths = null;
+        }
     }
 
 
-    private ByteBuffer getField(int index)
+    private BaseDictionary getDictionary() throws StoreException
     {
+        if (dictionary == null)
+        {
+            throw new StoreException("dictionary encoded text requires a store");
+        }
+
+        return dictionary;
+    }
+
+
+    @Override
+    public BaseStats getStats(int trackId) throws StoreException
+    {
+        return stats != null && descriptor.getTrack(trackId) != null ? BaseStats.find(stats, trackId) : null;
+    }
+
+
+    /**
+     * Get the encoded statistics of this chunk's int[] fields for storage.
+     *
+     * @return Buffer view of the statistics or null if there are none
+     */
+    ByteBuffer getStatsData()
+    {
+        return stats != null ? stats.duplicate() : null;
+    }
+
+
+    /**
+     * Get the encoded index of the chunks merged into this chunk for storage.
+     *
+     * @return Buffer view of the index or null if this chunk hasn't been merged
+     */
+    ByteBuffer getPartsData()
+    {
+        return parts != null ? parts.duplicate() : null;
+    }
+
+
+    /**
+     * Get the timestamp of the last chunk merged into this chunk (microseconds), its own timestamp if it hasn't been merged.
+     */
+    long getLastPartTimestampMicros()
+    {
+        final ByteBuffer partsData = getPartsData();
+        if (partsData == null)
+        {
+            return timestampMicros;
+        }
+
+        final BaseChunkParts index = BaseChunkParts.decode(partsData);
+
+        return timestampMicros + index.getOffset(index.size() - 1);
+    }
+
+
+    private ByteBuffer getField(int index) throws StoreException
+    {
+        if (fields != null)
+        {
+            final ByteBuffer field = fields[index];
+            if (field == null)
+            {
+                throw new StoreException("field " + index + " has not been loaded for this partial chunk");
+            }
+
+            return field.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
         final int nextIndex = index + 1;
         final int position = fieldOffset + offsets[index];
 
@@ -196,26 +634,68 @@ public class BaseChunk implements Chunk
     {
         private final BaseDescriptor descriptor;
 
+        private final BaseDictionary dictionary;
+
         private final ByteBuffer[] values;
 
         private final int[] uncompressedLengths;
 
-        private long timestamp = -1;
+        // statistics of the int[] fields, indexed like values
+        private final BaseStats[] stats;
+
+        // text of the UTF8_DICTIONARY fields, indexed like values (allocated by the first one)
+        private String[] texts;
 
+        private long timestampMicros = -1;
 
-        Builder(BaseDescriptor descriptor)
+        private long durationMicros = DEFAULT_DURATION_MICROS;
+
+        private ByteBuffer parts;
+
+
+        Builder(BaseDescriptor descriptor, BaseDictionary dictionary)
         {
             this.descriptor = descriptor;
+            this.dictionary = dictionary;
 
             final int trackCount = descriptor.size();
             this.values = new ByteBuffer[trackCount];
             this.uncompressedLengths = new int[trackCount];
+            this.stats = new BaseStats[trackCount];
         }
 
         @Override
         public Chunk.Builder timestamp(long timestamp)
         {
-            this.timestamp = timestamp;
+            this.timestampMicros = timestamp >= 0 ? toMicros(timestamp) : -1;
+            return this;
+        }
+
+        @Override
+        public Chunk.Builder timestampMicros(long timestampMicros)
+        {
+            this.timestampMicros = timestampMicros;
+            return this;
+        }
+
+        @Override
+        public Chunk.Builder durationMicros(long durationMicros)
+        {
+            if (durationMicros <= 0)
+            {
+                throw new IllegalArgumentException("durationMicros must be positive: " + durationMicros);
+            }
+
+            this.durationMicros = durationMicros;
+            return this;
+        }
+
+        /**
+         * Set the encoded index of the merged chunks (see BaseChunkParts).
+         */
+        Builder parts(ByteBuffer parts)
+        {
+            this.parts = parts;
             return this;
         }
 
@@ -225,52 +705,104 @@ public class BaseChunk implements Chunk
             final SQLiteTrack track = findTrack(trackId);
 
             final int uncompressedLength = integers.length;
+            if (Encoder.isIntegerEncoding(track.getEncoding()) && isConstant(integers))
+            {
+                // store the value just once, the negated length marks the field as constant
+                final ByteBuffer data = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                data.putInt(integers[0]).flip();
+
+                setValue(track, data, -uncompressedLength);
+                stats[track.getIndex()] = BaseStats.of(trackId, integers);
+
+                return this;
+            }
 
             // create copy of array, because lower methods modify it
             final int[] integersCopy = Arrays.copyOf(integers, integers.length);
 
-            final ByteBuffer data = ByteBuffer.allocate(uncompressedLength * 8).order(ByteOrder.LITTLE_ENDIAN);
-            Encoder.encodeIntegers(integersCopy, data, track.getEncoding());
+            final ByteBuffer data = ByteBuffer.allocate(Encoder.maxEncodedIntegersBytes(uncompressedLength)).order(ByteOrder.LITTLE_ENDIAN);
+            Encoder.encodeIntegers(integersCopy, data, track.getEncoding(), track.getMaxError());
             data.flip();
 
             // store uncompressed length to allow for decompression
-            final int index = track.getIndex();
-            if (values[index] == null)
-            {
-                values[index] = data;
-                uncompressedLengths[index] = uncompressedLength;
-            }
-            else
-            {
-                throw new IllegalArgumentException("values for track with id " + trackId + " have already been set");
-            }
+            setValue(track, data, uncompressedLength);
+            stats[track.getIndex()] = BaseStats.of(trackId, integers);
 
             return this;
         }
 
         @Override
-        public Chunk.Builder text(int trackId, String text) throws StoreException
+        public Chunk.Builder longs(int trackId, long[] longs) throws StoreException
         {
             final SQLiteTrack track = findTrack(trackId);
 
-            final int uncompressedLength = text.length();
+            final ByteBuffer data = ByteBuffer.allocate(LongEncoding.maxEncodedLongsBytes(longs.length)).order(ByteOrder.LITTLE_ENDIAN);
+            Encoder.encodeLongs(longs, data, track.getEncoding());
+            data.flip();
 
-            final ByteBuffer data = ByteBuffer.allocate(uncompressedLength * 4).order(ByteOrder.LITTLE_ENDIAN);
-            Encoder.encodeText(text, data, track.getEncoding());
+            return setValue(track, data, longs.length);
+        }
+
+        @Override
+        public Chunk.Builder floats(int trackId, float[] floats) throws StoreException
+        {
+            final SQLiteTrack track = findTrack(trackId);
+
+            final ByteBuffer data = ByteBuffer.allocate(XorEncoding.maxEncodedFloatsBytes(floats.length)).order(ByteOrder.LITTLE_ENDIAN);
+            Encoder.encodeFloats(floats, data, track.getEncoding());
             data.flip();
 
-            final int index = track.getIndex();
-            if (values[index] == null)
+            return setValue(track, data, floats.length);
+        }
+
+        @Override
+        public Chunk.Builder doubles(int trackId, double[] doubles) throws StoreException
+        {
+            final SQLiteTrack track = findTrack(trackId);
+
+            final ByteBuffer data = ByteBuffer.allocate(XorEncoding.maxEncodedDoublesBytes(doubles.length)).order(ByteOrder.LITTLE_ENDIAN);
+            Encoder.encodeDoubles(doubles, data, track.getEncoding());
+            data.flip();
+
+            return setValue(track, data, doubles.length);
+        }
+
+        @Override
+        public Chunk.Builder text(int trackId, String text) throws StoreException
+        {
+            final SQLiteTrack track = findTrack(trackId);
+
+            final int uncompressedLength = text.length();
+            if (track.getEncoding() == Encoding.UTF8_DICTIONARY)
             {
-                values[index] = data;
-                uncompressedLengths[index] = uncompressedLength;
+                // interned once the chunk is put, chunks that are never stored must not add values to the dictionary
+                setValue(track, ByteBuffer.allocate(0), uncompressedLength);
+                if (texts == null)
+                {
+                    texts = new String[values.length];
+                }
+
+                texts[track.getIndex()] = text;
+
+                return this;
             }
-            else
+
+            if (Encoder.isBlockEncoding(track.getEncoding()))
             {
-                throw new IllegalArgumentException("values for track with id " + trackId + " have already been set");
+                // the block is decompressed to UTF-8, so store its length instead of the number of chars
+                final byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+                final ByteBuffer data = ByteBuffer.allocate(Encoder.maxEncodedBlockBytes(utf8.length)).order(ByteOrder.LITTLE_ENDIAN);
+                Encoder.encodeText(utf8, data, track.getEncoding());
+                data.flip();
+
+                return setValue(track, data, utf8.length);
             }
 
-            return this;
+            final ByteBuffer data = ByteBuffer.allocate(uncompressedLength * 4).order(ByteOrder.LITTLE_ENDIAN);
+            Encoder.encodeText(text, data, track.getEncoding());
+            data.flip();
+
+            return setValue(track, data, uncompressedLength);
         }
 
         @Override
@@ -280,22 +812,68 @@ public class BaseChunk implements Chunk
 
             final int uncompressedBytes = binary.remaining();
 
-            // we may later use a real compression scheme, so don't just put the original buffer
-            final ByteBuffer data = ByteBuffer.allocate(uncompressedBytes).order(ByteOrder.LITTLE_ENDIAN);
+            // don't just put the original buffer, the caller may modify it later
+            final int maxBytes = Encoder.isBlockEncoding(track.getEncoding()) ? Encoder.maxEncodedBlockBytes(uncompressedBytes) : uncompressedBytes;
+            final ByteBuffer data = ByteBuffer.allocate(maxBytes).order(ByteOrder.LITTLE_ENDIAN);
             Encoder.encodeBinary(binary, data, track.getEncoding());
             data.flip();
 
-            final int index = track.getIndex();
-            if (values[index] == null)
+            return setValue(track, data, uncompressedBytes);
+        }
+
+
+        /**
+         * Set the ID of the text in the dictionary of the store, registering the text if necessary.
+         */
+        private void internText(SQLiteTrack track, String text) throws StoreException
+        {
+            if (dictionary == null)
             {
-                values[index] = data;
-                uncompressedLengths[index] = uncompressedBytes;
+                throw new StoreException("dictionary encoded text requires a store");
             }
-            else
+
+            final ByteBuffer data = ByteBuffer.allocate(Encoder.MAX_DICTIONARY_ID_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            Encoder.encodeDictionaryId(dictionary.intern(text), data);
+            data.flip();
+
+            setValue(track, data, text.length());
+        }
+
+
+        private static boolean isConstant(int[] integers)
+        {
+            if (integers.length == 0)
+            {
+                return false;
+            }
+
+            final int first = integers[0];
+            for (final int value : integers)
             {
-                throw new IllegalArgumentException("values for track with id " + trackId + " have already been set");
+                if (value != first)
+                {
+                    return false;
+                }
             }
 
+            return true;
+        }
+
+
+        /**
+         * Set the encoded value of the track along with its uncompressed length (required for decompression).
+         */
+        private Chunk.Builder setValue(SQLiteTrack track, ByteBuffer data, int uncompressedLength)
+        {
+            final int index = track.getIndex();
+            if (values[index] != null)
+            {
+                throw new IllegalArgumentException("values for track with id " + track.getId() + " have already been set");
+            }
+
+            values[index] = data;
+            uncompressedLengths[index] = uncompressedLength;
+
             return this;
         }
 
@@ -319,16 +897,20 @@ public class BaseChunk implements Chunk
         public void reset()
         {
             // prepare for re-use
-            this.timestamp = -1;
+            this.timestampMicros = -1;
+            this.durationMicros = DEFAULT_DURATION_MICROS;
+            this.parts = null;
+            this.texts = null;
             Arrays.fill(this.values, null);
             Arrays.fill(this.uncompressedLengths, 0);
+            Arrays.fill(this.stats, null);
         }
 
 
         @Override
         public Chunk build() throws StoreException
         {
-            if (timestamp < 0)
+            if (timestampMicros < 0)
             {
                 throw new IllegalArgumentException("timestamp not set or invalid");
             }
@@ -346,7 +928,7 @@ public class BaseChunk implements Chunk
             }
 
             // over-allocate by a few bytes (don't know offsets/lengths compressed size, yet)
-            final ByteBuffer data = ByteBuffer.allocate((index * 8) + compressedDataTotal).order(ByteOrder.LITTLE_ENDIAN);
+            final ByteBuffer data = ByteBuffer.allocate(maxIndexBytes(index) + compressedDataTotal).order(ByteOrder.LITTLE_ENDIAN);
 
             // we always know how many integers we have uncompressed from the descriptor
             Encoder.encodeIntegers(offsets, data, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR);
@@ -360,7 +942,8 @@ public class BaseChunk implements Chunk
 
             data.flip();
 
-            final Chunk chunk = new BaseChunk(descriptor, timestamp, data);
+            final BaseChunk chunk = new BaseChunk(descriptor, timestampMicros, durationMicros, data, BaseStats.encode(stats), parts, dictionary);
+            chunk.texts = texts;
 
             // prepare for re-use
             reset();
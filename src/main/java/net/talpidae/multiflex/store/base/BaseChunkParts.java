@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * Index of the chunks merged into a single chunk by Store.compact(), stored in table track_parts.
+ * <p>
+ * The index is stored as a little-endian blob: the number of parts and fields, followed by the offset from the merged
+ * chunk's timestamp and the duration (both 64-bit microseconds) of each part and the number of values each part
+ * contributes to each field (32-bit, fields in descriptor order). Text fields count chars, binary fields count bytes.
+ */
+final class BaseChunkParts
+{
+    private final long[] offsets;
+
+    private final long[] durations;
+
+    // indexed by part * fieldCount + field
+    private final int[] counts;
+
+    private final int fieldCount;
+
+
+    private BaseChunkParts(long[] offsets, long[] durations, int[] counts, int fieldCount)
+    {
+        this.offsets = offsets;
+        this.durations = durations;
+        this.counts = counts;
+        this.fieldCount = fieldCount;
+    }
+
+
+    /**
+     * Create the index of an unmerged chunk consisting of a single part.
+     */
+    static BaseChunkParts single(long durationMicros, int[] fieldCounts)
+    {
+        return new BaseChunkParts(new long[]{0L}, new long[]{durationMicros}, fieldCounts.clone(), fieldCounts.length);
+    }
+
+
+    /**
+     * Concatenate the indices of adjacent chunks.
+     *
+     * @param parts         The indices of the chunks, all with the same number of fields
+     * @param offsetsMicros The offset of each chunk from the first chunk's timestamp
+     */
+    static BaseChunkParts concat(BaseChunkParts[] parts, long[] offsetsMicros)
+    {
+        int size = 0;
+        for (final BaseChunkParts entry : parts)
+        {
+            size += entry.size();
+        }
+
+        final int fieldCount = parts[0].fieldCount;
+        final long[] offsets = new long[size];
+        final long[] durations = new long[size];
+        final int[] counts = new int[size * fieldCount];
+
+        int position = 0;
+        for (int i = 0; i < parts.length; ++i)
+        {
+            final BaseChunkParts entry = parts[i];
+            for (int part = 0; part < entry.size(); ++part)
+            {
+                offsets[position + part] = offsetsMicros[i] + entry.offsets[part];
+            }
+
+            System.arraycopy(entry.durations, 0, durations, position, entry.size());
+            System.arraycopy(entry.counts, 0, counts, position * fieldCount, entry.counts.length);
+            position += entry.size();
+        }
+
+        return new BaseChunkParts(offsets, durations, counts, fieldCount);
+    }
+
+
+    /**
+     * Get the index of the parts first (inclusive) to end (exclusive), with offsets relative to the begin of the first one.
+     */
+    BaseChunkParts slice(int first, int end)
+    {
+        final long[] offsets = new long[end - first];
+        for (int part = first; part < end; ++part)
+        {
+            offsets[part - first] = this.offsets[part] - this.offsets[first];
+        }
+
+        return new BaseChunkParts(offsets, Arrays.copyOfRange(durations, first, end),
+                Arrays.copyOfRange(counts, first * fieldCount, end * fieldCount), fieldCount);
+    }
+
+
+    /**
+     * Decode a stored index.
+     */
+    static BaseChunkParts decode(ByteBuffer data)
+    {
+        final ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int size = buffer.getInt();
+        final int fieldCount = buffer.getInt();
+
+        final long[] offsets = new long[size];
+        final long[] durations = new long[size];
+        final int[] counts = new int[size * fieldCount];
+        for (int part = 0; part < size; ++part)
+        {
+            offsets[part] = buffer.getLong();
+            durations[part] = buffer.getLong();
+        }
+
+        buffer.asIntBuffer().get(counts);
+
+        return new BaseChunkParts(offsets, durations, counts, fieldCount);
+    }
+
+
+    /**
+     * Encode this index for storage.
+     */
+    ByteBuffer encode()
+    {
+        final ByteBuffer data = ByteBuffer.allocate(8 + offsets.length * 16 + counts.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(offsets.length).putInt(fieldCount);
+        for (int part = 0; part < offsets.length; ++part)
+        {
+            data.putLong(offsets[part]).putLong(durations[part]);
+        }
+
+        for (final int count : counts)
+        {
+            data.putInt(count);
+        }
+
+        data.flip();
+
+        return data;
+    }
+
+
+    int size()
+    {
+        return offsets.length;
+    }
+
+    /**
+     * Find the part beginning at the specified offset from the merged chunk's timestamp.
+     *
+     * @return The index of the part or -1 if no part begins there
+     */
+    int indexOf(long offsetMicros)
+    {
+        final int index = Arrays.binarySearch(offsets, offsetMicros);
+
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Find the first part beginning at or after the specified offset from the merged chunk's timestamp.
+     *
+     * @return The index of the part or size() if all parts begin before the offset
+     */
+    int ceiling(long offsetMicros)
+    {
+        final int index = Arrays.binarySearch(offsets, offsetMicros);
+
+        return index >= 0 ? index : -index - 1;
+    }
+
+    long getOffset(int part)
+    {
+        return offsets[part];
+    }
+
+    long getDuration(int part)
+    {
+        return durations[part];
+    }
+
+    int getCount(int part, int field)
+    {
+        return counts[part * fieldCount + field];
+    }
+
+    /**
+     * Get the index of the first value the part contributes to the field.
+     */
+    int getStart(int part, int field)
+    {
+        int start = 0;
+        for (int i = 0; i < part; ++i)
+        {
+            start += counts[i * fieldCount + field];
+        }
+
+        return start;
+    }
+}
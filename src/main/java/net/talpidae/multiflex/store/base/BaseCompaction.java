@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Descriptor;
+import net.talpidae.multiflex.format.Track;
+import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.UncheckedStoreException;
+
+import java.lang.reflect.Array;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+
+/**
+ * Merges adjacent chunks into a single chunk and slices the original chunks back out of it.
+ * <p>
+ * The values of every track are decoded into arrays (text as char[], binary as byte[]), concatenated and
+ * encoded again. The index of the original chunks is stored along with the merged chunk (see BaseChunkParts),
+ * slices copy the values of their parts out of the merged chunk's decoded fields.
+ */
+final class BaseCompaction
+{
+    private BaseCompaction()
+    {
+
+    }
+
+
+    /**
+     * Check if chunks with this descriptor can be merged without changing their values.
+     * <p>
+     * Dictionary encoded text can't be concatenated and lossy encoded integers would lose precision again.
+     */
+    static boolean isCompactable(Descriptor descriptor)
+    {
+        for (final Track track : descriptor)
+        {
+            switch (track.getEncoding())
+            {
+                case NONE:
+                case UTF8_DICTIONARY:
+                case INT32_CENTER31BIT_LOSSY:
+                    return false;
+
+                default:
+                    break;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Merge the adjacent chunks, which all share the same compactable descriptor, into a single chunk.
+     */
+    static BaseChunk merge(List<BaseChunk> chunks, BaseDictionary dictionary) throws StoreException
+    {
+        final BaseChunk first = chunks.get(0);
+        final BaseChunk last = chunks.get(chunks.size() - 1);
+        final BaseDescriptor descriptor = first.getDescriptor();
+
+        final Object[][] values = new Object[descriptor.size()][chunks.size()];
+        final BaseChunkParts[] parts = new BaseChunkParts[chunks.size()];
+        final long[] offsets = new long[chunks.size()];
+        for (int i = 0; i < parts.length; ++i)
+        {
+            final BaseChunk chunk = chunks.get(i);
+            final int[] counts = new int[values.length];
+            for (final Track track : descriptor)
+            {
+                final int index = ((BaseDescriptor.SQLiteTrack) track).getIndex();
+                values[index][i] = read(chunk, track);
+                counts[index] = Array.getLength(values[index][i]);
+            }
+
+            final ByteBuffer chunkParts = chunk.getPartsData();
+            parts[i] = chunkParts != null ? BaseChunkParts.decode(chunkParts) : BaseChunkParts.single(chunk.getDurationMicros(), counts);
+            offsets[i] = chunk.getTimestampMicros() - first.getTimestampMicros();
+        }
+
+        final BaseChunk.Builder builder = new BaseChunk.Builder(descriptor, dictionary);
+        builder.timestampMicros(first.getTimestampMicros());
+        builder.durationMicros(last.getTimestampMicros() + last.getDurationMicros() - first.getTimestampMicros());
+        builder.parts(BaseChunkParts.concat(parts, offsets).encode());
+        for (final Track track : descriptor)
+        {
+            final Object[] trackValues = values[((BaseDescriptor.SQLiteTrack) track).getIndex()];
+
+            int length = 0;
+            for (final Object value : trackValues)
+            {
+                length += Array.getLength(value);
+            }
+
+            final Object merged = Array.newInstance(trackValues[0].getClass().getComponentType(), length);
+            int position = 0;
+            for (final Object value : trackValues)
+            {
+                final int valueLength = Array.getLength(value);
+                System.arraycopy(value, 0, merged, position, valueLength);
+                position += valueLength;
+            }
+
+            write(builder, track, merged);
+        }
+
+        return (BaseChunk) builder.build();
+    }
+
+
+    /**
+     * Slice the part that began at the specified timestamp out of a merged chunk.
+     *
+     * @return The original chunk or null if no part began at this timestamp
+     */
+    static BaseChunk slice(BaseChunk chunk, long timestampMicros)
+    {
+        final BaseChunkParts parts = BaseChunkParts.decode(chunk.getPartsData());
+        final int part = parts.indexOf(timestampMicros - chunk.getTimestampMicros());
+
+        return part >= 0 ? new Slice(chunk, parts, part, part + 1) : null;
+    }
+
+
+    /**
+     * Slice the parts that began within the timestamp range (microseconds, end exclusive) out of a merged chunk.
+     *
+     * @return The merged chunk if all of its parts began within the range, null if none did
+     */
+    static BaseChunk slice(BaseChunk chunk, long tsBeginMicros, long tsEndMicros)
+    {
+        final BaseChunkParts parts = BaseChunkParts.decode(chunk.getPartsData());
+        final long timestampMicros = chunk.getTimestampMicros();
+        final int first = tsBeginMicros > timestampMicros ? parts.ceiling(tsBeginMicros - timestampMicros) : 0;
+        final int end = tsEndMicros > timestampMicros ? parts.ceiling(tsEndMicros - timestampMicros) : 0;
+        if (first == 0 && end == parts.size())
+        {
+            return chunk;
+        }
+
+        return first < end ? new Slice(chunk, parts, first, end) : null;
+    }
+
+
+    private static Object read(BaseChunk chunk, Track track) throws StoreException
+    {
+        final int trackId = track.getId();
+        switch (track.getEncoding())
+        {
+            case INT64_DELTA_OF_DELTA:
+            case INT64_ZIGZAG_VAR_BYTE:
+                return chunk.getLongs(trackId);
+
+            case FLOAT32_XOR:
+                return chunk.getFloats(trackId);
+
+            case FLOAT64_XOR:
+                return chunk.getDoubles(trackId);
+
+            case UTF8_STRING:
+            case UTF8_DEFLATE:
+            case UTF8_LZ4:
+                return chunk.getText(trackId).toCharArray();
+
+            case BINARY:
+            case BINARY_DEFLATE:
+            case BINARY_LZ4:
+                final ByteBuffer binary = chunk.getBinary(trackId);
+                final byte[] bytes = new byte[binary.remaining()];
+                binary.get(bytes);
+
+                return bytes;
+
+            default:
+                return chunk.getIntegers(trackId);
+        }
+    }
+
+
+    private static void write(BaseChunk.Builder builder, Track track, Object values) throws StoreException
+    {
+        final int trackId = track.getId();
+        switch (track.getEncoding())
+        {
+            case INT64_DELTA_OF_DELTA:
+            case INT64_ZIGZAG_VAR_BYTE:
+                builder.longs(trackId, (long[]) values);
+                break;
+
+            case FLOAT32_XOR:
+                builder.floats(trackId, (float[]) values);
+                break;
+
+            case FLOAT64_XOR:
+                builder.doubles(trackId, (double[]) values);
+                break;
+
+            case UTF8_STRING:
+            case UTF8_DEFLATE:
+            case UTF8_LZ4:
+                builder.text(trackId, new String((char[]) values));
+                break;
+
+            case BINARY:
+            case BINARY_DEFLATE:
+            case BINARY_LZ4:
+                builder.binary(trackId, ByteBuffer.wrap((byte[]) values));
+                break;
+
+            default:
+                builder.integers(trackId, (int[]) values);
+                break;
+        }
+    }
+
+
+    /**
+     * Consecutive parts of a merged chunk.
+     * <p>
+     * Only the fields requested are decoded (from the merged chunk, which may be partial) and only the values of the
+     * parts are copied. The slice is encoded on its own once its data is needed, ie. to put it into a store.
+     */
+    private static final class Slice extends BaseChunk
+    {
+        private final BaseChunk merged;
+
+        // index of the first value of the slice in each field of the merged chunk
+        private final int[] starts;
+
+        // number of values of the slice in each field
+        private final int[] counts;
+
+        private BaseChunk encoded;
+
+
+        private Slice(BaseChunk merged, BaseChunkParts parts, int first, int end)
+        {
+            // compactable descriptors have no dictionary encoded tracks
+            super(merged.getDescriptor(),
+                    merged.getTimestampMicros() + parts.getOffset(first),
+                    parts.getOffset(end - 1) + parts.getDuration(end - 1) - parts.getOffset(first),
+                    null, null, end - first > 1 ? parts.slice(first, end).encode() : null, null);
+
+            this.merged = merged;
+
+            final int fieldCount = merged.getDescriptor().size();
+            this.starts = new int[fieldCount];
+            this.counts = new int[fieldCount];
+            for (int part = 0; part < end; ++part)
+            {
+                for (int field = 0; field < fieldCount; ++field)
+                {
+                    if (part < first)
+                    {
+                        starts[field] += parts.getCount(part, field);
+                    }
+                    else
+                    {
+                        counts[field] += parts.getCount(part, field);
+                    }
+                }
+            }
+        }
+
+
+        @Override
+        public int[] getIntegers(int streamId) throws StoreException
+        {
+            final int[] integers = merged.getIntegers(streamId);
+
+            return integers != null ? Arrays.copyOfRange(integers, start(streamId), end(streamId)) : null;
+        }
+
+        @Override
+        public int getIntegerCount(int streamId)
+        {
+            final BaseDescriptor.SQLiteTrack track = getDescriptor().getTrack(streamId);
+
+            return track != null ? counts[track.getIndex()] : -1;
+        }
+
+        @Override
+        public int getIntegers(int streamId, int[] dest, int destOffset) throws StoreException
+        {
+            final int[] integers = getIntegers(streamId);
+            if (integers == null)
+            {
+                return -1;
+            }
+
+            if (destOffset < 0 || destOffset > dest.length - integers.length)
+            {
+                throw new IndexOutOfBoundsException("can't store " + integers.length + " integers at offset " + destOffset
+                        + " of array with length " + dest.length);
+            }
+
+            System.arraycopy(integers, 0, dest, destOffset, integers.length);
+
+            return integers.length;
+        }
+
+        @Override
+        public int getIntegers(int streamId, IntBuffer dest) throws StoreException
+        {
+            final int[] integers = getIntegers(streamId);
+            if (integers == null)
+            {
+                return -1;
+            }
+
+            if (dest.remaining() < integers.length)
+            {
+                throw new BufferOverflowException();
+            }
+
+            dest.put(integers);
+
+            return integers.length;
+        }
+
+        @Override
+        public long[] getLongs(int streamId) throws StoreException
+        {
+            final long[] longs = merged.getLongs(streamId);
+
+            return longs != null ? Arrays.copyOfRange(longs, start(streamId), end(streamId)) : null;
+        }
+
+        @Override
+        public float[] getFloats(int streamId) throws StoreException
+        {
+            final float[] floats = merged.getFloats(streamId);
+
+            return floats != null ? Arrays.copyOfRange(floats, start(streamId), end(streamId)) : null;
+        }
+
+        @Override
+        public double[] getDoubles(int streamId) throws StoreException
+        {
+            final double[] doubles = merged.getDoubles(streamId);
+
+            return doubles != null ? Arrays.copyOfRange(doubles, start(streamId), end(streamId)) : null;
+        }
+
+        @Override
+        public String getText(int streamId) throws StoreException
+        {
+            final String text = merged.getText(streamId);
+
+            return text != null ? text.substring(start(streamId), end(streamId)) : null;
+        }
+
+        @Override
+        public ByteBuffer getBinary(int streamId) throws StoreException
+        {
+            final ByteBuffer binary = merged.getBinary(streamId);
+            if (binary == null)
+            {
+                return null;
+            }
+
+            final ByteBuffer slice = binary.duplicate();
+            slice.limit(binary.position() + end(streamId));
+            slice.position(binary.position() + start(streamId));
+
+            return slice.slice();
+        }
+
+        @Override
+        public int getBinary(int streamId, ByteBuffer dest) throws StoreException
+        {
+            final ByteBuffer binary = getBinary(streamId);
+            if (binary == null)
+            {
+                return -1;
+            }
+
+            final int length = binary.remaining();
+            if (dest.remaining() < length)
+            {
+                throw new BufferOverflowException();
+            }
+
+            dest.put(binary);
+
+            return length;
+        }
+
+        @Override
+        public BaseStats getStats(int trackId) throws StoreException
+        {
+            if (merged.getStats(trackId) == null)
+            {
+                return null;
+            }
+
+            final int index = getDescriptor().getTrack(trackId).getIndex();
+
+            return BaseStats.of(trackId, merged.getIntegers(trackId), starts[index], counts[index]);
+        }
+
+        @Override
+        public ByteBuffer getData()
+        {
+            if (isPartial())
+            {
+                return super.getData();
+            }
+
+            try
+            {
+                return encoded().getData();
+            }
+            catch (StoreException e)
+            {
+                throw new UncheckedStoreException(e);
+            }
+        }
+
+        @Override
+        ByteBuffer getStatsData()
+        {
+            try
+            {
+                return encoded().getStatsData();
+            }
+            catch (StoreException e)
+            {
+                throw new UncheckedStoreException(e);
+            }
+        }
+
+        @Override
+        boolean isPartial()
+        {
+            return merged.isPartial();
+        }
+
+        @Override
+        BaseChunk forStore(UUID storeId, BaseDictionary dictionary) throws StoreException
+        {
+            return encoded().forStore(storeId, dictionary);
+        }
+
+        @Override
+        public void close()
+        {
+            merged.close();
+        }
+
+
+        private int start(int streamId)
+        {
+            return starts[getDescriptor().getTrack(streamId).getIndex()];
+        }
+
+        private int end(int streamId)
+        {
+            final int index = getDescriptor().getTrack(streamId).getIndex();
+
+            return starts[index] + counts[index];
+        }
+
+
+        /**
+         * Encode the slice on its own (once).
+         */
+        private BaseChunk encoded() throws StoreException
+        {
+            if (encoded == null)
+            {
+                final BaseDescriptor descriptor = getDescriptor();
+                final BaseChunk.Builder builder = new BaseChunk.Builder(descriptor, null);
+                builder.timestampMicros(getTimestampMicros());
+                builder.durationMicros(getDurationMicros());
+                builder.parts(getPartsData());
+                for (final Track track : descriptor)
+                {
+                    write(builder, track, read(this, track));
+                }
+
+                encoded = (BaseChunk) builder.build();
+            }
+
+            return encoded;
+        }
+    }
+}
@@ -20,7 +20,9 @@ package net.talpidae.multiflex.store.base;
 import net.talpidae.multiflex.format.Descriptor;
 import net.talpidae.multiflex.format.Encoding;
 import net.talpidae.multiflex.format.Track;
+import net.talpidae.multiflex.store.Store;
 import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.util.Center31BitEncoding;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -56,10 +58,15 @@ public class BaseDescriptor implements Descriptor
         final int[] ids = Encoder.decodeIntegers(buffer, tracksLength, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR);
         final int[] encodings = Encoder.decodeIntegers(buffer, tracksLength, Encoding.INT32_VAR_BYTE_FAST_PFOR);
 
+        // max errors are only present if any track uses a lossy encoding
+        final int[] maxErrors = buffer.hasRemaining()
+                ? Encoder.decodeIntegers(buffer, tracksLength, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                : new int[tracksLength];
+
         final SQLiteTrack[] tracks = new SQLiteTrack[tracksLength];
         for (int i = 0; i < tracksLength; ++i)
         {
-            final SQLiteTrack track = new SQLiteTrack(ids[i], Encoding.values.get(encodings[i]));
+            final SQLiteTrack track = new SQLiteTrack(ids[i], Encoding.values.get(encodings[i]), maxErrors[i]);
             track.setIndex(i);
             tracks[i] = track;
         }
@@ -119,19 +126,28 @@ public class BaseDescriptor implements Descriptor
         final int tracksLength = tracks.length;
         final int[] ids = new int[tracksLength];
         final int[] encodings = new int[tracksLength];
+        final int[] maxErrors = new int[tracksLength];
+        boolean hasMaxErrors = false;
         int i = 0;
         for (final Track track : tracks)
         {
             ids[i] = track.getId();
             encodings[i] = track.getEncoding().ordinal();
+            maxErrors[i] = track.getMaxError();
+            hasMaxErrors |= maxErrors[i] != 0;
             ++i;
         }
 
-        final ByteBuffer buffer = ByteBuffer.allocate((tracksLength * 2 + 1) * 4).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + Encoder.maxEncodedIntegersBytes(tracksLength) * 3).order(ByteOrder.LITTLE_ENDIAN);
 
         buffer.putInt(tracksLength); // length
         Encoder.encodeIntegers(ids, buffer, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR);
         Encoder.encodeIntegers(encodings, buffer, Encoding.INT32_VAR_BYTE_FAST_PFOR);
+        if (hasMaxErrors)
+        {
+            // omitted otherwise, so descriptors of lossless tracks stay the same
+            Encoder.encodeIntegers(maxErrors, buffer, Encoding.INT32_VAR_BYTE_FAST_PFOR);
+        }
 
         // we assume there is no weird behavior regarding this HeapByteBuffer's backing array
         return buffer;
@@ -209,10 +225,10 @@ public class BaseDescriptor implements Descriptor
 
         private final List<SQLiteTrack> tracks = new ArrayList<>();
 
-        private final BaseStore store;
+        private final Store store;
 
 
-        Builder(BaseStore store)
+        Builder(Store store)
         {
             this.store = store;
         }
@@ -220,13 +236,28 @@ public class BaseDescriptor implements Descriptor
 
         @Override
         public Descriptor.Builder track(int trackId, Encoding encoding)
+        {
+            return track(trackId, encoding, 0);
+        }
+
+        @Override
+        public Descriptor.Builder track(int trackId, Encoding encoding, int maxError)
         {
             if (encoding == null)
             {
                 throw new NullPointerException("encoding is null");
             }
 
-            tracks.add(new SQLiteTrack(trackId, encoding));
+            if (maxError < 0 || maxError > Center31BitEncoding.MAX_ERROR)
+            {
+                throw new IllegalArgumentException("maxError " + maxError + " out of range [0, " + Center31BitEncoding.MAX_ERROR + "]");
+            }
+            else if (maxError != 0 && encoding != Encoding.INT32_CENTER31BIT_LOSSY)
+            {
+                throw new IllegalArgumentException("encoding " + encoding.name() + " is lossless, maxError must be 0");
+            }
+
+            tracks.add(new SQLiteTrack(trackId, encoding, maxError));
 
             return this;
         }
@@ -271,13 +302,16 @@ public class BaseDescriptor implements Descriptor
 
         private final Encoding encoding;
 
+        private final int maxError;
+
         private int index;
 
 
-        private SQLiteTrack(int id, Encoding encoding)
+        private SQLiteTrack(int id, Encoding encoding, int maxError)
         {
             this.id = id;
             this.encoding = encoding;
+            this.maxError = maxError;
         }
 
 
@@ -287,7 +321,8 @@ public class BaseDescriptor implements Descriptor
             return this == other
                     || (other instanceof SQLiteTrack
                     && id == ((SQLiteTrack) other).id
-                    && encoding == ((SQLiteTrack) other).encoding);
+                    && encoding == ((SQLiteTrack) other).encoding
+                    && maxError == ((SQLiteTrack) other).maxError);
         }
 
 
@@ -296,7 +331,9 @@ public class BaseDescriptor implements Descriptor
         {
             int code = 37 * 1007 + id;
 
-            return 37 * code + encoding.ordinal();
+            code = 37 * code + encoding.ordinal();
+
+            return 37 * code + maxError;
         }
 
 
@@ -323,6 +360,12 @@ public class BaseDescriptor implements Descriptor
         {
             return encoding;
         }
+
+        @Override
+        public int getMaxError()
+        {
+            return maxError;
+        }
     }
 
 
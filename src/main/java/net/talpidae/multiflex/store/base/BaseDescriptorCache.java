@@ -81,6 +81,24 @@ class BaseDescriptorCache
     }
 
 
+    /**
+     * Reset the descriptor's ID and remove it from the cache, i.e. after the transaction that registered it failed.
+     */
+    void forget(BaseDescriptor descriptor)
+    {
+        final long id = descriptor.getId();
+        if (id != 0)
+        {
+            if (cache.get(id) == descriptor)
+            {
+                cache.remove(id);
+            }
+
+            descriptor.setId(0);
+        }
+    }
+
+
     /**
      * Clear the cache.
      */
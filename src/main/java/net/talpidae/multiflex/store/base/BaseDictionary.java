@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.store.StoreException;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Maps the strings of UTF8_DICTIONARY encoded text fields to store local IDs and back.
+ * <p>
+ * Lookups of cached entries are lock-free, so a single instance may be shared by the stores of all threads.
+ */
+class BaseDictionary
+{
+    private static final String[] NO_VALUES = new String[0];
+
+    private final Source source;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // indexed by ID, replaced when growing (IDs are dense since they are assigned by SQLite)
+    private volatile String[] values = NO_VALUES;
+
+
+    BaseDictionary(Source source)
+    {
+        this.source = source;
+    }
+
+
+    /**
+     * Get the ID of the value, registering the value with the store if necessary.
+     */
+    int intern(String value) throws StoreException
+    {
+        final Integer cachedId = ids.get(value);
+        if (cachedId != null)
+        {
+            return cachedId;
+        }
+
+        final int id = source.selectOrInsertId(value);
+        put(id, value);
+
+        return id;
+    }
+
+
+    /**
+     * Get the value with the specified ID, returns the cached instance if possible.
+     */
+    String get(int id) throws StoreException
+    {
+        final String[] values = this.values;
+        if (id >= 0 && id < values.length)
+        {
+            final String value = values[id];
+            if (value != null)
+            {
+                return value;
+            }
+        }
+
+        final String value = source.selectValue(id);
+        if (value == null)
+        {
+            throw new StoreException("unknown dictionary id: " + id);
+        }
+
+        return put(id, value);
+    }
+
+
+    /**
+     * Clear the cache, i.e. after a rollback possibly removed some entries from the store.
+     */
+    synchronized void clear()
+    {
+        ids.clear();
+        values = NO_VALUES;
+    }
+
+
+    private synchronized String put(int id, String value)
+    {
+        String[] values = this.values;
+        if (id >= values.length)
+        {
+            values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+        }
+        else if (values[id] != null)
+        {
+            // keep the instance already handed out
+            return values[id];
+        }
+
+        values[id] = value;
+        this.values = values;
+        ids.put(value, id);
+
+        return value;
+    }
+
+
+    /**
+     * Reads and writes the dictionary entries of a store.
+     */
+    interface Source
+    {
+        /**
+         * Insert the value if not exists and select its ID.
+         */
+        int selectOrInsertId(String value) throws StoreException;
+
+        /**
+         * Select the value with the specified ID.
+         *
+         * @return The value or null if there is no value with this ID
+         */
+        String selectValue(int id) throws StoreException;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Chunk;
+import net.talpidae.multiflex.store.StoreException;
+
+
+/**
+ * Rollup levels and bucket accumulation for table rollup.
+ * <p>
+ * Each level holds the count, sum, min and max of the integers of a track per bucket of the level's length.
+ * Every level is a multiple of the previous level, so the buckets of a level can be computed from the level below.
+ */
+final class BaseRollups
+{
+    /**
+     * Bucket lengths in seconds (1 min, 15 min, 1 h, 1 day), finest first.
+     */
+    static final long[] LEVELS = {60L, 15 * 60L, 60 * 60L, 24 * 60 * 60L};
+
+
+    private BaseRollups()
+    {
+
+    }
+
+
+    /**
+     * Get the begin of the bucket of the specified level containing the timestamp.
+     */
+    static long bucket(long timestamp, long level)
+    {
+        return timestamp - Math.floorMod(timestamp, level);
+    }
+
+
+    /**
+     * Find the coarsest level that is not longer than windowSeconds.
+     *
+     * @return The level or 0 if all levels are longer
+     */
+    static long coarsestLevel(long windowSeconds)
+    {
+        long coarsest = 0L;
+        for (final long level : LEVELS)
+        {
+            if (level <= windowSeconds)
+            {
+                coarsest = level;
+            }
+        }
+
+        return coarsest;
+    }
+
+
+    /**
+     * Accumulates the values of a single bucket.
+     */
+    static final class Bucket implements DAO.RollupConsumer
+    {
+        private long timestamp;
+
+        private long count;
+
+        private long sum;
+
+        private int min;
+
+        private int max;
+
+
+        Bucket(long timestamp)
+        {
+            this.timestamp = timestamp;
+        }
+
+
+        @Override
+        public void accept(long timestamp, long count, long sum, int min, int max)
+        {
+            if (count == 0)
+            {
+                return;
+            }
+
+            if (this.count == 0)
+            {
+                this.min = min;
+                this.max = max;
+            }
+            else
+            {
+                this.min = Math.min(this.min, min);
+                this.max = Math.max(this.max, max);
+            }
+
+            this.count += count;
+            this.sum += sum;
+        }
+
+        /**
+         * Add the statistics of a chunk or track within this bucket.
+         */
+        void add(Chunk.Stats stats)
+        {
+            accept(timestamp, stats.getCount(), stats.getSum(), stats.getMin(), stats.getMax());
+        }
+
+        /**
+         * Pass the accumulated values to the consumer (if any) and begin the bucket at the specified timestamp.
+         */
+        void flush(DAO.RollupConsumer consumer, long nextTimestamp) throws StoreException
+        {
+            if (count != 0)
+            {
+                consumer.accept(timestamp, count, sum, min, max);
+            }
+
+            timestamp = nextTimestamp;
+            count = 0;
+            sum = 0;
+        }
+
+        long getTimestamp()
+        {
+            return timestamp;
+        }
+    }
+}
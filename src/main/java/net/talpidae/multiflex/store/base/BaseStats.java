@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.format.Chunk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Statistics of an int[] field, stored per chunk in table track_stats.
+ * <p>
+ * The statistics of all int[] fields of a chunk are stored as a little-endian blob: the number of entries
+ * followed by the track ID, count, min, max, sum (64-bit), first and last value of each field.
+ */
+public class BaseStats implements Chunk.Stats
+{
+    static final int ENTRY_BYTES = 4 * 6 + 8;
+
+    private final int trackId;
+
+    private final int count;
+
+    private final int min;
+
+    private final int max;
+
+    private final long sum;
+
+    private final int first;
+
+    private final int last;
+
+
+    BaseStats(int trackId, int count, int min, int max, long sum, int first, int last)
+    {
+        this.trackId = trackId;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.first = first;
+        this.last = last;
+    }
+
+
+    /**
+     * Compute the statistics of the specified integers.
+     */
+    static BaseStats of(int trackId, int[] integers)
+    {
+        return of(trackId, integers, 0, integers.length);
+    }
+
+
+    /**
+     * Compute the statistics of count integers starting at offset (ie. of a part of a merged field).
+     */
+    static BaseStats of(int trackId, int[] integers, int offset, int count)
+    {
+        if (count == 0)
+        {
+            return new BaseStats(trackId, 0, 0, 0, 0L, 0, 0);
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long sum = 0L;
+        for (int i = offset; i < offset + count; ++i)
+        {
+            final int value = integers[i];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+        }
+
+        return new BaseStats(trackId, count, min, max, sum, integers[offset], integers[offset + count - 1]);
+    }
+
+
+    /**
+     * Encode the non-null statistics for storage, returns null if there are none.
+     */
+    static ByteBuffer encode(BaseStats[] stats)
+    {
+        int entries = 0;
+        for (final BaseStats entry : stats)
+        {
+            if (entry != null)
+            {
+                ++entries;
+            }
+        }
+
+        if (entries == 0)
+        {
+            return null;
+        }
+
+        final ByteBuffer data = ByteBuffer.allocate(4 + entries * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(entries);
+        for (final BaseStats entry : stats)
+        {
+            if (entry != null)
+            {
+                data.putInt(entry.trackId)
+                        .putInt(entry.count)
+                        .putInt(entry.min)
+                        .putInt(entry.max)
+                        .putLong(entry.sum)
+                        .putInt(entry.first)
+                        .putInt(entry.last);
+            }
+        }
+
+        data.flip();
+
+        return data;
+    }
+
+
+    /**
+     * Find the statistics of the specified track in stored statistics.
+     *
+     * @return The statistics or null if the track has none
+     */
+    static BaseStats find(ByteBuffer data, int trackId)
+    {
+        final ByteBuffer entries = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int start = entries.position();
+        final int count = Math.min(entries.getInt(start), (entries.remaining() - 4) / ENTRY_BYTES);
+        for (int i = 0; i < count; ++i)
+        {
+            final int position = start + 4 + i * ENTRY_BYTES;
+            if (entries.getInt(position) == trackId)
+            {
+                return new BaseStats(trackId,
+                        entries.getInt(position + 4),
+                        entries.getInt(position + 8),
+                        entries.getInt(position + 12),
+                        entries.getLong(position + 16),
+                        entries.getInt(position + 24),
+                        entries.getInt(position + 28));
+            }
+        }
+
+        return null;
+    }
+
+
+    int getTrackId()
+    {
+        return trackId;
+    }
+
+    @Override
+    public int getCount()
+    {
+        return count;
+    }
+
+    @Override
+    public int getMin()
+    {
+        return min;
+    }
+
+    @Override
+    public int getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public long getSum()
+    {
+        return sum;
+    }
+
+    @Override
+    public int getFirst()
+    {
+        return first;
+    }
+
+    @Override
+    public int getLast()
+    {
+        return last;
+    }
+}
@@ -20,16 +20,35 @@ package net.talpidae.multiflex.store.base;
 
 import net.talpidae.multiflex.format.Chunk;
 import net.talpidae.multiflex.format.Descriptor;
+import net.talpidae.multiflex.format.Track;
+import net.talpidae.multiflex.store.AggregateFunction;
+import net.talpidae.multiflex.store.Aggregation;
+import net.talpidae.multiflex.store.ChunkCursor;
 import net.talpidae.multiflex.store.Store;
 import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.UncheckedStoreException;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongUnaryOperator;
 
 
 public class BaseStore implements Store
 {
+    private static final int DEFAULT_MAX_BATCH_SIZE = 3600;
+
+    private static final AggregateFunction[] OVERVIEW_FUNCTIONS = {
+            AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.AVG, AggregateFunction.COUNT
+    };
+
     private final BaseDescriptorCache descriptorCache;
 
     private final DAO dao;
@@ -45,9 +64,27 @@ public class BaseStore implements Store
 
     private BaseDescriptor lastUsedDescriptor;
 
+    private BaseDictionary dictionary;
+
+    private BaseBatch batch;
+
     public BaseStore(DAO dao)
     {
         this.descriptorCache = new BaseDescriptorCache(this);
+        this.dictionary = new BaseDictionary(new BaseDictionary.Source()
+        {
+            @Override
+            public int selectOrInsertId(String value) throws StoreException
+            {
+                return selectOrInsertDictionaryId(value);
+            }
+
+            @Override
+            public String selectValue(int id) throws StoreException
+            {
+                return selectDictionaryValue(id);
+            }
+        });
 
         // simple DAO for our format's tables
         this.dao = dao;
@@ -107,87 +144,798 @@ public class BaseStore implements Store
     }
 
     @Override
-    public void put(Chunk chunk) throws StoreException
+    public void put(Chunk chunk) throws StoreException
+    {
+        final BaseChunk actualChunk = toLocalChunk(chunk);
+        commitSeparately(() ->
+        {
+            insertChunk(actualChunk, isRollupsEnabled());
+
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(Chunk chunk)
+    {
+        // no writer thread, the chunk is written by the calling thread
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        try
+        {
+            put(chunk);
+            future.complete(null);
+        }
+        catch (RuntimeException | StoreException e)
+        {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    @Override
+    public void putAll(Iterable<? extends Chunk> chunks) throws StoreException
+    {
+        try (final Batch batch = writeBatch())
+        {
+            for (final Chunk chunk : chunks)
+            {
+                batch.put(chunk);
+            }
+        }
+    }
+
+    @Override
+    public Batch writeBatch() throws StoreException
+    {
+        return writeBatch(DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    @Override
+    public Batch writeBatch(int maxBatchSize) throws StoreException
+    {
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("maxBatchSize must be larger than 0");
+        }
+
+        if (state != State.OPEN_READWRITE)
+        {
+            throw new StoreException("store not writable");
+        }
+
+        if (batch != null)
+        {
+            throw new IllegalStateException("another batch is still open");
+        }
+
+        batch = new BaseBatch(maxBatchSize);
+
+        return batch;
+    }
+
+    /**
+     * Insert new or replace existing chunks within a single transaction that is committed before returning.
+     * <p>
+     * If a batch is open, the chunks pending in the batch are committed first.
+     */
+    void putGroup(List<? extends Chunk> chunks) throws StoreException
+    {
+        final BaseChunk[] actualChunks = new BaseChunk[chunks.size()];
+        for (int i = 0; i < actualChunks.length; ++i)
+        {
+            actualChunks[i] = toLocalChunk(chunks.get(i));
+        }
+
+        commitSeparately(() ->
+        {
+            final boolean rollups = isRollupsEnabled();
+            for (final BaseChunk chunk : actualChunks)
+            {
+                insertChunk(chunk, rollups);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Check that the chunk can be written to this store and return its store local representation.
+     */
+    private BaseChunk toLocalChunk(Chunk chunk) throws StoreException
+    {
+        if (state != State.OPEN_READWRITE)
+        {
+            throw new StoreException("store not writable");
+        }
+
+        if (!(chunk instanceof BaseChunk))
+        {
+            throw new StoreException("cannot put unsupported chunk: " + (chunk != null ? chunk.getClass().getName() : null));
+        }
+
+        if (((BaseChunk) chunk).isPartial())
+        {
+            throw new StoreException("cannot put partial chunk");
+        }
+
+        final BaseChunk localChunk = ((BaseChunk) chunk).forStore(id, dictionary);
+        internDescriptor(localChunk.getDescriptor());
+
+        return localChunk;
+    }
+
+    /**
+     * Register the descriptor with the store unless it has been registered already.
+     * <p>
+     * The descriptor is committed by itself, so rolling back the transaction of a chunk can't take back its ID.
+     */
+    private void internDescriptor(BaseDescriptor descriptor) throws StoreException
+    {
+        if (descriptor.getId() != 0)
+        {
+            return;
+        }
+
+        try
+        {
+            commitSeparately(() ->
+            {
+                descriptorCache.intern(descriptor);
+
+                return null;
+            });
+        }
+        catch (StoreException e)
+        {
+            // the ID may have been assigned before the commit failed
+            descriptorCache.forget(descriptor);
+
+            throw new StoreException("failed to persist descriptor: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Persist the chunk and update the rollups (if enabled). Call only from within a running database transaction.
+     * <p>
+     * The chunk's descriptor must have been registered before (see toLocalChunk()).
+     */
+    private void insertChunk(BaseChunk chunk, boolean rollups) throws StoreException
+    {
+        try
+        {
+            final long tsMicros = chunk.getTimestampMicros();
+
+            // descriptor ID and end of the replaced chunk, a merged chunk's parts may lie in multiple rollup buckets
+            final long[] replaced = {-1L, tsMicros};
+            if (rollups)
+            {
+                dao.selectChunkStatsByTimestampRange(tsMicros, tsMicros + 1, (chunkTsMicros, duration, descriptorId, stats, parts) ->
+                {
+                    if (chunkTsMicros == tsMicros)
+                    {
+                        replaced[0] = descriptorId;
+                        replaced[1] = chunkTsMicros + duration;
+                    }
+                });
+            }
+
+            dao.insertOrReplaceTrackChunk(tsMicros, chunk.getDurationMicros(), chunk.getDescriptor().getId(),
+                    chunk.getData(), chunk.getStatsData(), chunk.getPartsData());
+
+            if (rollups)
+            {
+                updateRollups(chunk, replaced[0], replaced[1]);
+            }
+        }
+        catch (StoreException e)
+        {
+            throw new StoreException("failed to persist chunk", e);
+        }
+    }
+
+    /**
+     * Update the rollups after the chunk has been inserted (call within a transaction).
+     *
+     * @param replacedDescriptorId The descriptor ID of the chunk replaced by this chunk or -1 if there was none
+     * @param replacedEndMicros    The end of the replaced chunk (microseconds)
+     */
+    private void updateRollups(BaseChunk chunk, long replacedDescriptorId, long replacedEndMicros) throws StoreException
+    {
+        // rollup buckets are in seconds
+        final long ts = chunk.getTimestamp();
+        if (replacedDescriptorId < 0 && chunk.getPartsData() == null)
+        {
+            // common case, add the chunk to the buckets containing it
+            for (final Track track : chunk.getDescriptor())
+            {
+                if (Encoder.isIntegerEncoding(track.getEncoding()))
+                {
+                    final int trackId = track.getId();
+                    final BaseStats storedStats = chunk.getStats(trackId);
+                    final BaseStats stats = storedStats != null ? storedStats : BaseStats.of(trackId, chunk.getIntegers(trackId));
+
+                    for (final long level : BaseRollups.LEVELS)
+                    {
+                        dao.insertOrMergeRollup(level, trackId, BaseRollups.bucket(ts, level),
+                                stats.getCount(), stats.getSum(), stats.getMin(), stats.getMax());
+                    }
+                }
+            }
+        }
+        else
+        {
+            // the replaced chunk's min and max can't be subtracted, recompute the buckets of both chunks' tracks
+            // (all buckets containing parts of merged chunks)
+            final Set<Integer> trackIds = new TreeSet<>();
+            addIntegerTrackIds(chunk.getDescriptor(), trackIds);
+            if (replacedDescriptorId >= 0)
+            {
+                addIntegerTrackIds(getDescriptor(replacedDescriptorId), trackIds);
+            }
+
+            final long level = BaseRollups.LEVELS[0];
+            final long last = BaseChunk.toSeconds(Math.max(chunk.getLastPartTimestampMicros(), replacedEndMicros - 1));
+            for (final int trackId : trackIds)
+            {
+                for (long bucket = BaseRollups.bucket(ts, level); bucket <= last; bucket += level)
+                {
+                    recomputeRollups(bucket, trackId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recompute the buckets of all levels that contain the timestamp (seconds), finest level first (call within a transaction).
+     */
+    private void recomputeRollups(long ts, int trackId) throws StoreException
+    {
+        long lowerLevel = 0L;
+        for (final long level : BaseRollups.LEVELS)
+        {
+            final long begin = BaseRollups.bucket(ts, level);
+            final BaseRollups.Bucket bucket = new BaseRollups.Bucket(begin);
+            if (lowerLevel == 0L)
+            {
+                final long beginMicros = BaseChunk.toMicros(begin);
+                final long endMicros = BaseChunk.toMicros(begin + level);
+                dao.selectChunkStatsByTimestampRange(beginMicros, endMicros, (tsMicros, duration, descriptorId, stats, parts) ->
+                        spreadTrackStats(tsMicros, descriptorId, stats, parts, trackId, beginMicros, endMicros,
+                                timestamp -> BaseRollups.bucket(timestamp, level), (partTsMicros, trackStats) -> bucket.add(trackStats)));
+            }
+            else
+            {
+                dao.selectRollupsByTimestampRange(lowerLevel, trackId, begin, begin + level, bucket);
+            }
+
+            dao.deleteRollup(level, trackId, begin);
+            bucket.flush(rollupWriter(level, trackId), begin);
+
+            lowerLevel = level;
+        }
+    }
+
+    /**
+     * Get a consumer that inserts or replaces rollup buckets of the level and track.
+     */
+    private DAO.RollupConsumer rollupWriter(long level, int trackId)
+    {
+        return (ts, count, sum, min, max) -> dao.insertOrReplaceRollup(level, trackId, ts, count, sum, min, max);
+    }
+
+    /**
+     * Check if rollups are enabled for this store (call within a transaction).
+     */
+    private boolean isRollupsEnabled() throws StoreException
+    {
+        return Boolean.parseBoolean(dao.selectMeta(ReservedMetaKey.ROLLUPS.name()));
+    }
+
+    private static void addIntegerTrackIds(Descriptor descriptor, Set<Integer> trackIds)
+    {
+        for (final Track track : descriptor)
+        {
+            if (Encoder.isIntegerEncoding(track.getEncoding()))
+            {
+                trackIds.add(track.getId());
+            }
+        }
+    }
+
+    /**
+     * Factory method which allows the DAO to create chunks for us.
+     */
+    private Chunk createChunk(long timestamp, long duration, long descriptorId, ByteBuffer data, ByteBuffer stats, ByteBuffer parts) throws StoreException
+    {
+        return new BaseChunk(getDescriptor(descriptorId), timestamp, duration, data, stats, parts, dictionary);
+    }
+
+    private BaseDescriptor getDescriptor(long descriptorId) throws StoreException
+    {
+        if (lastUsedDescriptor != null && lastUsedDescriptor.getId() == descriptorId)
+        {
+            // use last used descriptor (avoid expensive look-up in common append-with-same-descriptor case)
+            return lastUsedDescriptor;
+        }
+
+        // lookup descriptor by id
+        return descriptorCache.get(descriptorId);
+    }
+
+
+    @Override
+    public Chunk findByTimestamp(long ts) throws StoreException
+    {
+        return transact(() ->
+        {
+            try
+            {
+                return findChunkOrPart(BaseChunk.toMicros(ts));
+            }
+            catch (StoreException e)
+            {
+                throw new StoreException("failed to read chunk for timestamp " + ts);
+            }
+        });
+    }
+
+    @Override
+    public Chunk findByTimestamp(long ts, int trackId) throws StoreException
+    {
+        return transact(() ->
+        {
+            try
+            {
+                final long tsMicros = BaseChunk.toMicros(ts);
+                final BaseChunk chunk = readTrack(tsMicros, trackId);
+
+                return chunk != null && chunk.getPartsData() != null ? BaseCompaction.slice(chunk, tsMicros) : chunk;
+            }
+            catch (StoreException e)
+            {
+                throw new StoreException("failed to read track " + trackId + " of chunk for timestamp " + ts + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Find the chunk beginning at the timestamp or slice it out of the merged chunk containing it (call within a transaction).
+     *
+     * @return The chunk or null if no chunk or part of a merged chunk begins at this timestamp
+     */
+    private Chunk findChunkOrPart(long tsMicros) throws StoreException
+    {
+        final BaseChunk chunk = (BaseChunk) dao.selectChunkCoveringTimestamp(tsMicros, this::createChunk);
+        if (chunk != null && chunk.getPartsData() != null)
+        {
+            return BaseCompaction.slice(chunk, tsMicros);
+        }
+
+        return chunk != null && chunk.getTimestampMicros() == tsMicros ? chunk : null;
+    }
+
+    /**
+     * Read a partial chunk containing only the specified track (call within a transaction).
+     *
+     * @return The partial chunk beginning at the timestamp, the partial merged chunk containing it or null if there is neither
+     */
+    private BaseChunk readTrack(long tsMicros, int trackId) throws StoreException
+    {
+        return (BaseChunk) dao.selectChunkRangesCoveringTimestamp(tsMicros, (chunkTs, duration, descriptorId, stats, parts, reader) ->
+                chunkTs == tsMicros || parts != null
+                        ? BaseChunk.readTrack(getDescriptor(descriptorId), dictionary, chunkTs, duration, stats, parts, trackId, reader)
+                        : null);
+    }
+
+    /**
+     * Slice merged chunks that aren't completely within the range (microseconds, end exclusive) down to the parts that began within it.
+     *
+     * @return The chunk, its slice or null if none of its parts began within the range
+     */
+    private static Chunk sliceToRange(Chunk chunk, long tsBeginMicros, long tsEndMicros)
+    {
+        final BaseChunk baseChunk = (BaseChunk) chunk;
+        final long tsMicros = baseChunk.getTimestampMicros();
+        if (tsMicros >= tsBeginMicros && tsMicros + baseChunk.getDurationMicros() <= tsEndMicros || baseChunk.getPartsData() == null)
+        {
+            return chunk;
+        }
+
+        return BaseCompaction.slice(baseChunk, tsBeginMicros, tsEndMicros);
+    }
+
+    @Override
+    public List<Chunk> findByTimestampRange(long tsBegin, long tsEnd) throws StoreException
+    {
+        return transact(() ->
+        {
+            try
+            {
+                final long tsBeginMicros = BaseChunk.toMicros(tsBegin);
+                final long tsEndMicros = BaseChunk.toMicros(tsEnd);
+                final List<Chunk> chunks = new ArrayList<>();
+                for (final Chunk chunk : dao.selectChunksByTimestampRange(tsBeginMicros, tsEndMicros, this::createChunk))
+                {
+                    final Chunk slice = sliceToRange(chunk, tsBeginMicros, tsEndMicros);
+                    if (slice != null)
+                    {
+                        chunks.add(slice);
+                    }
+                }
+
+                return chunks;
+            }
+            catch (StoreException e)
+            {
+                throw new StoreException("failed to read chunks for timestamps between " + tsBegin + " and " + tsEnd + " (exclusive)"
+                        + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public ChunkCursor scan(long tsBegin, long tsEnd) throws StoreException
+    {
+        return scanMicros(BaseChunk.toMicros(tsBegin), BaseChunk.toMicros(tsEnd));
+    }
+
+    @Override
+    public ChunkCursor scanMicros(long tsBeginMicros, long tsEndMicros) throws StoreException
+    {
+        // the running statement keeps a read transaction open (or joins the batch's transaction) until closed
+        try
+        {
+            return new SlicingChunkCursor(dao.selectChunkCursorByTimestampRange(tsBeginMicros, tsEndMicros, this::createChunk), tsBeginMicros, tsEndMicros);
+        }
+        catch (StoreException e)
+        {
+            throw new StoreException("failed to scan chunks for timestamps between " + tsBeginMicros + " and " + tsEndMicros + " microseconds (exclusive)"
+                    + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Aggregation aggregate(int trackId, long tsFirst, long tsLast, long windowSeconds, AggregateFunction... functions) throws StoreException
+    {
+        final BaseAggregation aggregation = new BaseAggregation(tsFirst, tsLast, windowSeconds, functions);
+
+        return transact(() -> aggregateChunks(aggregation, trackId, tsFirst, tsLast));
+    }
+
+    /**
+     * Add the statistics of the track's chunks within the range to the aggregation (call within a transaction).
+     */
+    private Aggregation aggregateChunks(BaseAggregation aggregation, int trackId, long tsFirst, long tsLast) throws StoreException
+    {
+        try
+        {
+            final long tsBeginMicros = BaseChunk.toMicros(tsFirst);
+            final long tsEndMicros = BaseChunk.toMicros(tsLast);
+            dao.selectChunkStatsByTimestampRange(tsBeginMicros, tsEndMicros, (tsMicros, duration, descriptorId, stats, parts) ->
+                    spreadTrackStats(tsMicros, descriptorId, stats, parts, trackId, tsBeginMicros, tsEndMicros, aggregation::window,
+                            (partTsMicros, trackStats) -> aggregation.add(BaseChunk.toSeconds(partTsMicros), trackStats)));
+
+            return aggregation;
+        }
+        catch (StoreException e)
+        {
+            throw new StoreException("failed to aggregate track " + trackId + " for timestamps between " + tsFirst + " and " + tsLast
+                    + " (exclusive): " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Aggregation overview(int trackId, long tsFirst, long tsLast, int maxWindows) throws StoreException
+    {
+        if (maxWindows < 1)
+        {
+            throw new IllegalArgumentException("maxWindows must be positive: " + maxWindows);
+        }
+        else if (tsLast < tsFirst)
+        {
+            throw new IllegalArgumentException("tsLast " + tsLast + " is smaller than tsFirst " + tsFirst);
+        }
+
+        final long windowSeconds = Math.max(1L, (tsLast - tsFirst + maxWindows - 1) / maxWindows);
+        final long level = BaseRollups.coarsestLevel(windowSeconds);
+
+        return transact(() ->
+        {
+            if (level == 0L || !isRollupsEnabled())
+            {
+                // don't call aggregate() here, its transaction would commit this one
+                return aggregateChunks(new BaseAggregation(tsFirst, tsLast, windowSeconds, OVERVIEW_FUNCTIONS), trackId, tsFirst, tsLast);
+            }
+
+            // align the windows to the level, so every bucket belongs to exactly one window
+            final long alignedFirst = BaseRollups.bucket(tsFirst, level);
+            final long alignedWindowSeconds = (windowSeconds + level - 1) / level * level;
+            final BaseAggregation aggregation = new BaseAggregation(alignedFirst, tsLast, alignedWindowSeconds, OVERVIEW_FUNCTIONS);
+            try
+            {
+                dao.selectRollupsByTimestampRange(level, trackId, alignedFirst, tsLast, aggregation::add);
+
+                return aggregation;
+            }
+            catch (StoreException e)
+            {
+                throw new StoreException("failed to read rollups of track " + trackId + " for timestamps between " + tsFirst + " and " + tsLast
+                        + " (exclusive): " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public void rebuildRollups() throws StoreException
+    {
+        if (state != State.OPEN_READWRITE)
+        {
+            throw new StoreException("store not writable");
+        }
+
+        transact(() ->
+        {
+            try
+            {
+                dao.deleteRollups();
+
+                // one open bucket per level and track, chunks are visited in timestamp order
+                final Map<Integer, BaseRollups.Bucket[]> buckets = new HashMap<>();
+                dao.selectChunkStatsByTimestampRange(Long.MIN_VALUE, Long.MAX_VALUE, (tsMicros, duration, descriptorId, stats, parts) ->
+                {
+                    for (final Track track : getDescriptor(descriptorId))
+                    {
+                        final int trackId = track.getId();
+                        spreadTrackStats(tsMicros, descriptorId, stats, parts, trackId, Long.MIN_VALUE, Long.MAX_VALUE,
+                                timestamp -> BaseRollups.bucket(timestamp, BaseRollups.LEVELS[0]), (partTsMicros, trackStats) ->
+                                {
+                                    final long ts = BaseChunk.toSeconds(partTsMicros);
+                                    final BaseRollups.Bucket[] trackBuckets = buckets.computeIfAbsent(trackId, id -> new BaseRollups.Bucket[BaseRollups.LEVELS.length]);
+                                    for (int i = 0; i < trackBuckets.length; ++i)
+                                    {
+                                        final long level = BaseRollups.LEVELS[i];
+                                        final long begin = BaseRollups.bucket(ts, level);
+                                        if (trackBuckets[i] == null)
+                                        {
+                                            trackBuckets[i] = new BaseRollups.Bucket(begin);
+                                        }
+                                        else if (trackBuckets[i].getTimestamp() != begin)
+                                        {
+                                            trackBuckets[i].flush(rollupWriter(level, trackId), begin);
+                                        }
+
+                                        trackBuckets[i].add(trackStats);
+                                    }
+                                });
+                    }
+                });
+
+                for (final Map.Entry<Integer, BaseRollups.Bucket[]> entry : buckets.entrySet())
+                {
+                    final BaseRollups.Bucket[] trackBuckets = entry.getValue();
+                    for (int i = 0; i < trackBuckets.length; ++i)
+                    {
+                        trackBuckets[i].flush(rollupWriter(BaseRollups.LEVELS[i], entry.getKey()), 0L);
+                    }
+                }
+
+                dao.insertOrReplaceMeta(ReservedMetaKey.ROLLUPS.name(), Boolean.TRUE.toString());
+
+                return null;
+            }
+            catch (StoreException e)
+            {
+                throw new StoreException("failed to rebuild rollups: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public int compact(long tsFirst, long tsLast, long targetSpanSeconds) throws StoreException
     {
+        if (targetSpanSeconds <= 0)
+        {
+            throw new IllegalArgumentException("targetSpanSeconds must be positive: " + targetSpanSeconds);
+        }
+
         if (state != State.OPEN_READWRITE)
         {
             throw new StoreException("store not writable");
         }
 
-        if (!(chunk instanceof BaseChunk))
+        final long spanMicros = BaseChunk.toMicros(targetSpanSeconds);
+        final long endMicros = BaseChunk.toMicros(tsLast);
+        try
         {
-            throw new StoreException("cannot put unsupported chunk: " + (chunk != null ? chunk.getClass().getName() : null));
+            // one transaction per window, skipping windows without chunks
+            int removed = 0;
+            long next = transact(() -> dao.selectNextChunkTimestamp(BaseChunk.toMicros(tsFirst)));
+            while (next >= 0 && next < endMicros)
+            {
+                final long windowBegin = next - Math.floorMod(next, spanMicros);
+                final long windowEnd = windowBegin < endMicros - spanMicros ? windowBegin + spanMicros : endMicros;
+                final long begin = next;
+
+                removed += transact(() -> compactWindow(begin, windowEnd));
+                next = transact(() -> dao.selectNextChunkTimestamp(windowEnd));
+            }
+
+            return removed;
         }
+        catch (StoreException e)
+        {
+            throw new StoreException("failed to compact chunks for timestamps between " + tsFirst + " and " + tsLast
+                    + " (exclusive): " + e.getMessage(), e);
+        }
+    }
 
-        final BaseChunk actualChunk = ((BaseChunk) chunk).forStore(id);
-        transact(() ->
+    /**
+     * Merge all groups of adjacent chunks within the range (call within a transaction).
+     *
+     * @return The number of chunks removed
+     */
+    private int compactWindow(long tsBeginMicros, long tsEndMicros) throws StoreException
+    {
+        final List<Chunk> chunks = new ArrayList<>();
+        for (final Chunk chunk : dao.selectChunksByTimestampRange(tsBeginMicros, tsEndMicros, this::createChunk))
         {
-            descriptorCache.intern(actualChunk.getDescriptor());
-            try
+            // skip a merged chunk that began before the window
+            if (chunk.getTimestampMicros() >= tsBeginMicros)
             {
-                dao.insertOrReplaceTrackChunk(actualChunk.getTimestamp(), actualChunk.getDescriptor().getId(), actualChunk.getData());
+                chunks.add(chunk);
             }
-            catch (StoreException e)
+        }
+
+        int removed = 0;
+        int groupBegin = 0;
+        for (int i = 1; i <= chunks.size(); ++i)
+        {
+            if (i == chunks.size() || !isMergeable((BaseChunk) chunks.get(i - 1), (BaseChunk) chunks.get(i)))
             {
-                throw new StoreException("failed to persist chunk", e);
+                if (i - groupBegin > 1)
+                {
+                    final List<BaseChunk> group = new ArrayList<>(i - groupBegin);
+                    for (final Chunk chunk : chunks.subList(groupBegin, i))
+                    {
+                        group.add((BaseChunk) chunk);
+                    }
+
+                    mergeChunks(group);
+                    removed += group.size() - 1;
+                }
+
+                groupBegin = i;
             }
+        }
 
-            return null;
-        });
+        return removed;
+    }
+
+    private static boolean isMergeable(BaseChunk previous, BaseChunk chunk)
+    {
+        return previous.getDescriptor().getId() == chunk.getDescriptor().getId()
+                && previous.getTimestampMicros() + previous.getDurationMicros() == chunk.getTimestampMicros()
+                && BaseCompaction.isCompactable(chunk.getDescriptor());
     }
 
     /**
-     * Factory method which allows the DAO to create chunks for us.
+     * Replace the adjacent chunks with a single merged chunk (call within a transaction).
+     * <p>
+     * The rollups stay valid, merged chunks are spread over the buckets of their parts.
      */
-    private Chunk createChunk(long timestamp, long descriptorId, ByteBuffer data) throws StoreException
+    private void mergeChunks(List<BaseChunk> group) throws StoreException
     {
-        final BaseDescriptor descriptor;
-        if (lastUsedDescriptor != null && lastUsedDescriptor.getId() == descriptorId)
+        final BaseChunk merged = BaseCompaction.merge(group, dictionary);
+        for (final BaseChunk chunk : group.subList(1, group.size()))
         {
-            // use last used descriptor (avoid expensive look-up in common append-with-same-descriptor case)
-            descriptor = lastUsedDescriptor;
+            dao.deleteTrackChunk(chunk.getTimestampMicros());
         }
-        else
+
+        // replaces the first chunk
+        insertChunk(merged, false);
+    }
+
+    /**
+     * Get the statistics of an int[] track from the stored statistics or, for chunks stored without, by decoding the track.
+     *
+     * @return The statistics or null if the chunk has no such int[] track
+     */
+    private BaseStats findTrackStats(long tsMicros, long descriptorId, ByteBuffer stats, int trackId) throws StoreException
+    {
+        if (stats != null)
         {
-            // lookup descriptor by id
-            descriptor = descriptorCache.get(descriptorId);
+            return BaseStats.find(stats, trackId);
         }
 
-        return new BaseChunk(descriptor, timestamp, data);
-    }
+        final BaseDescriptor descriptor = getDescriptor(descriptorId);
+        final BaseDescriptor.SQLiteTrack track = descriptor.getTrack(trackId);
+        if (track != null && Encoder.isIntegerEncoding(track.getEncoding()))
+        {
+            final Chunk chunk = readTrack(tsMicros, trackId);
+            if (chunk == null)
+            {
+                throw new StoreException("chunk vanished while reading");
+            }
 
+            return BaseStats.of(trackId, chunk.getIntegers(trackId));
+        }
 
-    @Override
-    public Chunk findByTimestamp(long ts) throws StoreException
+        return null;
+    }
+
+    /**
+     * Pass the statistics of an int[] track to the consumer, spreading merged chunks over the timestamps of their parts
+     * (call within a transaction).
+     * <p>
+     * Only parts that began within the range (microseconds, end exclusive) are passed. A merged chunk whose parts all
+     * lie within the range and map to the same window is passed as a whole, without decoding the track.
+     *
+     * @param window Maps a timestamp (seconds) to the window (or bucket) the statistics are accumulated in
+     */
+    private void spreadTrackStats(long tsMicros, long descriptorId, ByteBuffer stats, ByteBuffer parts, int trackId,
+                                  long tsBeginMicros, long tsEndMicros, LongUnaryOperator window, TrackStatsConsumer consumer) throws StoreException
     {
-        return transact(() ->
+        final BaseStats trackStats = findTrackStats(tsMicros, descriptorId, stats, trackId);
+        if (trackStats == null)
         {
-            try
+            return;
+        }
+
+        if (parts == null)
+        {
+            // only merged chunks may begin before the range
+            consumer.accept(tsMicros, trackStats);
+            return;
+        }
+
+        final BaseChunkParts index = BaseChunkParts.decode(parts);
+        final int first = tsBeginMicros > tsMicros ? index.ceiling(tsBeginMicros - tsMicros) : 0;
+        final int end = tsEndMicros > tsMicros ? index.ceiling(tsEndMicros - tsMicros) : 0;
+        if (first == 0 && end == index.size()
+                && window.applyAsLong(BaseChunk.toSeconds(tsMicros)) == window.applyAsLong(BaseChunk.toSeconds(tsMicros + index.getOffset(end - 1))))
+        {
+            consumer.accept(tsMicros, trackStats);
+        }
+        else if (first < end)
+        {
+            final BaseChunk chunk = readTrack(tsMicros, trackId);
+            if (chunk == null)
             {
-                return dao.selectChunkByTimestamp(ts, this::createChunk);
+                throw new StoreException("chunk vanished while reading");
             }
-            catch (StoreException e)
+
+            final int[] integers = chunk.getIntegers(trackId);
+            final int field = chunk.getDescriptor().getTrack(trackId).getIndex();
+            int start = index.getStart(first, field);
+            for (int part = first; part < end; ++part)
             {
-                throw new StoreException("failed to read chunk for timestamp " + ts);
+                final int count = index.getCount(part, field);
+                consumer.accept(tsMicros + index.getOffset(part), BaseStats.of(trackId, integers, start, count));
+                start += count;
             }
-        });
+        }
     }
 
-    @Override
-    public List<Chunk> findByTimestampRange(long tsBegin, long tsEnd) throws StoreException
+    /**
+     * Find at most limit chunks by timestamp range (microseconds), allows paging through a range without holding a cursor open.
+     */
+    List<Chunk> findByTimestampMicrosRange(long tsBeginMicros, long tsEndMicros, int limit) throws StoreException
     {
-        return transact(() ->
+        try (final ChunkCursor cursor = scanMicros(tsBeginMicros, tsEndMicros))
         {
-            try
-            {
-                return dao.selectChunksByTimestampRange(tsBegin, tsEnd, this::createChunk);
-            }
-            catch (StoreException e)
+            final List<Chunk> chunks = new ArrayList<>(Math.min(limit, 1024));
+            while (chunks.size() < limit && cursor.hasNext())
             {
-                throw new StoreException("failed to read chunks for timestamps between " + tsBegin + " and " + tsEnd + " (exclusive)"
-                        + ": " + e.getMessage(), e);
+                chunks.add(cursor.next());
             }
-        });
+
+            return chunks;
+        }
+        catch (UncheckedStoreException e)
+        {
+            throw e.getCause();
+        }
     }
 
     @Override
@@ -256,7 +1004,9 @@ public class BaseStore implements Store
         {
             try
             {
-                return dao.selectMaxChunkTimestamp();
+                final long tsMicros = dao.selectMaxChunkTimestamp();
+
+                return tsMicros >= 0 ? BaseChunk.toSeconds(tsMicros) : -1L;
             }
             catch (StoreException e)
             {
@@ -320,7 +1070,7 @@ public class BaseStore implements Store
             throw new IllegalArgumentException("incompatible descriptor implementation");
         }
 
-        return new BaseChunk.Builder((BaseDescriptor) descriptor);
+        return new BaseChunk.Builder((BaseDescriptor) descriptor, dictionary);
     }
 
     /**
@@ -351,7 +1101,9 @@ public class BaseStore implements Store
                     case OPEN_READONLY:
                     {
                         lastUsedDescriptor = null;
+                        batch = null;
                         descriptorCache.clear();
+                        dictionary.clear();
 
                         try
                         {
@@ -375,6 +1127,58 @@ public class BaseStore implements Store
         }
     }
 
+    /**
+     * Share the dictionary with other instances operating on the same file. Call before this store is used.
+     */
+    void useDictionary(BaseDictionary dictionary)
+    {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Insert the dictionary value if it doesn't exist yet and return its ID.
+     */
+    int selectOrInsertDictionaryId(String value) throws StoreException
+    {
+        if (state != State.OPEN_READWRITE)
+        {
+            throw new StoreException("store not writable");
+        }
+
+        // the ID is cached and used by the chunks put later, so a rollback must not make the ID available again
+        return commitSeparately(() ->
+        {
+            try
+            {
+                return dao.insertDictionaryValueAndSelectId(value);
+            }
+            catch (StoreException e)
+            {
+                throw new StoreException("failed to put dictionary value: " + value + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Find the dictionary value with the specified ID.
+     *
+     * @return The value or null if there is no value with this ID
+     */
+    String selectDictionaryValue(int id) throws StoreException
+    {
+        return transact(() ->
+        {
+            try
+            {
+                return dao.selectDictionaryValue(id);
+            }
+            catch (StoreException e)
+            {
+                throw new StoreException("failed to get dictionary value with id: " + id + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
     /**
      * Get the stores DAO.
      */
@@ -383,13 +1187,62 @@ public class BaseStore implements Store
         return dao;
     }
 
+    /**
+     * Run a TransactionalTask inside a DB transaction of its own that is committed before returning.
+     * <p>
+     * If a batch is open, the chunks pending in the batch are committed first. If the task fails, its changes are
+     * rolled back and the batch continues with an empty transaction.
+     */
+    private <T> T commitSeparately(TransactionalTask<T> task) throws StoreException
+    {
+        if (batch != null)
+        {
+            batch.flush();
+            final T result = transact(task);
+            batch.flush();
+
+            return result;
+        }
+
+        return transact(task);
+    }
+
     /**
      * Run a TransactionalTask inside a new DB transaction.
      * <p>
-     * The transaction is automatically rolled back on any exception thrown from the task.
+     * The transaction is automatically rolled back on any exception thrown from the task. If a batch is open, the task
+     * joins the batch's transaction instead and only its own changes are rolled back (to a savepoint).
      */
     private <T> T transact(TransactionalTask<T> task) throws StoreException
     {
+        if (batch != null)
+        {
+            // join the transaction of the open batch, it is committed together with the batch
+            final Transaction transaction = batch.begin();
+            transaction.savepoint();
+            try
+            {
+                final T result = task.perform();
+
+                transaction.release();
+
+                return result;
+            }
+            catch (RuntimeException | StoreException e)
+            {
+                try
+                {
+                    transaction.rollbackToSavepoint();
+                }
+                catch (StoreException e1)
+                {
+                    e.addSuppressed(e1);
+                }
+
+                throw e;
+            }
+        }
+
         try (final Transaction transaction = dao.getTransaction())
         {
             // if task throws, the transaction is rolled back
@@ -527,6 +1380,107 @@ public class BaseStore implements Store
     }
 
 
+    /**
+     * Write session that commits every maxBatchSize chunks.
+     */
+    private class BaseBatch implements Batch
+    {
+        private final int maxBatchSize;
+
+        private Transaction transaction;
+
+        private int pendingCount = 0;
+
+
+        private BaseBatch(int maxBatchSize)
+        {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+
+        @Override
+        public void put(Chunk chunk) throws StoreException
+        {
+            ensureOpen();
+
+            final BaseChunk actualChunk = toLocalChunk(chunk);
+            begin();
+            try
+            {
+                insertChunk(actualChunk, isRollupsEnabled());
+            }
+            catch (StoreException e)
+            {
+                pendingCount = 0;
+                try
+                {
+                    // descriptors and dictionary values are committed separately, so only the pending chunks are gone
+                    transaction.rollback();
+                }
+                catch (StoreException e1)
+                {
+                    e.addSuppressed(e1);
+                }
+
+                throw e;
+            }
+
+            if (++pendingCount >= maxBatchSize)
+            {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws StoreException
+        {
+            ensureOpen();
+
+            if (transaction != null)
+            {
+                pendingCount = 0;
+                transaction.commit();
+            }
+        }
+
+        @Override
+        public void close() throws StoreException
+        {
+            if (batch == this)
+            {
+                try
+                {
+                    flush();
+                }
+                finally
+                {
+                    batch = null;
+                }
+            }
+        }
+
+
+        /**
+         * Begin a new transaction unless one is running already.
+         */
+        private Transaction begin() throws StoreException
+        {
+            transaction = dao.getTransaction();
+
+            return transaction;
+        }
+
+
+        private void ensureOpen()
+        {
+            if (batch != this)
+            {
+                throw new IllegalStateException("batch has already been closed");
+            }
+        }
+    }
+
+
     /**
      * This stores state.
      */
@@ -540,4 +1494,71 @@ public class BaseStore implements Store
 
         CLOSED
     }
+
+
+    @FunctionalInterface
+    private interface TrackStatsConsumer
+    {
+        /**
+         * Process the statistics of a track within the chunk or part with the specified timestamp (microseconds).
+         */
+        void accept(long timestampMicros, BaseStats stats) throws StoreException;
+    }
+
+
+    /**
+     * Cursor that slices merged chunks down to the parts within the scanned range.
+     */
+    private static class SlicingChunkCursor implements ChunkCursor
+    {
+        private final ChunkCursor cursor;
+
+        private final long tsBeginMicros;
+
+        private final long tsEndMicros;
+
+        private Chunk next;
+
+
+        private SlicingChunkCursor(ChunkCursor cursor, long tsBeginMicros, long tsEndMicros)
+        {
+            this.cursor = cursor;
+            this.tsBeginMicros = tsBeginMicros;
+            this.tsEndMicros = tsEndMicros;
+        }
+
+
+        @Override
+        public boolean hasNext()
+        {
+            // only the merged chunk containing the range's begin may have no part within the range
+            while (next == null && cursor.hasNext())
+            {
+                next = sliceToRange(cursor.next(), tsBeginMicros, tsEndMicros);
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public Chunk next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            final Chunk chunk = next;
+            next = null;
+
+            return chunk;
+        }
+
+        @Override
+        public void close() throws StoreException
+        {
+            next = null;
+            cursor.close();
+        }
+    }
 }
@@ -0,0 +1,692 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+
+import net.talpidae.multiflex.format.Chunk;
+import net.talpidae.multiflex.format.Descriptor;
+import net.talpidae.multiflex.store.AggregateFunction;
+import net.talpidae.multiflex.store.Aggregation;
+import net.talpidae.multiflex.store.ChunkCursor;
+import net.talpidae.multiflex.store.Store;
+import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.UncheckedStoreException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+
+/**
+ * Store that serves reads from a pool of read-only store instances while a single instance performs all writes.
+ * Without read-only instances the writer serves reads, too.
+ * <p>
+ * Each instance is confined to a thread of its own, operations are handed to these threads and may
+ * therefore be called from any thread. Readers only proceed concurrently with the writer in WAL journal mode.
+ */
+public class ConcurrentStore implements Store
+{
+    private static final int SCAN_PAGE_SIZE = 256;
+
+    // interval at which producers waiting for space in the write queue check if the store has been closed
+    private static final long WRITE_QUEUE_POLL_MILLIS = 100;
+
+    private final Supplier<BaseStore> storeFactory;
+
+    private final int readerCount;
+
+    private final BlockingQueue<PendingPut> writeQueue;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // shared by all threads' stores, so text decoding rarely needs to wait for a reader
+    private final BaseDictionary dictionary;
+
+    private StoreExecutor<BaseStore> writer;
+
+    private StoreExecutor<BaseStore> readers;
+
+    private volatile boolean closed = false;
+
+    private volatile UUID id;
+
+    private volatile int version;
+
+
+    /**
+     * Create a concurrent store.
+     *
+     * @param storeFactory Creates a new unopened store instance for each thread
+     * @param readerCount        Number of read-only store instances (and threads), 0 to serve reads by the writer
+     * @param writeQueueCapacity Maximum number of chunks queued by putAsync()
+     */
+    public ConcurrentStore(Supplier<BaseStore> storeFactory, int readerCount, int writeQueueCapacity)
+    {
+        if (readerCount < 0)
+        {
+            throw new IllegalArgumentException("readerCount must not be negative");
+        }
+
+        if (writeQueueCapacity < 1)
+        {
+            throw new IllegalArgumentException("writeQueueCapacity must be larger than 0");
+        }
+
+        this.dictionary = new BaseDictionary(new BaseDictionary.Source()
+        {
+            @Override
+            public int selectOrInsertId(String value) throws StoreException
+            {
+                return getWriter().call(store -> store.selectOrInsertDictionaryId(value));
+            }
+
+            @Override
+            public String selectValue(int id) throws StoreException
+            {
+                return getReaders().call(store -> store.selectDictionaryValue(id));
+            }
+        });
+        this.storeFactory = () ->
+        {
+            final BaseStore store = storeFactory.get();
+            store.useDictionary(dictionary);
+
+            return store;
+        };
+        this.readerCount = readerCount;
+        this.writeQueue = new ArrayBlockingQueue<>(writeQueueCapacity);
+    }
+
+    @Override
+    public Store open(boolean writable) throws StoreException
+    {
+        synchronized (this)
+        {
+            if (readers != null)
+            {
+                throw new StoreException("store has already been opened");
+            }
+
+            try
+            {
+                // the writer creates or migrates the schema before any reader looks at it
+                if (writable)
+                {
+                    writer = new StoreExecutor<>("multiflex-writer", 1, storeFactory, true);
+                    readers = readerCount > 0
+                            ? new StoreExecutor<>("multiflex-reader", readerCount, storeFactory, false)
+                            : writer;
+                    writer.call(this::initialize);
+                }
+                else
+                {
+                    readers = new StoreExecutor<>("multiflex-reader", Math.max(readerCount, 1), storeFactory, false);
+                    readers.call(this::initialize);
+                }
+            }
+            catch (RuntimeException | StoreException e)
+            {
+                final StoreException relayed = e instanceof StoreException
+                        ? (StoreException) e
+                        : new StoreException(e.getMessage(), e);
+                try
+                {
+                    close();
+                }
+                catch (StoreException e1)
+                {
+                    relayed.addSuppressed(e1);
+                }
+
+                throw relayed;
+            }
+
+            return this;
+        }
+    }
+
+    @Override
+    public void put(Chunk chunk) throws StoreException
+    {
+        getWriter().call(store ->
+        {
+            store.put(chunk);
+
+            return null;
+        });
+    }
+
+    /**
+     * Queue the chunk for the writer thread, which commits all queued chunks in one transaction.
+     * <p>
+     * Blocks while the queue is full, the future fails if the store is closed meanwhile.
+     */
+    @Override
+    public CompletableFuture<Void> putAsync(Chunk chunk)
+    {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        try
+        {
+            final StoreExecutor<BaseStore> writer = getWriter();
+
+            final PendingPut pending = new PendingPut(chunk, future);
+            while (!writeQueue.offer(pending, WRITE_QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                if (closed)
+                {
+                    throw new StoreException("store has been closed");
+                }
+            }
+
+            if (closed)
+            {
+                // close() may have failed the queued chunks before this one was added
+                failQueued(new StoreException("store has been closed"));
+
+                return future;
+            }
+
+            if (drainScheduled.compareAndSet(false, true))
+            {
+                writer.submit(this::drainWriteQueue).whenComplete((result, e) ->
+                {
+                    if (e != null)
+                    {
+                        drainScheduled.set(false);
+                        failQueued(e);
+                    }
+                });
+            }
+        }
+        catch (StoreException e)
+        {
+            future.completeExceptionally(e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new StoreException("interrupted while waiting for space in write queue"));
+        }
+
+        return future;
+    }
+
+    @Override
+    public void putAll(Iterable<? extends Chunk> chunks) throws StoreException
+    {
+        try (final Batch batch = writeBatch())
+        {
+            for (final Chunk chunk : chunks)
+            {
+                batch.put(chunk);
+            }
+        }
+    }
+
+    @Override
+    public Batch writeBatch() throws StoreException
+    {
+        return new ConcurrentBatch(getWriter().call(BaseStore::writeBatch));
+    }
+
+    @Override
+    public Batch writeBatch(int maxBatchSize) throws StoreException
+    {
+        return new ConcurrentBatch(getWriter().call(store -> store.writeBatch(maxBatchSize)));
+    }
+
+    @Override
+    public Chunk findByTimestamp(long ts) throws StoreException
+    {
+        return getReaders().call(store -> store.findByTimestamp(ts));
+    }
+
+    @Override
+    public Chunk findByTimestamp(long ts, int trackId) throws StoreException
+    {
+        return getReaders().call(store -> store.findByTimestamp(ts, trackId));
+    }
+
+    @Override
+    public List<Chunk> findByTimestampRange(long tsFirst, long tsLast) throws StoreException
+    {
+        return getReaders().call(store -> store.findByTimestampRange(tsFirst, tsLast));
+    }
+
+    /**
+     * Iterate over the chunks within the timestamp range, loading a page of chunks at a time.
+     * <p>
+     * Every page is read by a separate transaction, chunks written while scanning may or may not be seen.
+     */
+    @Override
+    public ChunkCursor scan(long tsFirst, long tsLast) throws StoreException
+    {
+        return new PagedChunkCursor(getReaders(), BaseChunk.toMicros(tsFirst), BaseChunk.toMicros(tsLast));
+    }
+
+    /**
+     * Iterate over the chunks within the timestamp range (microseconds), loading a page of chunks at a time.
+     * <p>
+     * Every page is read by a separate transaction, chunks written while scanning may or may not be seen.
+     */
+    @Override
+    public ChunkCursor scanMicros(long tsFirstMicros, long tsLastMicros) throws StoreException
+    {
+        return new PagedChunkCursor(getReaders(), tsFirstMicros, tsLastMicros);
+    }
+
+    @Override
+    public Aggregation aggregate(int trackId, long tsFirst, long tsLast, long windowSeconds, AggregateFunction... functions) throws StoreException
+    {
+        return getReaders().call(store -> store.aggregate(trackId, tsFirst, tsLast, windowSeconds, functions));
+    }
+
+    @Override
+    public Aggregation overview(int trackId, long tsFirst, long tsLast, int maxWindows) throws StoreException
+    {
+        return getReaders().call(store -> store.overview(trackId, tsFirst, tsLast, maxWindows));
+    }
+
+    @Override
+    public void rebuildRollups() throws StoreException
+    {
+        getWriter().call(store ->
+        {
+            store.rebuildRollups();
+
+            return null;
+        });
+    }
+
+    @Override
+    public int compact(long tsFirst, long tsLast, long targetSpanSeconds) throws StoreException
+    {
+        return getWriter().call(store -> store.compact(tsFirst, tsLast, targetSpanSeconds));
+    }
+
+    @Override
+    public long getEpoch() throws StoreException
+    {
+        return getReaders().call(BaseStore::getEpoch);
+    }
+
+    @Override
+    public void setEpoch(long epochMicros) throws StoreException
+    {
+        getWriter().call(store ->
+        {
+            store.setEpoch(epochMicros);
+
+            return null;
+        });
+    }
+
+    @Override
+    public long findMaxTimestamp() throws StoreException
+    {
+        return getReaders().call(BaseStore::findMaxTimestamp);
+    }
+
+    @Override
+    public String getMeta(String key) throws StoreException
+    {
+        return getReaders().call(store -> store.getMeta(key));
+    }
+
+    @Override
+    public void putMeta(String key, String value) throws StoreException
+    {
+        getWriter().call(store ->
+        {
+            store.putMeta(key, value);
+
+            return null;
+        });
+    }
+
+    @Override
+    public Descriptor.Builder descriptorBuilder()
+    {
+        return new BaseDescriptor.Builder(this);
+    }
+
+    @Override
+    public Chunk.Builder chunkBuilder(Descriptor descriptor)
+    {
+        if (!(descriptor instanceof BaseDescriptor))
+        {
+            throw new IllegalArgumentException("incompatible descriptor implementation");
+        }
+
+        return new BaseChunk.Builder((BaseDescriptor) descriptor, dictionary);
+    }
+
+    @Override
+    public UUID getId()
+    {
+        return id;
+    }
+
+    @Override
+    public int getVersion()
+    {
+        return version;
+    }
+
+    @Override
+    public void close() throws StoreException
+    {
+        synchronized (this)
+        {
+            closed = true;
+
+            final StoreException closeException = closeExecutor(readers != writer ? readers : null, closeExecutor(writer, null));
+
+            // the writer is gone, nobody drains chunks queued after its last run
+            failQueued(new StoreException("store has been closed"));
+
+            if (closeException != null)
+            {
+                throw closeException;
+            }
+        }
+    }
+
+
+    /**
+     * Close the executor, collecting a failure into closeException (created if null).
+     */
+    private static StoreException closeExecutor(StoreExecutor<BaseStore> executor, StoreException closeException)
+    {
+        if (executor != null)
+        {
+            try
+            {
+                executor.close();
+            }
+            catch (StoreException e)
+            {
+                if (closeException == null)
+                {
+                    return new StoreException("failed to close store", e);
+                }
+
+                closeException.addSuppressed(e);
+            }
+        }
+
+        return closeException;
+    }
+
+
+    /**
+     * Commit queued chunks until the queue is empty, chunks queued during a commit form the next group.
+     */
+    private Void drainWriteQueue(BaseStore store)
+    {
+        // chunks queued from now on are either drained below or schedule another run
+        drainScheduled.set(false);
+
+        final List<PendingPut> group = new ArrayList<>();
+        while (writeQueue.drainTo(group) > 0)
+        {
+            commitGroup(store, group);
+            group.clear();
+        }
+
+        return null;
+    }
+
+
+    private static void commitGroup(BaseStore store, List<PendingPut> group)
+    {
+        final List<Chunk> chunks = new ArrayList<>(group.size());
+        for (final PendingPut pending : group)
+        {
+            chunks.add(pending.chunk);
+        }
+
+        try
+        {
+            store.putGroup(chunks);
+        }
+        catch (RuntimeException | StoreException e)
+        {
+            // the group has been rolled back, put chunks one by one so that only the offending ones fail
+            for (final PendingPut pending : group)
+            {
+                try
+                {
+                    store.put(pending.chunk);
+                    pending.future.complete(null);
+                }
+                catch (RuntimeException | StoreException e1)
+                {
+                    pending.future.completeExceptionally(e1);
+                }
+            }
+
+            return;
+        }
+
+        for (final PendingPut pending : group)
+        {
+            pending.future.complete(null);
+        }
+    }
+
+
+    /**
+     * Fail all queued chunks, called in case the writer can't drain the queue (ie. after close()).
+     */
+    private void failQueued(Throwable cause)
+    {
+        final List<PendingPut> queued = new ArrayList<>();
+        writeQueue.drainTo(queued);
+        for (final PendingPut pending : queued)
+        {
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+
+    private Void initialize(BaseStore store)
+    {
+        id = store.getId();
+        version = store.getVersion();
+
+        return null;
+    }
+
+
+    private StoreExecutor<BaseStore> getWriter() throws StoreException
+    {
+        if (readers == null)
+        {
+            throw new StoreException("store has not been opened");
+        }
+
+        if (writer == null)
+        {
+            throw new StoreException("store not writable");
+        }
+
+        return writer;
+    }
+
+
+    private StoreExecutor<BaseStore> getReaders() throws StoreException
+    {
+        if (readers == null)
+        {
+            throw new StoreException("store has not been opened");
+        }
+
+        return readers;
+    }
+
+
+    /**
+     * A chunk waiting to be committed by the writer thread.
+     */
+    private static class PendingPut
+    {
+        private final Chunk chunk;
+
+        private final CompletableFuture<Void> future;
+
+
+        private PendingPut(Chunk chunk, CompletableFuture<Void> future)
+        {
+            this.chunk = chunk;
+            this.future = future;
+        }
+    }
+
+
+    /**
+     * Batch performing all operations on the writer thread.
+     */
+    private class ConcurrentBatch implements Batch
+    {
+        private final Batch batch;
+
+
+        private ConcurrentBatch(Batch batch)
+        {
+            this.batch = batch;
+        }
+
+
+        @Override
+        public void put(Chunk chunk) throws StoreException
+        {
+            getWriter().call(store ->
+            {
+                batch.put(chunk);
+
+                return null;
+            });
+        }
+
+        @Override
+        public void flush() throws StoreException
+        {
+            getWriter().call(store ->
+            {
+                batch.flush();
+
+                return null;
+            });
+        }
+
+        @Override
+        public void close() throws StoreException
+        {
+            getWriter().call(store ->
+            {
+                batch.close();
+
+                return null;
+            });
+        }
+    }
+
+
+    /**
+     * Cursor that fetches pages of chunks from the readers, continuing after the last timestamp seen.
+     */
+    private static class PagedChunkCursor implements ChunkCursor
+    {
+        private final StoreExecutor<BaseStore> readers;
+
+        private final long tsEnd;
+
+        private long tsNext;
+
+        private Iterator<Chunk> page = Collections.emptyIterator();
+
+        private boolean exhausted = false;
+
+
+        private PagedChunkCursor(StoreExecutor<BaseStore> readers, long tsBegin, long tsEnd)
+        {
+            this.readers = readers;
+            this.tsNext = tsBegin;
+            this.tsEnd = tsEnd;
+        }
+
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!page.hasNext() && !exhausted)
+            {
+                final long tsBegin = tsNext;
+                final List<Chunk> chunks;
+                try
+                {
+                    chunks = readers.call(store -> store.findByTimestampMicrosRange(tsBegin, tsEnd, SCAN_PAGE_SIZE));
+                }
+                catch (StoreException e)
+                {
+                    throw new UncheckedStoreException(e);
+                }
+
+                // a short page is the last one
+                exhausted = chunks.size() < SCAN_PAGE_SIZE;
+                if (!chunks.isEmpty())
+                {
+                    // continue after the last part of a (sliced) merged chunk, its earlier parts have been returned
+                    tsNext = ((BaseChunk) chunks.get(chunks.size() - 1)).getLastPartTimestampMicros() + 1;
+                }
+
+                page = chunks.iterator();
+            }
+
+            return page.hasNext();
+        }
+
+        @Override
+        public Chunk next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            return page.next();
+        }
+
+        @Override
+        public void close()
+        {
+            exhausted = true;
+            page = Collections.emptyIterator();
+        }
+    }
+}
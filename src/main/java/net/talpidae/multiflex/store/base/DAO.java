@@ -1,6 +1,7 @@
 package net.talpidae.multiflex.store.base;
 
 import net.talpidae.multiflex.format.Chunk;
+import net.talpidae.multiflex.store.ChunkCursor;
 import net.talpidae.multiflex.store.StoreException;
 import net.talpidae.multiflex.store.base.Transaction;
 
@@ -56,19 +57,43 @@ public interface DAO extends AutoCloseable
     ByteBuffer selectDescriptor(long id) throws StoreException;
 
     /**
-     * Find the maximum track chunk timestamp.
+     * Insert dictionary value if not exists and select its ID.
+     */
+    int insertDictionaryValueAndSelectId(String value) throws StoreException;
+
+    /**
+     * Get a dictionary value by ID.
+     *
+     * @return The value or null if there is no value with this ID
+     */
+    String selectDictionaryValue(int id) throws StoreException;
+
+    /**
+     * Find the maximum track chunk timestamp (microseconds).
      *
      * @return The maximum timestamp of any chunk contained in this store. -1 if no timestamp has been found (no chunks).
      */
     long selectMaxChunkTimestamp() throws StoreException;
 
     /**
-     * Insert a track chunk.
+     * Insert a track chunk along with the statistics of its int[] fields and the index of its parts.
+     *
+     * @param timestamp The timestamp of the chunk in microseconds since EPOCH_MICROS in table meta
+     * @param duration  The duration of the chunk in microseconds
+     * @param stats     The encoded statistics (see BaseStats) or null to remove existing statistics
+     * @param parts     The encoded index of merged chunks (see BaseChunkParts) or null to remove an existing index
+     */
+    void insertOrReplaceTrackChunk(long timestamp, long duration, long descriptorId, ByteBuffer data, ByteBuffer stats, ByteBuffer parts) throws StoreException;
+
+    /**
+     * Delete the chunk with the specified timestamp along with its statistics and index of parts.
      */
-    void insertOrReplaceTrackChunk(long timestamp, long descriptorId, ByteBuffer data) throws StoreException;
+    void deleteTrackChunk(long timestamp) throws StoreException;
 
     /**
-     * Find all chunks that lie within the specified timestamp (seconds since epochMillies in table meta).
+     * Find all chunks that lie within the specified timestamp (microseconds since EPOCH_MICROS in table meta).
+     * <p>
+     * The merged chunk (see BaseChunkParts) whose time span contains tsBegin is found, too, even though it began before.
      * <p>
      * Call this within a transaction.
      *
@@ -79,6 +104,53 @@ public interface DAO extends AutoCloseable
      */
     List<Chunk> selectChunksByTimestampRange(long tsBegin, long tsEnd, ChunkFactory descriptorById) throws StoreException;
 
+    /**
+     * Open a cursor over all chunks that lie within the specified timestamp range.
+     * <p>
+     * Chunks are only constructed while stepping the cursor. Includes the merged chunk containing tsBegin like
+     * selectChunksByTimestampRange().
+     *
+     * @param tsBegin        The begin of the range (inclusive)
+     * @param tsEnd          The upper limit of the range (exclusive)
+     * @param descriptorById Function that get a descriptor by the specified descriptor ID
+     * @return An open cursor, the caller is responsible for closing it
+     */
+    ChunkCursor selectChunkCursorByTimestampRange(long tsBegin, long tsEnd, ChunkFactory descriptorById) throws StoreException;
+
+    /**
+     * Find the timestamp of the first chunk at or after the specified timestamp.
+     * <p>
+     * Call this within a transaction.
+     *
+     * @return The timestamp or -1 if there is no such chunk
+     */
+    long selectNextChunkTimestamp(long timestamp) throws StoreException;
+
+    /**
+     * Select the chunk whose time span contains the specified timestamp using a single statement and let the factory
+     * read ranges of its data.
+     * <p>
+     * Only the ranges read are copied into the JVM, the database still reads all pages of the chunk.
+     * <p>
+     * Call this within a transaction.
+     *
+     * @return The chunk created by the factory or null if the timestamp isn't covered by any chunk
+     */
+    Chunk selectChunkRangesCoveringTimestamp(long timestamp, RangeChunkFactory chunkFactory) throws StoreException;
+
+    /**
+     * Pass the duration, descriptor ID, encoded statistics and index of parts (null if there are none) of all chunks within
+     * the specified timestamp range to the consumer, ordered by timestamp.
+     * <p>
+     * Includes the merged chunk containing tsBegin like selectChunksByTimestampRange().
+     * <p>
+     * Call this within a transaction.
+     *
+     * @param tsBegin The begin of the range (inclusive)
+     * @param tsEnd   The upper limit of the range (exclusive)
+     */
+    void selectChunkStatsByTimestampRange(long tsBegin, long tsEnd, StatsConsumer consumer) throws StoreException;
+
     /**
      * Find a chunk by timestamp.
      * <p>
@@ -86,15 +158,101 @@ public interface DAO extends AutoCloseable
      */
     Chunk selectChunkByTimestamp(long timestamp, ChunkFactory descriptorById) throws StoreException;
 
+    /**
+     * Find the chunk whose time span contains the specified timestamp.
+     * <p>
+     * Call this within a transaction.
+     *
+     * @return The chunk or null if the timestamp isn't covered by any chunk
+     */
+    Chunk selectChunkCoveringTimestamp(long timestamp, ChunkFactory descriptorById) throws StoreException;
+
+    /**
+     * Add count and sum to the rollup bucket and widen its min and max, inserts the bucket if it doesn't exist.
+     */
+    void insertOrMergeRollup(long level, int trackId, long timestamp, long count, long sum, int min, int max) throws StoreException;
+
+    /**
+     * Insert or replace a rollup bucket.
+     */
+    void insertOrReplaceRollup(long level, int trackId, long timestamp, long count, long sum, int min, int max) throws StoreException;
+
+    /**
+     * Delete a rollup bucket (if it exists).
+     */
+    void deleteRollup(long level, int trackId, long timestamp) throws StoreException;
+
+    /**
+     * Delete all rollup buckets.
+     */
+    void deleteRollups() throws StoreException;
+
+    /**
+     * Pass all rollup buckets of the level and track that begin within the specified timestamp range to the consumer,
+     * ordered by timestamp.
+     * <p>
+     * Call this within a transaction.
+     *
+     * @param tsBegin The begin of the range (inclusive)
+     * @param tsEnd   The upper limit of the range (exclusive)
+     */
+    void selectRollupsByTimestampRange(long level, int trackId, long tsBegin, long tsEnd, RollupConsumer consumer) throws StoreException;
+
 
     @FunctionalInterface
     interface ChunkFactory
     {
         /**
-         * Find a descriptor by ID and construct a chunk object from the specified timestamp and data.
+         * Find a descriptor by ID and construct a chunk object from the specified timestamp, duration, data, statistics and index of parts
+         * (both may be null).
          * <p>
          * Must throw a StoreException in case the chunk can't be built successfully.
          */
-        Chunk createChunk(long timestamp, long descriptorId, ByteBuffer data) throws StoreException;
+        Chunk createChunk(long timestamp, long duration, long descriptorId, ByteBuffer data, ByteBuffer stats, ByteBuffer parts) throws StoreException;
+    }
+
+
+    @FunctionalInterface
+    interface RangeChunkFactory
+    {
+        /**
+         * Find a descriptor by ID and construct a chunk object from the ranges of its data read using the reader.
+         * <p>
+         * The reader is only valid until this method returns, ranges must be read in ascending order of their offset.
+         * May return null to skip reading the chunk.
+         */
+        Chunk createChunk(long timestamp, long duration, long descriptorId, ByteBuffer stats, ByteBuffer parts, RangeReader reader) throws StoreException;
+    }
+
+
+    @FunctionalInterface
+    interface RangeReader
+    {
+        /**
+         * Read length bytes starting at offset, or all remaining bytes if length is -1.
+         *
+         * @return The bytes read (may be less than length)
+         */
+        ByteBuffer read(int offset, int length) throws StoreException;
+    }
+
+
+    @FunctionalInterface
+    interface StatsConsumer
+    {
+        /**
+         * Process the statistics and index of parts (both may be null) of the chunk with the specified timestamp.
+         */
+        void accept(long timestamp, long duration, long descriptorId, ByteBuffer stats, ByteBuffer parts) throws StoreException;
+    }
+
+
+    @FunctionalInterface
+    interface RollupConsumer
+    {
+        /**
+         * Process the count, sum, min and max of the rollup bucket that begins at the specified timestamp.
+         */
+        void accept(long timestamp, long count, long sum, int min, int max) throws StoreException;
     }
 }
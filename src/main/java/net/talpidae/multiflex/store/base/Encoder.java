@@ -22,34 +22,96 @@ import me.lemire.integercompression.differential.Delta;
 import net.talpidae.multiflex.format.Encoding;
 import net.talpidae.multiflex.store.StoreException;
 import net.talpidae.multiflex.store.util.Center31BitEncoding;
+import net.talpidae.multiflex.store.util.Empty;
+import net.talpidae.multiflex.store.util.LongEncoding;
+import net.talpidae.multiflex.store.util.Lz4Block;
+import net.talpidae.multiflex.store.util.XorEncoding;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
-import java.nio.IntBuffer;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 
 class Encoder
 {
     private static ThreadLocal<Encoder> INSTANCES = ThreadLocal.withInitial(Encoder::new);
 
+    // a dictionary ID is stored as unsigned variable length integer using 7 bits per byte
+    static final int MAX_DICTIONARY_ID_BYTES = 5;
+
+    // number of integers INT32_AUTO trial compresses with each candidate, FastPFOR only packs whole blocks of 256 integers
+    // (the rest is left to VariableByte), so shorter samples would measure VariableByte only
+    private static final int AUTO_SAMPLE_LENGTH = 2 * FastPFOR.BLOCK_SIZE;
+
+    // largest re-used buffer kept by each thread's instance, larger fields are decoded using temporary buffers so that
+    // a single large field doesn't pin its size in every decoding thread
+    private static final int MAX_RETAINED_BUFFER_BYTES = 1 << 20;
+
+    // INT32_AUTO selects Center31BitEncoding only for values within [-2^29, 2^29): the lines are interpolated using
+    // 32-bit arithmetic, this keeps every delta to them within the 31 bits stored
+    private static final int MAX_AUTO_CENTER31BIT_VALUE = 1 << 29;
+
+    private static final Encoding[] AUTO_CANDIDATES = {
+            Encoding.INT32_VAR_BYTE_FAST_PFOR,
+            Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR,
+            Encoding.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR,
+            Encoding.INT32_RLE,
+            Encoding.INT32_DELTA_ZIGZAG_FAST_PFOR
+    };
+
     private final SkippableComposition INT32_VAR_BYTE_FAST_PFOR;
 
     private final SkippableComposition INT32_DELTA_VAR_BYTE_FAST_PFOR;
 
     private final SkippableComposition INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR;
 
+    private final SkippableComposition INT32_DELTA_ZIGZAG_FAST_PFOR;
+
+    private final Center31BitEncodingSkippableComposition INT32_CENTER31BIT_LOSSY;
+
     private final CharsetEncoder utf8Encoder;
 
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final Inflater inflater = new Inflater(true);
+
+    private final int[] lz4HashTable = new int[Lz4Block.HASH_TABLE_SIZE];
+
+    // re-used decompressed bytes of text and of binary fields decoded into buffers without array, grows as needed (up
+    // to MAX_RETAINED_BUFFER_BYTES)
+    private byte[] blockBuffer = Empty.BYTE_ARRAY;
+
+    private final IntWrapper inPosition = new IntWrapper();
+
+    private final IntWrapper outPosition = new IntWrapper();
+
+    // re-used compressed input for decoding, grows as needed (up to MAX_RETAINED_BUFFER_BYTES)
+    private int[] decodeBuffer = Empty.INT_ARRAY;
+
+    // re-used run values and lengths for INT32_RLE, grows as needed (up to MAX_RETAINED_BUFFER_BYTES)
+    private int[] runBuffer = Empty.INT_ARRAY;
+
+    // re-used buffers for trial compression by INT32_AUTO
+    private final int[] autoSample = new int[AUTO_SAMPLE_LENGTH];
+
+    private final int[] autoSampleOut = new int[maxEncodedIntegersBytes(AUTO_SAMPLE_LENGTH) / 4];
+
 
     private Encoder()
     {
         INT32_VAR_BYTE_FAST_PFOR = new SkippableComposition(new HeapFastPFOR(), new HeapVariableByte());
         INT32_DELTA_VAR_BYTE_FAST_PFOR = new DeltaSkippableComposition(new HeapFastPFOR(), new HeapVariableByte());
-        INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR = new Center31BitEncodingSkippableComposition(new HeapFastPFOR(), new HeapVariableByte());
+        INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR = new Center31BitEncodingSkippableComposition(new HeapFastPFOR(), new HeapVariableByte(), false);
+        INT32_DELTA_ZIGZAG_FAST_PFOR = new DeltaZigZagSkippableComposition(new HeapFastPFOR(), new HeapVariableByte());
+        INT32_CENTER31BIT_LOSSY = new Center31BitEncodingSkippableComposition(new HeapFastPFOR(), new HeapVariableByte(), true);
 
         utf8Encoder = StandardCharsets.UTF_8.newEncoder();
     }
@@ -58,64 +120,257 @@ class Encoder
      * Decode a binary field.
      *
      * @param data     Buffer view of the compressed data.
+     * @param length   The number of uncompressed bytes.
      * @param encoding The encoding to use (must be compatible with outputClass).
      * @return Decoded bytes as ByteBuffer.
      */
-    static ByteBuffer decodeBinary(ByteBuffer data, Encoding encoding) throws StoreException
+    static ByteBuffer decodeBinary(ByteBuffer data, int length, Encoding encoding) throws StoreException
     {
+        if (isBlockEncoding(encoding))
+        {
+            final byte[] out = new byte[length];
+            getInstance().decompressBlock(data, out, 0, length, encoding);
+
+            return ByteBuffer.wrap(out);
+        }
+
         return data.asReadOnlyBuffer();
     }
 
+    /**
+     * Decode a binary field into the specified buffer, advancing its position.
+     *
+     * @param data     Buffer view of the compressed data.
+     * @param length   The number of uncompressed bytes.
+     * @param dest     Buffer to store the decoded bytes in, must have at least length bytes remaining.
+     * @param encoding The encoding to use (must be compatible with outputClass).
+     */
+    static void decodeBinary(ByteBuffer data, int length, ByteBuffer dest, Encoding encoding) throws StoreException
+    {
+        if (isBlockEncoding(encoding))
+        {
+            final int position = dest.position();
+            if (dest.hasArray())
+            {
+                getInstance().decompressBlock(data, dest.array(), dest.arrayOffset() + position, length, encoding);
+                dest.position(position + length);
+            }
+            else
+            {
+                final Encoder encoder = getInstance();
+                final byte[] out = encoder.getBlockBuffer(length);
+                encoder.decompressBlock(data, out, 0, length, encoding);
+                dest.put(out, 0, length);
+            }
+        }
+        else
+        {
+            dest.put(data);
+        }
+    }
+
     /**
      * Decode a text field to String.
      *
      * @param data     Buffer view of the compressed data.
+     * @param length   The number of UTF-8 bytes (only required for compressed text).
      * @param encoding The encoding to use (must be compatible with outputClass).
      * @return Decoded text as String.
      */
-    static String decodeText(ByteBuffer data, Encoding encoding) throws StoreException
+    static String decodeText(ByteBuffer data, int length, Encoding encoding) throws StoreException
     {
+        if (isBlockEncoding(encoding))
+        {
+            final Encoder encoder = getInstance();
+            final byte[] out = encoder.getBlockBuffer(length);
+            encoder.decompressBlock(data, out, 0, length, encoding);
+
+            return new String(out, 0, length, StandardCharsets.UTF_8);
+        }
+
         return StandardCharsets.UTF_8.decode(data).toString();
     }
 
+    /**
+     * Decompress a block of length bytes into out.
+     */
+    private void decompressBlock(ByteBuffer data, byte[] out, int outOffset, int length, Encoding encoding) throws StoreException
+    {
+        final byte[] in;
+        final int inOffset;
+        final int inLength = data.remaining();
+        if (data.hasArray())
+        {
+            in = data.array();
+            inOffset = data.arrayOffset() + data.position();
+        }
+        else
+        {
+            in = new byte[inLength];
+            inOffset = 0;
+            data.duplicate().get(in);
+        }
+
+        final int decodedLength;
+        switch (encoding)
+        {
+            case BINARY_DEFLATE:
+            case UTF8_DEFLATE:
+            {
+                inflater.reset();
+                inflater.setInput(in, inOffset, inLength);
+                try
+                {
+                    decodedLength = inflater.inflate(out, outOffset, length);
+                }
+                catch (DataFormatException e)
+                {
+                    throw new StoreException("failed to inflate block: " + e.getMessage(), e);
+                }
+
+                if (!inflater.finished())
+                {
+                    throw new StoreException("inflated block exceeds expected length of " + length + " bytes");
+                }
+                break;
+            }
+
+            case BINARY_LZ4:
+            case UTF8_LZ4:
+            {
+                try
+                {
+                    decodedLength = Lz4Block.decompress(in, inOffset, inLength, out, outOffset, length);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new StoreException("failed to decompress block: " + e.getMessage(), e);
+                }
+                break;
+            }
+
+            default:
+                throw new StoreException("illegal block encoding " + encoding.name());
+        }
+
+        if (decodedLength != length)
+        {
+            throw new StoreException("decompressed unexpected number of bytes: expected " + length + ", got " + decodedLength);
+        }
+
+        // consume input
+        data.position(data.limit());
+    }
+
+    /**
+     * Decode the dictionary ID of an UTF8_DICTIONARY field.
+     */
+    static int decodeDictionaryId(ByteBuffer data) throws StoreException
+    {
+        int id = 0;
+        for (int shift = 0; shift < MAX_DICTIONARY_ID_BYTES * 7; shift += 7)
+        {
+            if (!data.hasRemaining())
+            {
+                throw new StoreException("dictionary id is truncated");
+            }
+
+            final int b = data.get();
+            id |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return id;
+            }
+        }
+
+        throw new StoreException("dictionary id is too long");
+    }
+
     /**
      * Decode a int[] field.
      *
      * @param data     Buffer view of the compressed data.
      * @param encoding The encoding to use (must be compatible with outputClass).
-     * @return Decoded text as String.
+     * @return Decoded integers.
      */
     static int[] decodeIntegers(ByteBuffer data, int outLength, Encoding encoding) throws StoreException
     {
-        // TODO Make this read only as much as needed when headlessUncompress supports IntBuffers
-        final int inLength = data.remaining() / 4;
-        final int[] in = new int[inLength];
-        data.asIntBuffer().get(in);
-
         final int[] out = new int[outLength];
-        final IntWrapper inPosition = new IntWrapper();
-        final IntWrapper outPosition = new IntWrapper();
+
+        decodeIntegers(data, out, 0, outLength, encoding);
+
+        return out;
+    }
+
+    /**
+     * Decode a int[] field into the specified array.
+     *
+     * @param data      Buffer view of the compressed data.
+     * @param out       Array to store the decoded integers in.
+     * @param outOffset Index of the first decoded integer in out.
+     * @param outLength Number of integers to decode.
+     * @param encoding  The encoding to use (must be compatible with outputClass).
+     */
+    static void decodeIntegers(ByteBuffer data, int[] out, int outOffset, int outLength, Encoding encoding) throws StoreException
+    {
+        if (outOffset < 0 || outLength < 0 || outOffset > out.length - outLength)
+        {
+            throw new IndexOutOfBoundsException("can't store " + outLength + " integers at offset " + outOffset
+                    + " of array with length " + out.length);
+        }
+
+        if (encoding == Encoding.INT32_AUTO)
+        {
+            encoding = decodeAutoTag(data);
+        }
+
         final Encoder encoder = getInstance();
 
+        // copy only the field's compressed integers into the re-used buffer (the codecs can't read a ByteBuffer)
+        final int inLength = data.remaining() / 4;
+        final int[] in = encoder.getDecodeBuffer(inLength);
+        data.asIntBuffer().get(in, 0, inLength);
+
+        final IntWrapper inPosition = encoder.inPosition;
+        final IntWrapper outPosition = encoder.outPosition;
+        inPosition.set(0);
+        outPosition.set(outOffset);
+
         switch (encoding)
         {
             case INT32_VAR_BYTE_FAST_PFOR:
             {
-                // TODO Optimize this by making compression directly support ByteBuffer/IntBuffer as input/output or use array()
                 encoder.INT32_VAR_BYTE_FAST_PFOR.headlessUncompress(in, inPosition, inLength, out, outPosition, outLength);
                 break;
             }
 
             case INT32_DELTA_VAR_BYTE_FAST_PFOR:
             {
-                // TODO Optimize this by making compression directly support ByteBuffer/IntBuffer as input/output or use array()
                 encoder.INT32_DELTA_VAR_BYTE_FAST_PFOR.headlessUncompress(in, inPosition, inLength, out, outPosition, outLength);
                 break;
             }
 
             case INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR:
             {
-                encoder.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR.headlessUncompress(in, inPosition, inLength, out, outPosition, outLength);
+                uncompressCenter31Bit(encoder.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR, in, inPosition, inLength, out, outPosition, outLength);
+                break;
+            }
+
+            case INT32_DELTA_ZIGZAG_FAST_PFOR:
+            {
+                encoder.INT32_DELTA_ZIGZAG_FAST_PFOR.headlessUncompress(in, inPosition, inLength, out, outPosition, outLength);
+                break;
+            }
+
+            case INT32_CENTER31BIT_LOSSY:
+            {
+                uncompressCenter31Bit(encoder.INT32_CENTER31BIT_LOSSY, in, inPosition, inLength, out, outPosition, outLength);
+                break;
+            }
+
+            case INT32_RLE:
+            {
+                encoder.uncompressRuns(in, inLength, out, outOffset, outLength);
                 break;
             }
 
@@ -123,27 +378,259 @@ class Encoder
                 throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type int[]");
         }
 
-        if (outPosition.get() != outLength)
+        final int decodedLength = outPosition.get() - outOffset;
+        if (decodedLength != outLength)
         {
-            throw new StoreException("decompressed unexpected number of integers: expected " + outLength + ", got " + outPosition.get());
+            throw new StoreException("decompressed unexpected number of integers: expected " + outLength + ", got " + decodedLength);
         }
 
         // consume input
         data.position(data.position() + (inPosition.get() * 4));
+    }
 
-        return out;
+    private static void uncompressCenter31Bit(SkippableComposition composition, int[] in, IntWrapper inPosition,
+                                              int inLength, int[] out, IntWrapper outPosition, int outLength) throws StoreException
+    {
+        try
+        {
+            composition.headlessUncompress(in, inPosition, inLength, out, outPosition, outLength);
+        }
+        catch (Center31BitEncoding.EncodingException | IllegalArgumentException | IndexOutOfBoundsException e)
+        {
+            throw new StoreException("failed to decompress integers: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the tag of an INT32_AUTO field and return the encoding it specifies.
+     */
+    private static Encoding decodeAutoTag(ByteBuffer data) throws StoreException
+    {
+        final int tag = data.get() & 0xFF;
+        for (final Encoding candidate : AUTO_CANDIDATES)
+        {
+            if (candidate.ordinal() == tag)
+            {
+                return candidate;
+            }
+        }
+
+        throw new StoreException("invalid encoding tag: " + tag);
+    }
+
+    /**
+     * Decode a float[] field into the specified array.
+     *
+     * @param data      Buffer view of the compressed data.
+     * @param out       Array to store the decoded floats in.
+     * @param outOffset Index of the first decoded float in out.
+     * @param outLength Number of floats to decode.
+     * @param encoding  The encoding to use (must be compatible with outputClass).
+     */
+    static void decodeFloats(ByteBuffer data, float[] out, int outOffset, int outLength, Encoding encoding) throws StoreException
+    {
+        if (outOffset < 0 || outLength < 0 || outOffset > out.length - outLength)
+        {
+            throw new IndexOutOfBoundsException("can't store " + outLength + " floats at offset " + outOffset
+                    + " of array with length " + out.length);
+        }
+
+        if (encoding != Encoding.FLOAT32_XOR)
+        {
+            throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type float[]");
+        }
+
+        try
+        {
+            XorEncoding.decodeFloats(data, out, outOffset, outLength);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            throw new StoreException("failed to decompress floats: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decode a double[] field into the specified array.
+     *
+     * @param data      Buffer view of the compressed data.
+     * @param out       Array to store the decoded doubles in.
+     * @param outOffset Index of the first decoded double in out.
+     * @param outLength Number of doubles to decode.
+     * @param encoding  The encoding to use (must be compatible with outputClass).
+     */
+    static void decodeDoubles(ByteBuffer data, double[] out, int outOffset, int outLength, Encoding encoding) throws StoreException
+    {
+        if (outOffset < 0 || outLength < 0 || outOffset > out.length - outLength)
+        {
+            throw new IndexOutOfBoundsException("can't store " + outLength + " doubles at offset " + outOffset
+                    + " of array with length " + out.length);
+        }
+
+        if (encoding != Encoding.FLOAT64_XOR)
+        {
+            throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type double[]");
+        }
+
+        try
+        {
+            XorEncoding.decodeDoubles(data, out, outOffset, outLength);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            throw new StoreException("failed to decompress doubles: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decode a long[] field into the specified array.
+     *
+     * @param data      Buffer view of the compressed data.
+     * @param out       Array to store the decoded longs in.
+     * @param outOffset Index of the first decoded long in out.
+     * @param outLength Number of longs to decode.
+     * @param encoding  The encoding to use (must be compatible with outputClass).
+     */
+    static void decodeLongs(ByteBuffer data, long[] out, int outOffset, int outLength, Encoding encoding) throws StoreException
+    {
+        if (outOffset < 0 || outLength < 0 || outOffset > out.length - outLength)
+        {
+            throw new IndexOutOfBoundsException("can't store " + outLength + " longs at offset " + outOffset
+                    + " of array with length " + out.length);
+        }
+
+        try
+        {
+            switch (encoding)
+            {
+                case INT64_DELTA_OF_DELTA:
+                {
+                    LongEncoding.decodeDeltaOfDelta(data, out, outOffset, outLength);
+                    break;
+                }
+
+                case INT64_ZIGZAG_VAR_BYTE:
+                {
+                    LongEncoding.decodeZigZagVarByte(data, out, outOffset, outLength);
+                    break;
+                }
+
+                default:
+                    throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type long[]");
+            }
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            throw new StoreException("failed to decompress longs: " + e.getMessage(), e);
+        }
     }
 
     /**
      * Encode a field of a binary type.
      *
      * @param in       The input buffer to encode.
-     * @param out      Buffer to write the compressed data to.
+     * @param out      Buffer to write the compressed data to, must be backed by an array if compressing.
      * @param encoding The encoding to use (must a compatible with class of input).
      */
     static void encodeBinary(ByteBuffer in, ByteBuffer out, Encoding encoding)
     {
-        out.put(in);
+        if (isBlockEncoding(encoding))
+        {
+            final int length = in.remaining();
+            if (in.hasArray())
+            {
+                getInstance().compressBlock(in.array(), in.arrayOffset() + in.position(), length, out, encoding);
+                in.position(in.limit());
+            }
+            else
+            {
+                final byte[] bytes = new byte[length];
+                in.get(bytes);
+                getInstance().compressBlock(bytes, 0, length, out, encoding);
+            }
+        }
+        else
+        {
+            out.put(in);
+        }
+    }
+
+    /**
+     * Encode UTF-8 bytes of a text field using a compressing text encoding.
+     *
+     * @param utf8     The UTF-8 encoded text.
+     * @param out      Buffer to write the compressed data to, must be backed by an array.
+     * @param encoding The encoding to use (must a compatible with class of input).
+     */
+    static void encodeText(byte[] utf8, ByteBuffer out, Encoding encoding) throws StoreException
+    {
+        if (encoding == Encoding.UTF8_DEFLATE || encoding == Encoding.UTF8_LZ4)
+        {
+            getInstance().compressBlock(utf8, 0, utf8.length, out, encoding);
+        }
+        else
+        {
+            throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type byte[]");
+        }
+    }
+
+    /**
+     * Compress length bytes starting at offset into out, advancing its position.
+     */
+    private void compressBlock(byte[] in, int offset, int length, ByteBuffer out, Encoding encoding)
+    {
+        final byte[] outArray = out.array();
+        final int outOffset = out.arrayOffset() + out.position();
+        switch (encoding)
+        {
+            case BINARY_DEFLATE:
+            case UTF8_DEFLATE:
+            {
+                deflater.reset();
+                deflater.setInput(in, offset, length);
+                deflater.finish();
+
+                int written = 0;
+                while (!deflater.finished())
+                {
+                    final int n = deflater.deflate(outArray, outOffset + written, out.remaining() - written);
+                    if (n == 0 && written == out.remaining())
+                    {
+                        throw new BufferOverflowException();
+                    }
+
+                    written += n;
+                }
+
+                out.position(out.position() + written);
+                break;
+            }
+
+            case BINARY_LZ4:
+            case UTF8_LZ4:
+            {
+                final int written = Lz4Block.compress(in, offset, length, outArray, outOffset, lz4HashTable);
+                out.position(out.position() + written);
+                break;
+            }
+
+            default:
+                throw new IllegalArgumentException("illegal block encoding " + encoding.name());
+        }
+    }
+
+    /**
+     * Encode the dictionary ID of an UTF8_DICTIONARY field.
+     */
+    static void encodeDictionaryId(int id, ByteBuffer out)
+    {
+        while ((id & ~0x7F) != 0)
+        {
+            out.put((byte) ((id & 0x7F) | 0x80));
+            id >>>= 7;
+        }
+
+        out.put((byte) id);
     }
 
     /**
@@ -200,30 +687,82 @@ class Encoder
      */
     static void encodeIntegers(int[] in, ByteBuffer out, Encoding encoding) throws StoreException
     {
-        final int[] outBuffer = new int[in.length + in.length / 2];
-        final IntWrapper outPos = new IntWrapper();
+        encodeIntegers(in, out, encoding, 0);
+    }
+
+    /**
+     * Encode a field of int[] type.
+     *
+     * @param in       The int array containing the integers to encode.
+     * @param out      Buffer to write the compressed data to.
+     * @param encoding The encoding to use (must a compatible with class of input).
+     * @param maxError Maximum absolute error of each decoded integer (only used by lossy encodings).
+     */
+    static void encodeIntegers(int[] in, ByteBuffer out, Encoding encoding, int maxError) throws StoreException
+    {
         final Encoder encoder = getInstance();
-        final IntBuffer outIntBuffer = out.asIntBuffer();
+        if (encoding == Encoding.INT32_AUTO)
+        {
+            // tag the field with the selected encoding
+            encoding = encoder.selectIntegerEncoding(in);
+            out.put((byte) encoding.ordinal());
+        }
+
+        final int[] outBuffer = new int[maxEncodedIntegersBytes(in.length) / 4];
+        final int outPosition = encoder.compressIntegers(in, 0, in.length, outBuffer, encoding, maxError);
+
+        out.asIntBuffer().put(outBuffer, 0, outPosition);
+        out.position(out.position() + outPosition * 4);
+    }
+
+    /**
+     * Compress inLength integers starting at inOffset (which may be modified) into out.
+     *
+     * @return The number of integers written to out.
+     */
+    private int compressIntegers(int[] in, int inOffset, int inLength, int[] out, Encoding encoding, int maxError) throws StoreException
+    {
+        final IntWrapper inPos = new IntWrapper(inOffset);
+        final IntWrapper outPos = new IntWrapper();
         switch (encoding)
         {
             case INT32_VAR_BYTE_FAST_PFOR:
             {
                 // TODO Optimize this by making compression directly support ByteBuffer/IntBuffer as input/output or use array()
-                encoder.INT32_VAR_BYTE_FAST_PFOR.headlessCompress(in, new IntWrapper(0), in.length, outBuffer, outPos);
+                INT32_VAR_BYTE_FAST_PFOR.headlessCompress(in, inPos, inLength, out, outPos);
                 break;
             }
 
             case INT32_DELTA_VAR_BYTE_FAST_PFOR:
             {
                 // TODO Optimize this by making compression directly support ByteBuffer/IntBuffer as input/output or use array()
-                encoder.INT32_DELTA_VAR_BYTE_FAST_PFOR.headlessCompress(in, new IntWrapper(), in.length, outBuffer, outPos);
+                INT32_DELTA_VAR_BYTE_FAST_PFOR.headlessCompress(in, inPos, inLength, out, outPos);
                 break;
             }
 
             case INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR:
             {
                 // TODO Optimize this by making compression directly support ByteBuffer/IntBuffer as input/output or use array()
-                encoder.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR.headlessCompress(in, new IntWrapper(), in.length, outBuffer, outPos);
+                INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR.headlessCompress(in, inPos, inLength, out, outPos);
+                break;
+            }
+
+            case INT32_DELTA_ZIGZAG_FAST_PFOR:
+            {
+                INT32_DELTA_ZIGZAG_FAST_PFOR.headlessCompress(in, inPos, inLength, out, outPos);
+                break;
+            }
+
+            case INT32_CENTER31BIT_LOSSY:
+            {
+                INT32_CENTER31BIT_LOSSY.setMaxError(maxError);
+                INT32_CENTER31BIT_LOSSY.headlessCompress(in, inPos, inLength, out, outPos);
+                break;
+            }
+
+            case INT32_RLE:
+            {
+                compressRuns(in, inOffset, inLength, out, outPos);
                 break;
             }
 
@@ -231,9 +770,293 @@ class Encoder
                 throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type int[]");
         }
 
-        final int outPosition = outPos.get();
-        outIntBuffer.put(outBuffer, 0, outPosition);
-        out.position(out.position() + outPosition * 4);
+        return outPos.get();
+    }
+
+    /**
+     * Store the number of runs of equal values followed by the compressed run values and run lengths.
+     */
+    private void compressRuns(int[] in, int inOffset, int inLength, int[] out, IntWrapper outPos)
+    {
+        final int[] runs = getRunBuffer(inLength * 2);
+        final int inEnd = inOffset + inLength;
+        int runCount = 0;
+        for (int i = inOffset; i < inEnd; )
+        {
+            final int value = in[i];
+            final int runStart = i;
+            while (++i < inEnd && in[i] == value)
+            {
+                // extend run
+            }
+
+            runs[runCount] = value;
+            runs[inLength + runCount] = i - runStart;
+            ++runCount;
+        }
+
+        out[outPos.get()] = runCount;
+        outPos.increment();
+
+        System.arraycopy(runs, inLength, runs, runCount, runCount);
+        INT32_VAR_BYTE_FAST_PFOR.headlessCompress(runs, new IntWrapper(), runCount * 2, out, outPos);
+    }
+
+    /**
+     * Reverse compressRuns(), filling out with the runs' values.
+     */
+    private void uncompressRuns(int[] in, int inLength, int[] out, int outOffset, int outLength) throws StoreException
+    {
+        final int runCount = in[inPosition.get()];
+        if (runCount < 0 || runCount > outLength)
+        {
+            throw new StoreException("invalid number of runs: " + runCount);
+        }
+        inPosition.increment();
+
+        final int[] runs = getRunBuffer(runCount * 2);
+        final IntWrapper runsPosition = new IntWrapper();
+        INT32_VAR_BYTE_FAST_PFOR.headlessUncompress(in, inPosition, inLength - 1, runs, runsPosition, runCount * 2);
+        if (runsPosition.get() != runCount * 2)
+        {
+            throw new StoreException("decompressed unexpected number of runs: expected " + runCount + ", got " + runsPosition.get() / 2);
+        }
+
+        final int outEnd = outOffset + outLength;
+        int position = outOffset;
+        for (int run = 0; run < runCount; ++run)
+        {
+            final int runLength = runs[runCount + run];
+            if (runLength < 1 || runLength > outEnd - position)
+            {
+                throw new StoreException("invalid run length: " + runLength);
+            }
+
+            Arrays.fill(out, position, position + runLength, runs[run]);
+            position += runLength;
+        }
+
+        outPosition.set(position);
+    }
+
+    /**
+     * Select the candidate encoding that compresses a sample from the middle of the integers best.
+     */
+    private Encoding selectIntegerEncoding(int[] in) throws StoreException
+    {
+        // Center31BitEncoding stores values and their deltas to the lerp'd lines using 31 bits
+        boolean center31BitEncodable = true;
+        for (final int value : in)
+        {
+            if (value < -MAX_AUTO_CENTER31BIT_VALUE || value >= MAX_AUTO_CENTER31BIT_VALUE)
+            {
+                center31BitEncodable = false;
+                break;
+            }
+        }
+
+        final int sampleLength = Math.min(in.length, AUTO_SAMPLE_LENGTH);
+        final int sampleOffset = (in.length - sampleLength) / 2;
+
+        Encoding selected = AUTO_CANDIDATES[0];
+        int selectedLength = Integer.MAX_VALUE;
+        for (final Encoding candidate : AUTO_CANDIDATES)
+        {
+            if (candidate == Encoding.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR && !center31BitEncodable)
+            {
+                continue;
+            }
+
+            // some codecs modify their input
+            System.arraycopy(in, sampleOffset, autoSample, 0, sampleLength);
+
+            final int length;
+            try
+            {
+                length = compressIntegers(autoSample, 0, sampleLength, autoSampleOut, candidate, 0);
+            }
+            catch (Center31BitEncoding.EncodingException e)
+            {
+                // the candidate can't encode these values
+                continue;
+            }
+
+            if (length < selectedLength)
+            {
+                selected = candidate;
+                selectedLength = length;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Encode a field of float[] type.
+     *
+     * @param in       The float array containing the floats to encode.
+     * @param out      Buffer to write the compressed data to.
+     * @param encoding The encoding to use (must a compatible with class of input).
+     */
+    static void encodeFloats(float[] in, ByteBuffer out, Encoding encoding) throws StoreException
+    {
+        if (encoding == Encoding.FLOAT32_XOR)
+        {
+            XorEncoding.encodeFloats(in, out);
+        }
+        else
+        {
+            throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type float[]");
+        }
+    }
+
+    /**
+     * Encode a field of double[] type.
+     *
+     * @param in       The double array containing the doubles to encode.
+     * @param out      Buffer to write the compressed data to.
+     * @param encoding The encoding to use (must a compatible with class of input).
+     */
+    static void encodeDoubles(double[] in, ByteBuffer out, Encoding encoding) throws StoreException
+    {
+        if (encoding == Encoding.FLOAT64_XOR)
+        {
+            XorEncoding.encodeDoubles(in, out);
+        }
+        else
+        {
+            throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type double[]");
+        }
+    }
+
+    /**
+     * Encode a field of long[] type.
+     *
+     * @param in       The long array containing the longs to encode.
+     * @param out      Buffer to write the compressed data to.
+     * @param encoding The encoding to use (must a compatible with class of input).
+     */
+    static void encodeLongs(long[] in, ByteBuffer out, Encoding encoding) throws StoreException
+    {
+        switch (encoding)
+        {
+            case INT64_DELTA_OF_DELTA:
+            {
+                LongEncoding.encodeDeltaOfDelta(in, out);
+                break;
+            }
+
+            case INT64_ZIGZAG_VAR_BYTE:
+            {
+                LongEncoding.encodeZigZagVarByte(in, out);
+                break;
+            }
+
+            default:
+                throw new StoreException("illegal combination of encoding " + encoding.name() + " and value of type long[]");
+        }
+    }
+
+    /**
+     * Check if the encoding is meant for int[] values.
+     */
+    static boolean isIntegerEncoding(Encoding encoding)
+    {
+        switch (encoding)
+        {
+            case INT32_VAR_BYTE_FAST_PFOR:
+            case INT32_DELTA_VAR_BYTE_FAST_PFOR:
+            case INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR:
+            case INT32_AUTO:
+            case INT32_RLE:
+            case INT32_DELTA_ZIGZAG_FAST_PFOR:
+            case INT32_CENTER31BIT_LOSSY:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check if the encoding compresses binary or text fields as a block.
+     */
+    static boolean isBlockEncoding(Encoding encoding)
+    {
+        switch (encoding)
+        {
+            case BINARY_DEFLATE:
+            case BINARY_LZ4:
+            case UTF8_DEFLATE:
+            case UTF8_LZ4:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Upper bound of the number of bytes needed to store the specified number of bytes using any block encoding.
+     */
+    static int maxEncodedBlockBytes(int length)
+    {
+        // deflate expands incompressible data by a few bytes per stored block, LZ4 by one byte per 255 literals
+        return Math.max(Lz4Block.maxCompressedLength(length), length + (length >> 12) * 5 + 64);
+    }
+
+    /**
+     * Upper bound of the number of bytes needed to store the specified number of integers using any int[] encoding.
+     */
+    static int maxEncodedIntegersBytes(int length)
+    {
+        // Center31BitEncoding and RLE may double the number of integers, VariableByte needs up to 5 bytes for each, plus headers
+        return length * 10 + 128;
+    }
+
+    private int[] getRunBuffer(int length)
+    {
+        if (runBuffer.length < length)
+        {
+            if (length > MAX_RETAINED_BUFFER_BYTES / 4)
+            {
+                return new int[length];
+            }
+
+            runBuffer = new int[length];
+        }
+
+        return runBuffer;
+    }
+
+    private byte[] getBlockBuffer(int length)
+    {
+        if (blockBuffer.length < length)
+        {
+            if (length > MAX_RETAINED_BUFFER_BYTES)
+            {
+                return new byte[length];
+            }
+
+            blockBuffer = new byte[length];
+        }
+
+        return blockBuffer;
+    }
+
+    private int[] getDecodeBuffer(int length)
+    {
+        if (decodeBuffer.length < length)
+        {
+            if (length > MAX_RETAINED_BUFFER_BYTES / 4)
+            {
+                return new int[length];
+            }
+
+            decodeBuffer = new int[length];
+        }
+
+        return decodeBuffer;
     }
 
     private static Encoder getInstance()
@@ -283,9 +1106,9 @@ class Encoder
     }
 
 
-    private static final class Center31BitEncodingSkippableComposition extends SkippableComposition
+    private static final class DeltaZigZagSkippableComposition extends SkippableComposition
     {
-        Center31BitEncodingSkippableComposition(SkippableIntegerCODEC f1, SkippableIntegerCODEC f2)
+        DeltaZigZagSkippableComposition(SkippableIntegerCODEC f1, SkippableIntegerCODEC f2)
         {
             super(f1, f2);
         }
@@ -296,19 +1119,20 @@ class Encoder
         {
             final int start = inpos.get();
 
-            // TODO Optimize Center31BitEncoding to work on a range
-            final int[] encoded;
-            if (start != 0 || inlength != in.length)
+            // zigzag map the deltas (first value relative to zero) so small negative deltas stay small
+            for (int i = start + inlength - 1; i > start; --i)
             {
-                encoded = Center31BitEncoding.encode(Arrays.copyOfRange(in, start, start + inlength));
+                final int delta = in[i] - in[i - 1];
+                in[i] = (delta << 1) ^ (delta >> 31);
             }
-            else
+
+            if (inlength > 0)
             {
-                encoded = Center31BitEncoding.encode(in);
+                in[start] = (in[start] << 1) ^ (in[start] >> 31);
             }
 
             // perform other compression steps
-            super.headlessCompress(encoded, inpos, encoded.length, out, outpos);
+            super.headlessCompress(in, inpos, inlength, out, outpos);
         }
 
 
@@ -319,12 +1143,114 @@ class Encoder
             final int start = outpos.get();
             super.headlessUncompress(in, inpos, inlength, out, outpos, num);
 
-            // TODO Optimize Center31BitEncoding to work on a range
-            final int[] decoded = Center31BitEncoding.decode(Arrays.copyOfRange(out, start, outpos.get()));
+            // reverse zigzag mapping and delta encoding in place
+            final int end = outpos.get();
+            int value = 0;
+            for (int i = start; i < end; ++i)
+            {
+                final int zigZag = out[i];
+                value += (zigZag >>> 1) ^ -(zigZag & 1);
+                out[i] = value;
+            }
+        }
+    }
+
+
+    private static final class Center31BitEncodingSkippableComposition extends SkippableComposition
+    {
+        private final IntWrapper encodedPosition = new IntWrapper();
+
+        // lossy instances store the max error of the quantized deltas in front of the encoded curve
+        private final boolean lossy;
+
+        private int maxError = 0;
+
+        // re-used Center31BitEncoding output (compression) and input (decompression), grows as needed
+        private int[] encoded = Empty.INT_ARRAY;
 
-            System.arraycopy(decoded, 0, out, start, decoded.length);
 
-            outpos.set(start + decoded.length);
+        Center31BitEncodingSkippableComposition(SkippableIntegerCODEC f1, SkippableIntegerCODEC f2, boolean lossy)
+        {
+            super(f1, f2);
+
+            this.lossy = lossy;
+        }
+
+
+        /**
+         * Set the maximum absolute error for subsequent compression (lossy instances only).
+         */
+        void setMaxError(int maxError)
+        {
+            this.maxError = maxError;
+        }
+
+
+        @Override
+        public void headlessCompress(int[] in, IntWrapper inpos, int inlength, int[] out, IntWrapper outpos)
+        {
+            final int maxError = lossy ? this.maxError : 0;
+            final int[] encoded = getEncoded(Center31BitEncoding.maxEncodedLength(inlength));
+            final int encodedLength = Center31BitEncoding.encode(in, inpos.get(), inlength, encoded, 0, maxError);
+
+            // the encoded curve is longer than the input, store its length for decompression
+            out[outpos.get()] = encodedLength;
+            outpos.increment();
+
+            if (lossy)
+            {
+                out[outpos.get()] = maxError;
+                outpos.increment();
+            }
+
+            // perform other compression steps
+            encodedPosition.set(0);
+            super.headlessCompress(encoded, encodedPosition, encodedLength, out, outpos);
+
+            inpos.add(inlength);
+        }
+
+
+        @Override
+        public void headlessUncompress(int[] in, IntWrapper inpos, int inlength, int[] out, IntWrapper outpos, int num)
+        {
+            final int encodedLength = in[inpos.get()];
+            inpos.increment();
+            if (encodedLength < 0 || encodedLength > Center31BitEncoding.maxEncodedLength(num))
+            {
+                // ie. a field without the length in front of the encoded curve
+                throw new IllegalArgumentException("invalid encoded curve length " + encodedLength + " for " + num + " integers");
+            }
+
+            int maxError = 0;
+            int headerLength = 1;
+            if (lossy)
+            {
+                maxError = in[inpos.get()];
+                inpos.increment();
+                ++headerLength;
+            }
+
+            // reverse other compression steps
+            final int[] encoded = getEncoded(encodedLength);
+            encodedPosition.set(0);
+            super.headlessUncompress(in, inpos, inlength - headerLength, encoded, encodedPosition, encodedLength);
+
+            final int start = outpos.get();
+            final int decodedLength = Center31BitEncoding.decode(encoded, 0, encodedLength, out, start, num, maxError);
+
+            outpos.set(start + decodedLength);
+        }
+
+
+        private int[] getEncoded(int length)
+        {
+            if (encoded.length < length)
+            {
+                encoded = new int[length];
+            }
+
+            return encoded;
         }
     }
 
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.base;
+
+import net.talpidae.multiflex.store.Store;
+import net.talpidae.multiflex.store.StoreException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+/**
+ * Executes tasks on a fixed number of threads that each own a store instance.
+ * <p>
+ * Necessary because SQLite connections are confined to the thread that opened them.
+ */
+class StoreExecutor<S extends Store>
+{
+    private final ThreadPoolExecutor executor;
+
+    private final ThreadLocal<S> threadStore = new ThreadLocal<>();
+
+    private final Supplier<S> storeFactory;
+
+    private final boolean writable;
+
+    private final String name;
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    // joined by close(), the pool terminates before its threads have closed their stores
+    private final List<Thread> poolThreads = new CopyOnWriteArrayList<>();
+
+    // first failure while closing a thread's store, reported by close()
+    private volatile StoreException closeException;
+
+
+    /**
+     * Create an executor.
+     *
+     * @param name         Prefix for the names of the threads
+     * @param threads      Number of threads (and store instances)
+     * @param storeFactory Creates a new unopened store instance
+     * @param writable     Open the stores in writable mode
+     */
+    StoreExecutor(String name, int threads, Supplier<S> storeFactory, boolean writable)
+    {
+        this.name = name;
+        this.storeFactory = storeFactory;
+        this.writable = writable;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable ->
+        {
+            final Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    runnable.run();
+                }
+                finally
+                {
+                    closeThreadStore();
+                }
+            }, this.name + "-" + threadCount.incrementAndGet());
+
+            thread.setDaemon(true);
+            poolThreads.add(thread);
+
+            return thread;
+        });
+    }
+
+
+    /**
+     * Perform the task on one of the threads and wait for its result.
+     * <p>
+     * Tasks called from one of this executor's threads are performed directly (waiting would deadlock).
+     */
+    <T> T call(StoreTask<S, T> task) throws StoreException
+    {
+        final S store = threadStore.get();
+        if (store != null)
+        {
+            return task.perform(store);
+        }
+
+        try
+        {
+            return submit(task).join();
+        }
+        catch (CompletionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof StoreException)
+            {
+                // add the stack trace of the caller, the cause has the one of the executing thread
+                throw new StoreException(cause.getMessage(), cause);
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+
+            throw new StoreException("task failed", cause);
+        }
+    }
+
+    /**
+     * Perform the task on one of the threads.
+     */
+    <T> CompletableFuture<T> submit(StoreTask<S, T> task)
+    {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    future.complete(task.perform(getThreadStore()));
+                }
+                catch (Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            future.completeExceptionally(new StoreException(name + " has been closed", e));
+        }
+
+        return future;
+    }
+
+    /**
+     * Wait for all submitted tasks to finish and close the stores.
+     */
+    void close() throws StoreException
+    {
+        executor.shutdown();
+        try
+        {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+            {
+                // keep waiting for running tasks to finish
+            }
+
+            for (final Thread thread : poolThreads)
+            {
+                thread.join();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new StoreException("interrupted while waiting for " + name + " to finish");
+        }
+
+        if (closeException != null)
+        {
+            throw closeException;
+        }
+    }
+
+
+    private S getThreadStore() throws StoreException
+    {
+        S store = threadStore.get();
+        if (store == null)
+        {
+            store = storeFactory.get();
+            store.open(writable);
+            threadStore.set(store);
+        }
+
+        return store;
+    }
+
+
+    private void closeThreadStore()
+    {
+        final S store = threadStore.get();
+        if (store != null)
+        {
+            threadStore.remove();
+            try
+            {
+                store.close();
+            }
+            catch (StoreException e)
+            {
+                if (closeException == null)
+                {
+                    closeException = e;
+                }
+            }
+        }
+    }
+
+
+    @FunctionalInterface
+    interface StoreTask<S, T>
+    {
+        /**
+         * The function to be performed using the executing thread's store.
+         */
+        T perform(S store) throws StoreException;
+    }
+}
@@ -61,6 +61,43 @@ public abstract class Transaction implements AutoCloseable
         }
     }
 
+    /**
+     * Mark the state of the running transaction, the changes made afterwards can be undone by rollbackToSavepoint().
+     * <p>
+     * Savepoints nest, each one must be released or rolled back to.
+     */
+    public final void savepoint() throws StoreException
+    {
+        if (!inTransaction)
+        {
+            throw new IllegalStateException("savepoint requires a running transaction");
+        }
+
+        transactionSavepoint();
+    }
+
+    /**
+     * Forget the latest savepoint, keeping the changes made since.
+     */
+    public final void release() throws StoreException
+    {
+        if (inTransaction)
+        {
+            transactionRelease();
+        }
+    }
+
+    /**
+     * Undo the changes made since the latest savepoint and forget it, the transaction keeps running.
+     */
+    public final void rollbackToSavepoint() throws StoreException
+    {
+        if (inTransaction)
+        {
+            transactionRollbackToSavepoint();
+        }
+    }
+
     /**
      * Start a transaction.
      */
@@ -115,4 +152,19 @@ public abstract class Transaction implements AutoCloseable
      * Implement what is necessary to do a rollback of the current transaction.
      */
     protected abstract void transactionRollback() throws StoreException;
+
+    /**
+     * Implement how to mark the state of the running transaction.
+     */
+    protected abstract void transactionSavepoint() throws StoreException;
+
+    /**
+     * Implement how to forget the latest savepoint.
+     */
+    protected abstract void transactionRelease() throws StoreException;
+
+    /**
+     * Implement how to undo the changes made since the latest savepoint and forget it.
+     */
+    protected abstract void transactionRollbackToSavepoint() throws StoreException;
 }
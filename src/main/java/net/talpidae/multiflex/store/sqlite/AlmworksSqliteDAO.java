@@ -21,28 +21,52 @@ import com.almworks.sqlite4java.SQLiteConnection;
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import net.talpidae.multiflex.format.Chunk;
+import net.talpidae.multiflex.store.ChunkCursor;
 import net.talpidae.multiflex.store.Store;
 import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.StoreOptions;
+import net.talpidae.multiflex.store.UncheckedStoreException;
 import net.talpidae.multiflex.store.base.DAO;
 import net.talpidae.multiflex.store.base.Transaction;
+import net.talpidae.multiflex.store.util.Empty;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 
 public class AlmworksSqliteDAO implements DAO
 {
+    // begins at the chunk before the range (a single index range scan), which is only included if it's merged and covers the range's begin
+    private static final String WHERE_TIMESTAMP_RANGE_OR_MERGED_CHUNK_COVERING_BEGIN = " WHERE t.ts >= ifnull((SELECT MAX(ts) FROM track WHERE ts < ?1), ?1)"
+            + " AND t.ts < ?2 AND (t.ts >= ?1 OR p.parts IS NOT NULL AND t.ts + t.duration > ?1) ORDER BY t.ts";
+
+    private static final String SELECT_CHUNKS_BY_TIMESTAMP_RANGE = "SELECT t.ts, t.duration, t.descriptor_id, t.chunk, s.stats, p.parts FROM track t"
+            + " LEFT JOIN track_stats s ON s.ts = t.ts LEFT JOIN track_parts p ON p.ts = t.ts" + WHERE_TIMESTAMP_RANGE_OR_MERGED_CHUNK_COVERING_BEGIN;
+
     private final SQLiteConnection db;
 
+    private final StoreOptions options;
+
     private final Transaction transaction;
 
 
     public AlmworksSqliteDAO(File dbFile)
+    {
+        this(dbFile, StoreOptions.DEFAULT);
+    }
+
+
+    public AlmworksSqliteDAO(File dbFile, StoreOptions options)
     {
         this.db = new SQLiteConnection(dbFile);
+        this.options = options;
         this.transaction = new AlmworksSqliteTransaction();
     }
 
@@ -78,6 +102,74 @@ public class AlmworksSqliteDAO implements DAO
             throw new StoreException("failed to open " + db.getDatabaseFile().getAbsolutePath()
                     + " in " + (writable ? "read-write" : "read-only") + " mode", e);
         }
+
+        applyOptions(writable);
+    }
+
+
+    /**
+     * Configure the connection according to the options, must happen before the schema is created.
+     */
+    private void applyOptions(boolean writable) throws StoreException
+    {
+        try
+        {
+            if (writable)
+            {
+                // page size has to be set before the first table is created and can't be changed in WAL mode
+                if (options.getPageSize() != null)
+                {
+                    db.exec("PRAGMA page_size = " + options.getPageSize());
+                }
+
+                if (options.getJournalMode() != null)
+                {
+                    final String journalMode = options.getJournalMode().name();
+                    final SQLiteStatement setJournalMode = db.prepare("PRAGMA journal_mode = " + journalMode, false);
+                    try
+                    {
+                        // returns the journal mode actually in effect
+                        if (!setJournalMode.step() || !journalMode.equalsIgnoreCase(setJournalMode.columnString(0)))
+                        {
+                            throw new StoreException("failed to set journal mode to " + journalMode);
+                        }
+                    }
+                    finally
+                    {
+                        setJournalMode.dispose();
+                    }
+                }
+            }
+
+            if (options.getBusyTimeout() != null)
+            {
+                db.setBusyTimeout(options.getBusyTimeout());
+            }
+
+            if (options.getSynchronous() != null)
+            {
+                db.exec("PRAGMA synchronous = " + options.getSynchronous().name());
+            }
+
+            if (options.getCacheSize() != null)
+            {
+                db.exec("PRAGMA cache_size = " + options.getCacheSize());
+            }
+
+            if (options.getMmapSize() != null)
+            {
+                db.exec("PRAGMA mmap_size = " + options.getMmapSize());
+            }
+
+            if (options.getTempStore() != null)
+            {
+                db.exec("PRAGMA temp_store = " + options.getTempStore().name());
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to apply store options", e);
+        }
     }
 
 
@@ -273,6 +365,73 @@ public class AlmworksSqliteDAO implements DAO
         }
     }
 
+    /**
+     * Insert dictionary value if not exists and select its ID.
+     */
+    @Override
+    public int insertDictionaryValueAndSelectId(String value) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement insertOrIgnoreValue = db.prepare("INSERT OR IGNORE INTO dictionary (\"value\") VALUES (?)", true);
+            try
+            {
+                insertOrIgnoreValue.bind(1, value);
+                insertOrIgnoreValue.stepThrough();
+            }
+            finally
+            {
+                insertOrIgnoreValue.dispose();
+            }
+
+            final SQLiteStatement selectValueId = db.prepare("SELECT id FROM dictionary WHERE \"value\" = ?", true);
+            try
+            {
+                selectValueId.bind(1, value);
+                if (selectValueId.step())
+                {
+                    return selectValueId.columnInt(0);
+                }
+
+                throw new StoreException("failed to query ID of dictionary value");
+            }
+            finally
+            {
+                selectValueId.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to write dictionary value", e);
+        }
+    }
+
+    /**
+     * Get a dictionary value by ID.
+     */
+    @Override
+    public String selectDictionaryValue(int id) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement selectValue = db.prepare("SELECT \"value\" FROM dictionary WHERE id = ?", true);
+            try
+            {
+                selectValue.bind(1, id);
+
+                return selectValue.step() ? selectValue.columnString(0) : null;
+            }
+            finally
+            {
+                selectValue.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to find dictionary value with id: " + id, e);
+        }
+    }
+
     /**
      * Find the maximum track chunk timestamp.
      *
@@ -300,39 +459,121 @@ public class AlmworksSqliteDAO implements DAO
     }
 
     /**
-     * Insert a track chunk.
+     * Insert a track chunk along with the statistics of its int[] fields and the index of its parts.
+     * <p>
+     * Appending a chunk takes one statement per non-null blob, statistics and index of a replaced chunk are removed if null.
      */
     @Override
-    public void insertOrReplaceTrackChunk(long timestamp, long descriptorId, ByteBuffer data) throws StoreException
+    public void insertOrReplaceTrackChunk(long timestamp, long duration, long descriptorId, ByteBuffer data, ByteBuffer stats, ByteBuffer parts) throws StoreException
     {
+        if (!data.hasArray())
+        {
+            throw new IllegalStateException("can only handle HeapByteBuffer data right now");
+        }
+
         try
         {
-            final SQLiteStatement insertOrReplaceChunk = db.prepare("INSERT OR REPLACE INTO track (\"ts\", \"descriptor_id\", \"chunk\") VALUES (?, ?, ?)", true);
+            final SQLiteStatement insertChunk = db.prepare("INSERT OR IGNORE INTO track (\"ts\", \"duration\", \"descriptor_id\", \"chunk\") VALUES (?, ?, ?, ?)", true);
             try
             {
-                if (!data.hasArray())
+                insertChunk.bind(1, timestamp);
+                insertChunk.bind(2, duration);
+                insertChunk.bind(3, descriptorId);
+                insertChunk.bind(4, data.array(), data.arrayOffset() + data.position(), data.remaining());
+                insertChunk.stepThrough();
+            }
+            finally
+            {
+                insertChunk.dispose();
+            }
+
+            // the chunk is new unless a chunk with this timestamp exists already, only then there may be blobs to remove
+            final boolean replaced = db.getChanges() == 0;
+            if (replaced)
+            {
+                final SQLiteStatement updateChunk = db.prepare("UPDATE track SET duration = ?, descriptor_id = ?, chunk = ? WHERE ts = ?", true);
+                try
                 {
-                    throw new IllegalStateException("can only handle HeapByteBuffer data right now");
+                    updateChunk.bind(1, duration);
+                    updateChunk.bind(2, descriptorId);
+                    updateChunk.bind(3, data.array(), data.arrayOffset() + data.position(), data.remaining());
+                    updateChunk.bind(4, timestamp);
+                    updateChunk.stepThrough();
                 }
+                finally
+                {
+                    updateChunk.dispose();
+                }
+            }
+
+            updateChunkBlob("track_stats", "stats", timestamp, stats, replaced);
+            updateChunkBlob("track_parts", "parts", timestamp, parts, replaced);
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to insert or replace chunk", e);
+        }
+    }
+
+    /**
+     * Insert or replace a blob stored along with a chunk, a null value removes the blob of a replaced chunk.
+     */
+    private void updateChunkBlob(String table, String column, long timestamp, ByteBuffer value, boolean replaced) throws SQLiteException
+    {
+        if (value == null && !replaced)
+        {
+            return;
+        }
 
-                insertOrReplaceChunk.bind(1, timestamp);
-                insertOrReplaceChunk.bind(2, descriptorId);
-                insertOrReplaceChunk.bind(3, data.array(), data.arrayOffset() + data.position(), data.remaining());
-                insertOrReplaceChunk.stepThrough();
+        final SQLiteStatement updateBlob = value != null
+                ? db.prepare("INSERT OR REPLACE INTO " + table + " (\"ts\", \"" + column + "\") VALUES (?, ?)", true)
+                : db.prepare("DELETE FROM " + table + " WHERE ts = ?", true);
+        try
+        {
+            updateBlob.bind(1, timestamp);
+            if (value != null)
+            {
+                updateBlob.bind(2, value.array(), value.arrayOffset() + value.position(), value.remaining());
             }
-            finally
+            updateBlob.stepThrough();
+        }
+        finally
+        {
+            updateBlob.dispose();
+        }
+    }
+
+    /**
+     * Delete the chunk with the specified timestamp along with its statistics and index of parts.
+     */
+    @Override
+    public void deleteTrackChunk(long timestamp) throws StoreException
+    {
+        try
+        {
+            for (final String table : new String[]{"track", "track_stats", "track_parts"})
             {
-                insertOrReplaceChunk.dispose();
+                final SQLiteStatement deleteChunk = db.prepare("DELETE FROM " + table + " WHERE ts = ?", true);
+                try
+                {
+                    deleteChunk.bind(1, timestamp);
+                    deleteChunk.stepThrough();
+                }
+                finally
+                {
+                    deleteChunk.dispose();
+                }
             }
         }
         catch (SQLiteException e)
         {
-            throw new StoreException("failed to select chunk by timestamp range", e);
+            throw new StoreException("failed to delete chunk", e);
         }
     }
 
     /**
-     * Find all chunks that lie within the specified timestamp (seconds since epochMillies in table meta).
+     * Find all chunks that lie within the specified timestamp (microseconds since EPOCH_MICROS in table meta)
+     * and the merged chunk containing tsBegin.
      * <p>
      * Call this within a transaction.
      *
@@ -346,7 +587,7 @@ public class AlmworksSqliteDAO implements DAO
     {
         try
         {
-            final SQLiteStatement selectChunksByTimestampRange = db.prepare("SELECT ts, descriptor_id, chunk FROM track WHERE ts >= ? AND ts < ?", true);
+            final SQLiteStatement selectChunksByTimestampRange = db.prepare(SELECT_CHUNKS_BY_TIMESTAMP_RANGE, true);
             try
             {
                 selectChunksByTimestampRange.bind(1, tsBegin);
@@ -356,10 +597,13 @@ public class AlmworksSqliteDAO implements DAO
                 while (selectChunksByTimestampRange.step())
                 {
                     final long timestamp = selectChunksByTimestampRange.columnLong(0);
-                    final long descriptorId = selectChunksByTimestampRange.columnLong(1);
-                    final ByteBuffer data = ByteBuffer.wrap(selectChunksByTimestampRange.columnBlob(2));
+                    final long duration = selectChunksByTimestampRange.columnLong(1);
+                    final long descriptorId = selectChunksByTimestampRange.columnLong(2);
+                    final ByteBuffer data = ByteBuffer.wrap(selectChunksByTimestampRange.columnBlob(3));
+                    final ByteBuffer stats = wrapNullable(selectChunksByTimestampRange.columnBlob(4));
+                    final ByteBuffer parts = wrapNullable(selectChunksByTimestampRange.columnBlob(5));
 
-                    list.add(chunkFactory.createChunk(timestamp, descriptorId, data));
+                    list.add(chunkFactory.createChunk(timestamp, duration, descriptorId, data, stats, parts));
                 }
 
                 if (list.isEmpty())
@@ -382,6 +626,153 @@ public class AlmworksSqliteDAO implements DAO
         }
     }
 
+    /**
+     * Open a cursor over all chunks that lie within the specified timestamp range and the merged chunk containing tsBegin.
+     *
+     * @param tsBegin      The begin of the range (inclusive)
+     * @param tsEnd        The upper limit of the range (exclusive)
+     * @param chunkFactory Function that get a descriptor by the specified descriptor ID
+     * @return An open cursor, the caller is responsible for closing it
+     */
+    @Override
+    public ChunkCursor selectChunkCursorByTimestampRange(long tsBegin, long tsEnd, ChunkFactory chunkFactory) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement selectChunksByTimestampRange = db.prepare(SELECT_CHUNKS_BY_TIMESTAMP_RANGE, true);
+            try
+            {
+                selectChunksByTimestampRange.bind(1, tsBegin);
+                selectChunksByTimestampRange.bind(2, tsEnd);
+
+                return new AlmworksSqliteChunkCursor(selectChunksByTimestampRange, chunkFactory);
+            }
+            catch (SQLiteException e)
+            {
+                selectChunksByTimestampRange.dispose();
+                throw e;
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to select chunk cursor by timestamp range", e);
+        }
+    }
+
+    /**
+     * Find the timestamp of the first chunk at or after the specified timestamp.
+     * <p>
+     * Call this within a transaction.
+     *
+     * @return The timestamp or -1 if there is no such chunk
+     */
+    @Override
+    public long selectNextChunkTimestamp(long timestamp) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement selectNextChunkTimestamp = db.prepare("SELECT ifnull(MIN(\"ts\"), -1) FROM track WHERE ts >= ?", true);
+            try
+            {
+                selectNextChunkTimestamp.bind(1, timestamp);
+
+                return selectNextChunkTimestamp.step() ? selectNextChunkTimestamp.columnLong(0) : -1;
+            }
+            finally
+            {
+                selectNextChunkTimestamp.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to select next chunk timestamp", e);
+        }
+    }
+
+    /**
+     * Select the chunk whose time span contains the specified timestamp using a single statement and let the factory
+     * read ranges of its data.
+     * <p>
+     * The track table has no rowid, so SQLiteBlob can't be used and SQLite loads all pages of the chunk anyway.
+     * Streaming the chunk column only avoids copying the bytes that aren't read into a Java array.
+     * <p>
+     * Call this within a transaction.
+     *
+     * @return The chunk created by the factory or null if the timestamp isn't covered by any chunk
+     */
+    @Override
+    public Chunk selectChunkRangesCoveringTimestamp(long timestamp, RangeChunkFactory chunkFactory) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement selectChunkRanges = db.prepare("SELECT t.ts, t.duration, t.descriptor_id, s.stats, p.parts, length(t.chunk), t.chunk FROM track t"
+                    + " LEFT JOIN track_stats s ON s.ts = t.ts LEFT JOIN track_parts p ON p.ts = t.ts"
+                    + " WHERE t.ts = (SELECT MAX(ts) FROM track WHERE ts <= ?1) AND t.ts + t.duration > ?1", true);
+            try
+            {
+                selectChunkRanges.bind(1, timestamp);
+                if (selectChunkRanges.step())
+                {
+                    final long chunkTimestamp = selectChunkRanges.columnLong(0);
+                    final long duration = selectChunkRanges.columnLong(1);
+                    final long descriptorId = selectChunkRanges.columnLong(2);
+                    final ByteBuffer stats = wrapNullable(selectChunkRanges.columnBlob(3));
+                    final ByteBuffer parts = wrapNullable(selectChunkRanges.columnBlob(4));
+                    final int length = selectChunkRanges.columnInt(5);
+                    final InputStream chunk = selectChunkRanges.columnStream(6);
+
+                    return chunkFactory.createChunk(chunkTimestamp, duration, descriptorId, stats, parts,
+                            new ColumnRangeReader(chunk != null ? chunk : new ByteArrayInputStream(Empty.BYTE_ARRAY), length));
+                }
+
+                return null;
+            }
+            finally
+            {
+                selectChunkRanges.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to select chunk ranges covering timestamp", e);
+        }
+    }
+
+    /**
+     * Pass the duration, descriptor ID, encoded statistics and index of parts (null if there are none) of all chunks within
+     * the specified timestamp range to the consumer, ordered by timestamp.
+     * <p>
+     * Call this within a transaction.
+     */
+    @Override
+    public void selectChunkStatsByTimestampRange(long tsBegin, long tsEnd, StatsConsumer consumer) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement selectChunkStats = db.prepare("SELECT t.ts, t.duration, t.descriptor_id, s.stats, p.parts FROM track t"
+                    + " LEFT JOIN track_stats s ON s.ts = t.ts LEFT JOIN track_parts p ON p.ts = t.ts" + WHERE_TIMESTAMP_RANGE_OR_MERGED_CHUNK_COVERING_BEGIN, true);
+            try
+            {
+                selectChunkStats.bind(1, tsBegin);
+                selectChunkStats.bind(2, tsEnd);
+
+                while (selectChunkStats.step())
+                {
+                    consumer.accept(selectChunkStats.columnLong(0), selectChunkStats.columnLong(1), selectChunkStats.columnLong(2),
+                            wrapNullable(selectChunkStats.columnBlob(3)), wrapNullable(selectChunkStats.columnBlob(4)));
+                }
+            }
+            finally
+            {
+                selectChunkStats.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to select chunk stats by timestamp range", e);
+        }
+    }
+
     /**
      * Find a chunk by timestamp.
      * <p>
@@ -392,16 +783,20 @@ public class AlmworksSqliteDAO implements DAO
     {
         try
         {
-            final SQLiteStatement selectChunkByTimestamp = db.prepare("SELECT descriptor_id, chunk FROM track WHERE ts = ?", true);
+            final SQLiteStatement selectChunkByTimestamp = db.prepare("SELECT t.duration, t.descriptor_id, t.chunk, s.stats, p.parts FROM track t"
+                    + " LEFT JOIN track_stats s ON s.ts = t.ts LEFT JOIN track_parts p ON p.ts = t.ts WHERE t.ts = ?", true);
             try
             {
                 selectChunkByTimestamp.bind(1, timestamp);
                 if (selectChunkByTimestamp.step())
                 {
-                    final long descriptorId = selectChunkByTimestamp.columnLong(0);
-                    final ByteBuffer data = ByteBuffer.wrap(selectChunkByTimestamp.columnBlob(1));
+                    final long duration = selectChunkByTimestamp.columnLong(0);
+                    final long descriptorId = selectChunkByTimestamp.columnLong(1);
+                    final ByteBuffer data = ByteBuffer.wrap(selectChunkByTimestamp.columnBlob(2));
+                    final ByteBuffer stats = wrapNullable(selectChunkByTimestamp.columnBlob(3));
+                    final ByteBuffer parts = wrapNullable(selectChunkByTimestamp.columnBlob(4));
 
-                    return chunkFactory.createChunk(timestamp, descriptorId, data);
+                    return chunkFactory.createChunk(timestamp, duration, descriptorId, data, stats, parts);
                 }
 
                 return null;
@@ -417,6 +812,201 @@ public class AlmworksSqliteDAO implements DAO
         }
     }
 
+    /**
+     * Find the chunk whose time span contains the specified timestamp.
+     * <p>
+     * Call this within a transaction.
+     */
+    @Override
+    public Chunk selectChunkCoveringTimestamp(long timestamp, ChunkFactory chunkFactory) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement selectChunkCoveringTimestamp = db.prepare("SELECT t.ts, t.duration, t.descriptor_id, t.chunk, s.stats, p.parts FROM track t"
+                    + " LEFT JOIN track_stats s ON s.ts = t.ts LEFT JOIN track_parts p ON p.ts = t.ts"
+                    + " WHERE t.ts = (SELECT MAX(ts) FROM track WHERE ts <= ?) AND t.ts + t.duration > ?", true);
+            try
+            {
+                selectChunkCoveringTimestamp.bind(1, timestamp);
+                selectChunkCoveringTimestamp.bind(2, timestamp);
+                if (selectChunkCoveringTimestamp.step())
+                {
+                    final long chunkTimestamp = selectChunkCoveringTimestamp.columnLong(0);
+                    final long duration = selectChunkCoveringTimestamp.columnLong(1);
+                    final long descriptorId = selectChunkCoveringTimestamp.columnLong(2);
+                    final ByteBuffer data = ByteBuffer.wrap(selectChunkCoveringTimestamp.columnBlob(3));
+                    final ByteBuffer stats = wrapNullable(selectChunkCoveringTimestamp.columnBlob(4));
+                    final ByteBuffer parts = wrapNullable(selectChunkCoveringTimestamp.columnBlob(5));
+
+                    return chunkFactory.createChunk(chunkTimestamp, duration, descriptorId, data, stats, parts);
+                }
+
+                return null;
+            }
+            finally
+            {
+                selectChunkCoveringTimestamp.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to select chunk covering timestamp", e);
+        }
+    }
+
+    /**
+     * Add count and sum to the rollup bucket and widen its min and max, inserts the bucket if it doesn't exist.
+     */
+    @Override
+    public void insertOrMergeRollup(long level, int trackId, long timestamp, long count, long sum, int min, int max) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement updateRollup = db.prepare("UPDATE rollup SET count = count + ?, sum = sum + ?, min = min(min, ?), max = max(max, ?)"
+                    + " WHERE level = ? AND track_id = ? AND ts = ?", true);
+            try
+            {
+                updateRollup.bind(1, count);
+                updateRollup.bind(2, sum);
+                updateRollup.bind(3, min);
+                updateRollup.bind(4, max);
+                updateRollup.bind(5, level);
+                updateRollup.bind(6, trackId);
+                updateRollup.bind(7, timestamp);
+                updateRollup.stepThrough();
+            }
+            finally
+            {
+                updateRollup.dispose();
+            }
+
+            if (db.getChanges() == 0)
+            {
+                // no such bucket yet (the bundled SQLite doesn't support UPSERT)
+                insertOrReplaceRollup(level, trackId, timestamp, count, sum, min, max);
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to merge rollup", e);
+        }
+    }
+
+    /**
+     * Insert or replace a rollup bucket.
+     */
+    @Override
+    public void insertOrReplaceRollup(long level, int trackId, long timestamp, long count, long sum, int min, int max) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement insertOrReplaceRollup = db.prepare("INSERT OR REPLACE INTO rollup (\"level\", \"track_id\", \"ts\", \"count\", \"sum\", \"min\", \"max\")"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?)", true);
+            try
+            {
+                insertOrReplaceRollup.bind(1, level);
+                insertOrReplaceRollup.bind(2, trackId);
+                insertOrReplaceRollup.bind(3, timestamp);
+                insertOrReplaceRollup.bind(4, count);
+                insertOrReplaceRollup.bind(5, sum);
+                insertOrReplaceRollup.bind(6, min);
+                insertOrReplaceRollup.bind(7, max);
+                insertOrReplaceRollup.stepThrough();
+            }
+            finally
+            {
+                insertOrReplaceRollup.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to insert or replace rollup", e);
+        }
+    }
+
+    /**
+     * Delete a rollup bucket (if it exists).
+     */
+    @Override
+    public void deleteRollup(long level, int trackId, long timestamp) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement deleteRollup = db.prepare("DELETE FROM rollup WHERE level = ? AND track_id = ? AND ts = ?", true);
+            try
+            {
+                deleteRollup.bind(1, level);
+                deleteRollup.bind(2, trackId);
+                deleteRollup.bind(3, timestamp);
+                deleteRollup.stepThrough();
+            }
+            finally
+            {
+                deleteRollup.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to delete rollup", e);
+        }
+    }
+
+    /**
+     * Delete all rollup buckets.
+     */
+    @Override
+    public void deleteRollups() throws StoreException
+    {
+        try
+        {
+            db.exec("DELETE FROM rollup");
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to delete rollups", e);
+        }
+    }
+
+    /**
+     * Pass all rollup buckets of the level and track that begin within the specified timestamp range to the consumer,
+     * ordered by timestamp.
+     * <p>
+     * Call this within a transaction.
+     */
+    @Override
+    public void selectRollupsByTimestampRange(long level, int trackId, long tsBegin, long tsEnd, RollupConsumer consumer) throws StoreException
+    {
+        try
+        {
+            final SQLiteStatement selectRollups = db.prepare("SELECT ts, count, sum, min, max FROM rollup"
+                    + " WHERE level = ? AND track_id = ? AND ts >= ? AND ts < ? ORDER BY ts", true);
+            try
+            {
+                selectRollups.bind(1, level);
+                selectRollups.bind(2, trackId);
+                selectRollups.bind(3, tsBegin);
+                selectRollups.bind(4, tsEnd);
+
+                while (selectRollups.step())
+                {
+                    consumer.accept(selectRollups.columnLong(0),
+                            selectRollups.columnLong(1),
+                            selectRollups.columnLong(2),
+                            selectRollups.columnInt(3),
+                            selectRollups.columnInt(4));
+                }
+            }
+            finally
+            {
+                selectRollups.dispose();
+            }
+        }
+        catch (SQLiteException e)
+        {
+            throw new StoreException("failed to select rollups by timestamp range", e);
+        }
+    }
+
 
     @Override
     public void close() throws StoreException
@@ -425,8 +1015,163 @@ public class AlmworksSqliteDAO implements DAO
     }
 
 
+    private static ByteBuffer wrapNullable(byte[] bytes)
+    {
+        return bytes != null ? ByteBuffer.wrap(bytes) : null;
+    }
+
+
+    /**
+     * Steps the statement only as far as the consumer iterates, rows are: ts, duration, descriptor_id, chunk, stats, parts
+     */
+    private static class AlmworksSqliteChunkCursor implements ChunkCursor
+    {
+        private final SQLiteStatement statement;
+
+        private final ChunkFactory chunkFactory;
+
+        // has the current row already been returned by next()
+        private boolean consumed = true;
+
+        private boolean hasRow = false;
+
+
+        private AlmworksSqliteChunkCursor(SQLiteStatement statement, ChunkFactory chunkFactory)
+        {
+            this.statement = statement;
+            this.chunkFactory = chunkFactory;
+        }
+
+
+        @Override
+        public boolean hasNext()
+        {
+            if (consumed && !statement.isDisposed())
+            {
+                try
+                {
+                    hasRow = statement.step();
+                    consumed = false;
+                }
+                catch (SQLiteException e)
+                {
+                    throw new UncheckedStoreException(new StoreException("failed to step chunk cursor", e));
+                }
+            }
+
+            return hasRow && !consumed;
+        }
+
+        @Override
+        public Chunk next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            consumed = true;
+            try
+            {
+                final long timestamp = statement.columnLong(0);
+                final long duration = statement.columnLong(1);
+                final long descriptorId = statement.columnLong(2);
+                final ByteBuffer data = ByteBuffer.wrap(statement.columnBlob(3));
+                final ByteBuffer stats = wrapNullable(statement.columnBlob(4));
+                final ByteBuffer parts = wrapNullable(statement.columnBlob(5));
+
+                return chunkFactory.createChunk(timestamp, duration, descriptorId, data, stats, parts);
+            }
+            catch (SQLiteException e)
+            {
+                throw new UncheckedStoreException(new StoreException("failed to read chunk from cursor", e));
+            }
+            catch (StoreException e)
+            {
+                throw new UncheckedStoreException(e);
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            hasRow = false;
+            statement.dispose();
+        }
+    }
+
+
+    /**
+     * Reads ascending ranges from a column stream, the last range is kept so the next one may overlap it.
+     */
+    private static class ColumnRangeReader implements DAO.RangeReader
+    {
+        private final InputStream in;
+
+        private final int length;
+
+        private int position = 0;
+
+        private byte[] lastRange = Empty.BYTE_ARRAY;
+
+        private int lastOffset = 0;
+
+
+        private ColumnRangeReader(InputStream in, int length)
+        {
+            this.in = in;
+            this.length = length;
+        }
+
+
+        @Override
+        public ByteBuffer read(int offset, int length) throws StoreException
+        {
+            if (offset < lastOffset)
+            {
+                throw new StoreException("ranges must be read in ascending order");
+            }
+
+            final int end = length >= 0 ? (int) Math.min((long) offset + length, this.length) : this.length;
+            final byte[] range = new byte[Math.max(0, end - offset)];
+
+            // copy the overlap with the last range, then continue reading from the stream
+            final int overlap = Math.max(0, Math.min(lastOffset + lastRange.length - offset, range.length));
+            System.arraycopy(lastRange, Math.min(offset - lastOffset, lastRange.length), range, 0, overlap);
+            try
+            {
+                final long skip = offset + overlap - position;
+                if (skip > 0 && in.skip(skip) != skip)
+                {
+                    throw new StoreException("chunk data is truncated");
+                }
+                position += Math.max(0, skip);
+
+                final int read = in.readNBytes(range, overlap, range.length - overlap);
+                position += read;
+                if (read != range.length - overlap)
+                {
+                    throw new StoreException("chunk data is truncated");
+                }
+            }
+            catch (IOException e)
+            {
+                throw new StoreException("failed to read chunk data", e);
+            }
+
+            lastRange = range;
+            lastOffset = offset;
+
+            return ByteBuffer.wrap(range);
+        }
+    }
+
+
     private class AlmworksSqliteTransaction extends Transaction
     {
+        // savepoints nest, so a single name suffices
+        private static final String SAVEPOINT_NAME = "task";
+
         @Override
         protected void transactionBegin() throws StoreException
         {
@@ -465,5 +1210,46 @@ public class AlmworksSqliteDAO implements DAO
                 throw new StoreException("rollback failed", e);
             }
         }
+
+        @Override
+        protected void transactionSavepoint() throws StoreException
+        {
+            try
+            {
+                db.exec("SAVEPOINT " + SAVEPOINT_NAME);
+            }
+            catch (SQLiteException e)
+            {
+                throw new StoreException("savepoint failed", e);
+            }
+        }
+
+        @Override
+        protected void transactionRelease() throws StoreException
+        {
+            try
+            {
+                db.exec("RELEASE " + SAVEPOINT_NAME);
+            }
+            catch (SQLiteException e)
+            {
+                throw new StoreException("release of savepoint failed", e);
+            }
+        }
+
+        @Override
+        protected void transactionRollbackToSavepoint() throws StoreException
+        {
+            try
+            {
+                // rolling back to a savepoint keeps it, release it like a successful task would
+                db.exec("ROLLBACK TO " + SAVEPOINT_NAME);
+                db.exec("RELEASE " + SAVEPOINT_NAME);
+            }
+            catch (SQLiteException e)
+            {
+                throw new StoreException("rollback to savepoint failed", e);
+            }
+        }
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.util;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Reads bit sequences (most significant bit first) written by BitWriter from a ByteBuffer.
+ */
+final class BitReader
+{
+    private final ByteBuffer in;
+
+    // available bits are the lowest availableCount bits
+    private long available;
+
+    private int availableCount;
+
+
+    BitReader(ByteBuffer in)
+    {
+        this.in = in;
+    }
+
+
+    /**
+     * Read bitCount bits.
+     *
+     * @throws java.nio.BufferUnderflowException If the input ends prematurely
+     */
+    long read(int bitCount)
+    {
+        if (bitCount > 32)
+        {
+            final long high = read(bitCount - 32);
+
+            return (high << 32) | read(32);
+        }
+
+        while (availableCount < bitCount)
+        {
+            available = (available << 8) | (in.get() & 0xFF);
+            availableCount += 8;
+        }
+
+        availableCount -= bitCount;
+
+        return (available >>> availableCount) & ((1L << bitCount) - 1);
+    }
+
+    boolean readBit()
+    {
+        return read(1) != 0;
+    }
+}
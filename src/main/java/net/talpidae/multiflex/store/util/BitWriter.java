@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.util;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Writes bit sequences (most significant bit first) to a ByteBuffer.
+ */
+final class BitWriter
+{
+    private final ByteBuffer out;
+
+    // pending bits are the lowest pendingCount bits
+    private long pending;
+
+    private int pendingCount;
+
+
+    BitWriter(ByteBuffer out)
+    {
+        this.out = out;
+    }
+
+
+    /**
+     * Write the lowest bitCount bits of value.
+     */
+    void write(long value, int bitCount)
+    {
+        if (bitCount > 32)
+        {
+            write(value >>> 32, bitCount - 32);
+            bitCount = 32;
+        }
+
+        pending = (pending << bitCount) | (value & ((1L << bitCount) - 1));
+        pendingCount += bitCount;
+        while (pendingCount >= 8)
+        {
+            pendingCount -= 8;
+            out.put((byte) (pending >>> pendingCount));
+        }
+    }
+
+    void writeBit(boolean bit)
+    {
+        write(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Write the remaining bits padded with zeros to a full byte.
+     */
+    void flush()
+    {
+        if (pendingCount > 0)
+        {
+            out.put((byte) (pending << (8 - pendingCount)));
+            pendingCount = 0;
+        }
+    }
+}
@@ -34,64 +34,219 @@ public class Center31BitEncoding
 {
     private static final int MAX_INPUT_LENGTH = Integer.MAX_VALUE >> 2;
 
+    // lines up to this length get their lerp fractions by multiplying with a 24.40 fixed-point reciprocal
+    private static final int MAX_RECIPROCAL_COUNT = 1 << 16;
+
+    private static final int RECIPROCAL_SHIFT = 40;
+
+    /**
+     * Maximum absolute error that may be specified for lossy encoding.
+     */
+    public static final int MAX_ERROR = 0xFFFF;
+
+    /**
+     * Upper bound of the number of integers encode() stores for the specified number of input integers.
+     */
+    public static int maxEncodedLength(int length)
+    {
+        return length * 2;
+    }
+
+
     public static int[] encode(int[] curve)
     {
-        if (curve.length > MAX_INPUT_LENGTH)
+        final int[] out = new int[maxEncodedLength(curve.length)];
+
+        return Arrays.copyOf(out, encode(curve, 0, curve.length, out, 0));
+    }
+
+
+    /**
+     * Encode length integers starting at offset.
+     *
+     * @param out Must have room for maxEncodedLength(length) integers starting at outOffset
+     * @return The number of integers written to out
+     */
+    public static int encode(int[] in, int offset, int length, int[] out, int outOffset)
+    {
+        return encode(in, offset, length, out, outOffset, 0);
+    }
+
+
+    /**
+     * Encode length integers starting at offset, allowing every decoded value except the line end points
+     * to differ from the original by up to maxError.
+     * <p>
+     * The deltas to the lerp'd lines are quantized to steps of 2 * maxError + 1, the line end points are exact.
+     *
+     * @param out      Must have room for maxEncodedLength(length) integers starting at outOffset
+     * @param maxError Maximum absolute error (0 for lossless encoding, up to MAX_ERROR)
+     * @return The number of integers written to out
+     */
+    public static int encode(int[] in, int offset, int length, int[] out, int outOffset, int maxError)
+    {
+        if (length > MAX_INPUT_LENGTH)
         {
             throw new IllegalArgumentException("input curve longer than " + MAX_INPUT_LENGTH);
         }
 
-        // TODO Inline simplifiedCenter() for performance
-        final int[] simplified = Curve.simplifiedCenter(curve);
-        final int curveEnd = curve.length;
-        final int[] out = new int[Math.max(4, curveEnd * 2)];
+        if (maxError < 0 || maxError > MAX_ERROR)
+        {
+            throw new IllegalArgumentException("maxError " + maxError + " out of range [0, " + MAX_ERROR + "]");
+        }
 
-        // consume first point
-        int x0 = 0;
-        int x1 = simplified[0];
-        int j = 2;
-        int y0 = simplified[1];
+        if (length == 0)
+        {
+            return 0;
+        }
 
         // emit initial literal of size 1
-        out[0] = 0;
-        out[1] = toShifted(y0);
-        int iOut = 2;
-        for (int i = 1; i < curveEnd; )
+        out[outOffset] = 0;
+        out[outOffset + 1] = toShifted(in[offset]);
+        int outPosition = outOffset + 2;
+
+        if (length < 3)
         {
-            // consume next point
-            x0 = x1 + 1;
-            x1 = simplified[j];
-            j += 2;
+            // every point of a curve with less than 3 points is a line end point
+            for (int x = 1; x < length; ++x)
+            {
+                outPosition = encodeLine(in, offset, x - 1, x, out, outPosition, maxError);
+            }
+
+            return outPosition - outOffset;
+        }
 
-            final int count = x1 - x0 + 1;
+        // find line end points like Curve.simplifiedCenter() does and emit each line as soon as its end is known
+        int vPrevious = in[offset + 1];
+        int d1Previous = vPrevious - in[offset];
+        int xPeakPrevious = 0;
+        int yPeakPrevious = vPrevious;
+        int xCenter0 = 0;
+        int yCenter0 = in[offset];
+        int xCenter1 = 0;
+        int yCenter1 = 0;
+        int yCenterPrevious = 0;
+        int peakCount = 1; // fake first peak at x == 0
+
+        for (int i = 2; i < length; ++i)
+        {
+            final int v = in[offset + i];
+            final int d1 = v - vPrevious;
+            if (d1 <= 0 && (d1Previous > 0 || (d1Previous == 0 && peakCount > 0 && yPeakPrevious == v))
+                    || d1 >= 0 && (d1Previous < 0 || (d1Previous == 0 && peakCount > 0 && yPeakPrevious == v)))
+            {
+                // found high or low peak
+                final int xPeak = i - 1;
+                final int yPeak = in[offset + xPeak];
+                final int xCenter = xPeak - ((xPeak - xPeakPrevious) / 2); // between this and the previous peak
+                final int yCenter = (int) (((long) yPeak + (long) yPeakPrevious) / 2); // average
+
+                if (peakCount == 1)
+                {
+                    // register second peak
+                    xCenter1 = xCenter;
+                    yCenter1 = yCenter;
+                }
+
+                final int expectedCenterY = toInt(lerp8(fromInt(yCenter0), fromInt(yCenter1), (((xCenter - xCenter0) << 8) / (xCenter1 - xCenter0)) - 1));
+                final int centerDevitation = yCenter - expectedCenterY;
+
+                // is the difference to the expectedCenterY higher than the delta from the last center?
+                final int centerDelta = yCenter - yCenterPrevious;
+                if (Math.abs(centerDevitation) > Math.abs(centerDelta))
+                {
+                    // emit line
+                    outPosition = encodeLine(in, offset, xCenter0, xCenter, out, outPosition, maxError);
+
+                    // got new first peak
+                    peakCount = 0;
+                    xCenter0 = xCenter;
+                    yCenter0 = yCenter;
+                }
+                else
+                {
+                    // update second peak (extend line)
+                    xCenter1 = xCenter;
+                    yCenter1 = yCenter;
+                }
+
+                ++peakCount;
+
+                xPeakPrevious = xPeak;
+                yPeakPrevious = yPeak;
+                yCenterPrevious = yCenter;
+            }
+
+            vPrevious = v;
+            d1Previous = d1;
+        }
+
+        // emit final line
+        outPosition = encodeLine(in, offset, xCenter0, length - 1, out, outPosition, maxError);
+
+        return outPosition - outOffset;
+    }
 
-            // store range
-            out[iOut] = count - 1;
-            ++iOut;
 
-            // reserve space to store target y
-            final int y1 = simplified[j - 1];
-            out[iOut] = toShifted(y1);
-            ++iOut;
+    /**
+     * Store the line from the end point at xStart to the end point at xEnd: its range, its end point's
+     * value and the (quantized) deltas of the points in between to the lerp'd line.
+     */
+    private static int encodeLine(int[] in, int offset, int xStart, int xEnd, int[] out, int outPosition, int maxError)
+    {
+        final int quantum = 2 * maxError + 1;
+        final int count = xEnd - xStart;
+        final int y0 = in[offset + xStart];
+        final int y1 = in[offset + xEnd];
+
+        // store range
+        out[outPosition] = count - 1;
+
+        // store target y (the actual value at xEnd, the simplified center is only an approximation)
+        out[outPosition + 1] = toShifted(y1);
+        outPosition += 2;
+
+        // see decodeLine() for the equivalence to lerp8()
+        final int base = y0 << 8;
+        final int dy = y1 - y0;
+        final int first = offset + xStart + 1;
+        final int end = count - 1;
+        if (count <= MAX_RECIPROCAL_COUNT)
+        {
+            final long step = reciprocalStep(count);
+            long scaledFraction = 0;
+            for (int k = 0; k < end; ++k)
+            {
+                final int fraction = (int) (scaledFraction >>> RECIPROCAL_SHIFT);
+                scaledFraction += step;
 
+                // store delta to lerp'd line
+                out[outPosition + k] = toShifted(quantize(((base + dy * fraction) >> 8) - in[first + k], maxError, quantum));
+            }
+        }
+        else
+        {
             final long y0Fp = fromInt(y0);
             final long y1Fp = fromInt(y1);
-            for (int k = 0; k < count - 1; ++k)
+            for (int k = 0; k < end; ++k)
             {
                 // lerp8 x0,y0 -> x1,y1
                 final short fraction8bitX0toX1 = (short) ((k << 8) / count);
                 final int yt = toInt(lerp8(y0Fp, y1Fp, fraction8bitX0toX1));
 
                 // store delta to lerp'd line
-                out[iOut] = toShifted(yt - curve[i + k]);
-                ++iOut;
+                out[outPosition + k] = toShifted(quantize(yt - in[first + k], maxError, quantum));
             }
-
-            i += count; // we also output the next value (the target y)
-            y0 = y1;
         }
 
-        return Arrays.copyOf(out, iOut);
+        return outPosition + end;
+    }
+
+
+    // round delta to the nearest multiple of quantum, leaving a remainder within [-maxError, maxError]
+    private static int quantize(int delta, int maxError, int quantum)
+    {
+        return maxError == 0 ? delta : Math.floorDiv(delta + maxError, quantum);
     }
 
 
@@ -114,19 +269,12 @@ public class Center31BitEncoding
         }
     }
 
-    // reverse toShifted()
+    // reverse toShifted() without branching (negate using the sign mask from bit0)
     private static int fromShifted(int i)
     {
-        if ((i & 1) != 0)
-        {
-            // negative
-            return (i >>> 1) * -1;
-        }
-        else
-        {
-            // positive
-            return i >>> 1;
-        }
+        final int sign = -(i & 1);
+
+        return ((i >>> 1) ^ sign) - sign;
     }
 
 
@@ -138,19 +286,55 @@ public class Center31BitEncoding
         }
 
         final int[] curve = new int[encoded.length - 1];
+
+        return Arrays.copyOf(curve, decode(encoded, 0, encoded.length, curve, 0, curve.length));
+    }
+
+
+    /**
+     * Decode length integers starting at offset.
+     *
+     * @param outLength Maximum number of integers to store in out starting at outOffset
+     * @return The number of integers written to out
+     */
+    public static int decode(int[] encoded, int offset, int length, int[] out, int outOffset, int outLength) throws EncodingException
+    {
+        return decode(encoded, offset, length, out, outOffset, outLength, 0);
+    }
+
+
+    /**
+     * Decode length integers starting at offset that have been encoded with the specified maxError.
+     *
+     * @param outLength Maximum number of integers to store in out starting at outOffset
+     * @return The number of integers written to out
+     */
+    public static int decode(int[] encoded, int offset, int length, int[] out, int outOffset, int outLength, int maxError) throws EncodingException
+    {
+        if (maxError < 0 || maxError > MAX_ERROR)
+        {
+            throw new EncodingException("maxError " + maxError + " out of range [0, " + MAX_ERROR + "]");
+        }
+
+        final int quantum = 2 * maxError + 1;
+        final int end = offset + length;
         int x0 = 0;
         int y0 = 0;
-        for (int i = 0; i < encoded.length; )
+        for (int i = offset; i < end; )
         {
             final int count = encoded[i] + 1;
             final int x1 = x0 + count;
             if (count < 1)
             {
-                throw new EncodingException("line range " + count + " at index " + i + " is smaller than 1");
+                throw new EncodingException("line range " + count + " at index " + (i - offset) + " is smaller than 1");
+            }
+            else if (x1 > outLength || x1 < 0)
+            {
+                throw new EncodingException("line x1 " + x1 + " is larger than output length " + outLength + " at index " + (i - offset));
             }
-            else if (x1 >= curve.length)
+            else if (count > end - i)
             {
-                throw new EncodingException("line x1 " + x1 + " is larger or equal to curve.length " + curve.length + " at index " + i);
+                throw new EncodingException("line at index " + (i - offset) + " exceeds the encoded data");
             }
             ++i;
 
@@ -158,26 +342,65 @@ public class Center31BitEncoding
             final int y1 = fromShifted(encoded[i]);
             ++i;
 
-            final long y0Fp = fromInt(y0);
-            final long y1Fp = fromInt(y1);
-            for (int k = 0; k < count - 1; ++k, ++i)
+            if (count <= MAX_RECIPROCAL_COUNT)
             {
-                // lerp8 x0,y0 -> x1,y1
-                final short fraction8bitX0toX1 = (short) ((k << 8) / count);
-                final int yt = toInt(lerp8(y0Fp, y1Fp, fraction8bitX0toX1));
-
-                // store delta to lerp'd line
-                curve[x0 + k] = yt - fromShifted(encoded[i]);
+                decodeLine(encoded, i, out, outOffset + x0, count, y0, y1, quantum);
             }
+            else
+            {
+                final long y0Fp = fromInt(y0);
+                final long y1Fp = fromInt(y1);
+                for (int k = 0; k < count - 1; ++k)
+                {
+                    // lerp8 x0,y0 -> x1,y1
+                    final short fraction8bitX0toX1 = (short) ((k << 8) / count);
+                    final int yt = toInt(lerp8(y0Fp, y1Fp, fraction8bitX0toX1));
+
+                    out[outOffset + x0 + k] = yt - fromShifted(encoded[i + k]) * quantum;
+                }
+            }
+            i += count - 1;
 
-            curve[x0 + count - 1] = y1;
+            out[outOffset + x1 - 1] = y1;
 
             // this point is the next lines starting point
             y0 = y1;
             x0 = x1;
         }
 
-        return Arrays.copyOf(curve, x0);
+        return x0;
+    }
+
+
+    /**
+     * Reconstruct the count - 1 points of a line before its end point (count must not exceed MAX_RECIPROCAL_COUNT).
+     * <p>
+     * Produces the same values as lerp8() in Q32.8: the 8 fractional bits cancel out, so the interpolation
+     * only needs 32-bit arithmetic. The fraction (k &lt;&lt; 8) / count is stepped using a reciprocal
+     * that is exact for all k &lt; count &lt;= MAX_RECIPROCAL_COUNT, avoiding a division per point.
+     */
+    private static void decodeLine(int[] encoded, int encodedOffset, int[] out, int outOffset, int count, int y0, int y1, int quantum)
+    {
+        final int base = y0 << 8;
+        final int dy = y1 - y0;
+        final long step = reciprocalStep(count);
+        final int end = count - 1;
+
+        long scaledFraction = 0;
+        for (int k = 0; k < end; ++k)
+        {
+            final int fraction = (int) (scaledFraction >>> RECIPROCAL_SHIFT);
+            scaledFraction += step;
+
+            out[outOffset + k] = ((base + dy * fraction) >> 8) - fromShifted(encoded[encodedOffset + k]) * quantum;
+        }
+    }
+
+
+    // increment of the scaled fraction per point: ceil(2^RECIPROCAL_SHIFT / count) << 8
+    private static long reciprocalStep(int count)
+    {
+        return (((1L << RECIPROCAL_SHIFT) + count - 1) / count) << 8;
     }
 
 
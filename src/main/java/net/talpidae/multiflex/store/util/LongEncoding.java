@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.util;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Compression of 64-bit integer series.
+ */
+public final class LongEncoding
+{
+    // delta-of-delta buckets: number of zig-zag encoded bits stored after the bucket's prefix
+    private static final int[] BUCKET_BITS = {7, 9, 12};
+
+
+    private LongEncoding()
+    {
+
+    }
+
+
+    /**
+     * Upper bound of the number of bytes needed to store the specified number of longs using any of the encodings.
+     */
+    public static int maxEncodedLongsBytes(int length)
+    {
+        // delta-of-delta: 4 prefix bits and 64 value bits in the worst case (zig-zag VarByte needs 10 bytes at most)
+        return Math.max(length * 10, (length * (4 + 64) + 7) / 8);
+    }
+
+
+    /**
+     * Store each value zig-zag encoded using 7 bits per byte (little-endian, most significant bit marks continuation).
+     */
+    public static void encodeZigZagVarByte(long[] in, ByteBuffer out)
+    {
+        for (final long value : in)
+        {
+            long zigZag = toZigZag(value);
+            while ((zigZag & ~0x7FL) != 0)
+            {
+                out.put((byte) ((zigZag & 0x7F) | 0x80));
+                zigZag >>>= 7;
+            }
+
+            out.put((byte) zigZag);
+        }
+    }
+
+    /**
+     * Decode length longs encoded by encodeZigZagVarByte() into out, starting at offset.
+     *
+     * @throws IllegalArgumentException         If the input is corrupt
+     * @throws java.nio.BufferUnderflowException If the input ends prematurely
+     */
+    public static void decodeZigZagVarByte(ByteBuffer in, long[] out, int offset, int length)
+    {
+        final int end = offset + length;
+        for (int i = offset; i < end; ++i)
+        {
+            long zigZag = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                if (shift > 63)
+                {
+                    throw new IllegalArgumentException("VarByte value exceeds 64 bits");
+                }
+
+                b = in.get();
+                zigZag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while (b < 0);
+
+            out[i] = fromZigZag(zigZag);
+        }
+    }
+
+
+    /**
+     * Store the first value followed by the differences between successive deltas using variable length bit fields.
+     * <p>
+     * Series with a constant rate of change (ie. timestamps, counters) need a single bit per value.
+     */
+    public static void encodeDeltaOfDelta(long[] in, ByteBuffer out)
+    {
+        final BitWriter writer = new BitWriter(out);
+        if (in.length > 0)
+        {
+            writer.write(in[0], Long.SIZE);
+
+            long previous = in[0];
+            long previousDelta = 0;
+            for (int i = 1; i < in.length; ++i)
+            {
+                // overflows are fine, decoding wraps around the same way
+                final long delta = in[i] - previous;
+                final long zigZag = toZigZag(delta - previousDelta);
+                previous = in[i];
+                previousDelta = delta;
+
+                if (zigZag == 0)
+                {
+                    writer.writeBit(false);
+                    continue;
+                }
+
+                int bucket = 0;
+                while (bucket < BUCKET_BITS.length && (zigZag >>> BUCKET_BITS[bucket]) != 0)
+                {
+                    ++bucket;
+                }
+
+                // prefix: bucket + 1 one-bits, terminated by a zero-bit unless it is the last bucket
+                writer.write(-1L, bucket + 1);
+                if (bucket < BUCKET_BITS.length)
+                {
+                    writer.writeBit(false);
+                    writer.write(zigZag, BUCKET_BITS[bucket]);
+                }
+                else
+                {
+                    writer.write(zigZag, Long.SIZE);
+                }
+            }
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Decode length longs encoded by encodeDeltaOfDelta() into out, starting at offset.
+     *
+     * @throws java.nio.BufferUnderflowException If the input ends prematurely
+     */
+    public static void decodeDeltaOfDelta(ByteBuffer in, long[] out, int offset, int length)
+    {
+        if (length > 0)
+        {
+            final BitReader reader = new BitReader(in);
+            long previous = reader.read(Long.SIZE);
+            long previousDelta = 0;
+            out[offset] = previous;
+
+            final int end = offset + length;
+            for (int i = offset + 1; i < end; ++i)
+            {
+                int bucket = 0;
+                while (bucket <= BUCKET_BITS.length && reader.readBit())
+                {
+                    ++bucket;
+                }
+
+                if (bucket > 0)
+                {
+                    final int bits = bucket <= BUCKET_BITS.length ? BUCKET_BITS[bucket - 1] : Long.SIZE;
+                    previousDelta += fromZigZag(reader.read(bits));
+                }
+
+                previous += previousDelta;
+                out[i] = previous;
+            }
+        }
+    }
+
+
+    private static long toZigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long fromZigZag(long zigZag)
+    {
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.util;
+
+import java.util.Arrays;
+
+
+/**
+ * Compression of byte arrays using the LZ4 block format (without the frame format's headers and checksums).
+ * <p>
+ * A greedy compressor with a single hash table probe per position, favouring speed over compression ratio.
+ */
+public final class Lz4Block
+{
+    /**
+     * Number of entries of the hash table passed to compress().
+     */
+    public static final int HASH_TABLE_SIZE = 1 << 12;
+
+    private static final int HASH_SHIFT = 32 - 12;
+
+    private static final int MIN_MATCH = 4;
+
+    // the last 5 bytes are always literals and the last match must start 12 bytes before the end
+    private static final int LAST_LITERALS = 5;
+
+    private static final int MF_LIMIT = 12;
+
+    private static final int MAX_DISTANCE = 0xFFFF;
+
+    private static final int RUN_MASK = 15;
+
+
+    private Lz4Block()
+    {
+
+    }
+
+
+    /**
+     * Upper bound of the number of bytes needed to store the specified number of bytes.
+     */
+    public static int maxCompressedLength(int length)
+    {
+        return length + length / 255 + 16;
+    }
+
+
+    /**
+     * Compress srcLength bytes starting at srcOffset.
+     *
+     * @param hashTable Re-usable table with HASH_TABLE_SIZE entries, its previous content is ignored
+     * @return The number of bytes written to dest
+     */
+    public static int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int[] hashTable)
+    {
+        final int srcEnd = srcOffset + srcLength;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+
+        int anchor = srcOffset;
+        int op = destOffset;
+        if (srcLength > MF_LIMIT)
+        {
+            Arrays.fill(hashTable, 0, HASH_TABLE_SIZE, -1);
+
+            int ip = srcOffset;
+            while (ip < mfLimit)
+            {
+                final int sequence = readInt(src, ip);
+                final int hash = (sequence * -1640531535) >>> HASH_SHIFT;
+                int ref = hashTable[hash];
+                hashTable[hash] = ip;
+
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence)
+                {
+                    ++ip;
+                    continue;
+                }
+
+                // extend the match backwards into the pending literals, then forwards
+                while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1])
+                {
+                    --ip;
+                    --ref;
+                }
+
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength])
+                {
+                    ++matchLength;
+                }
+
+                final int literalLength = ip - anchor;
+                final int token = op++;
+                dest[token] = (byte) ((Math.min(literalLength, RUN_MASK) << 4) | Math.min(matchLength - MIN_MATCH, RUN_MASK));
+                op = writeLength(dest, op, literalLength);
+                System.arraycopy(src, anchor, dest, op, literalLength);
+                op += literalLength;
+
+                final int distance = ip - ref;
+                dest[op++] = (byte) distance;
+                dest[op++] = (byte) (distance >>> 8);
+                op = writeLength(dest, op, matchLength - MIN_MATCH);
+
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        // last sequence consists of literals only
+        final int literalLength = srcEnd - anchor;
+        dest[op++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        op = writeLength(dest, op, literalLength);
+        System.arraycopy(src, anchor, dest, op, literalLength);
+        op += literalLength;
+
+        return op - destOffset;
+    }
+
+
+    /**
+     * Decompress srcLength bytes starting at srcOffset.
+     *
+     * @param destLength Maximum number of bytes to write to dest
+     * @return The number of bytes written to dest
+     * @throws IllegalArgumentException If the input is malformed or decompresses to more than destLength bytes
+     */
+    public static int decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength)
+    {
+        final int srcEnd = srcOffset + srcLength;
+        final int destEnd = destOffset + destLength;
+
+        int ip = srcOffset;
+        int op = destOffset;
+        while (ip < srcEnd)
+        {
+            final int token = src[ip++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK)
+            {
+                int b;
+                do
+                {
+                    if (ip >= srcEnd || literalLength > destLength)
+                    {
+                        throw new IllegalArgumentException("malformed literal length at " + (ip - srcOffset));
+                    }
+
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                }
+                while (b == 0xFF);
+            }
+
+            if (literalLength > srcEnd - ip || literalLength > destEnd - op)
+            {
+                throw new IllegalArgumentException("literals exceed bounds at " + (ip - srcOffset));
+            }
+
+            System.arraycopy(src, ip, dest, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+
+            if (ip == srcEnd)
+            {
+                // last sequence has no match
+                break;
+            }
+
+            if (srcEnd - ip < 2)
+            {
+                throw new IllegalArgumentException("truncated match offset at " + (ip - srcOffset));
+            }
+
+            final int distance = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+            ip += 2;
+            if (distance == 0 || distance > op - destOffset)
+            {
+                throw new IllegalArgumentException("invalid match offset " + distance + " at " + (ip - srcOffset));
+            }
+
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK)
+            {
+                int b;
+                do
+                {
+                    if (ip >= srcEnd || matchLength > destLength)
+                    {
+                        throw new IllegalArgumentException("malformed match length at " + (ip - srcOffset));
+                    }
+
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                }
+                while (b == 0xFF);
+            }
+            matchLength += MIN_MATCH;
+
+            if (matchLength > destEnd - op)
+            {
+                throw new IllegalArgumentException("match exceeds bounds at " + (ip - srcOffset));
+            }
+
+            final int ref = op - distance;
+            if (distance >= matchLength)
+            {
+                System.arraycopy(dest, ref, dest, op, matchLength);
+            }
+            else
+            {
+                // overlapping match repeats the last distance bytes
+                for (int i = 0; i < matchLength; ++i)
+                {
+                    dest[op + i] = dest[ref + i];
+                }
+            }
+            op += matchLength;
+        }
+
+        return op - destOffset;
+    }
+
+
+    /**
+     * Write the remainder of a length that didn't fit into the token's 4 bits.
+     */
+    private static int writeLength(byte[] dest, int op, int length)
+    {
+        if (length >= RUN_MASK)
+        {
+            length -= RUN_MASK;
+            while (length >= 0xFF)
+            {
+                dest[op++] = (byte) 0xFF;
+                length -= 0xFF;
+            }
+
+            dest[op++] = (byte) length;
+        }
+
+        return op;
+    }
+
+
+    private static int readInt(byte[] src, int offset)
+    {
+        return (src[offset] & 0xFF)
+                | (src[offset + 1] & 0xFF) << 8
+                | (src[offset + 2] & 0xFF) << 16
+                | (src[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2017  Jonas Zeiger <jonas.zeiger@talpidae.net>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.talpidae.multiflex.store.util;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Lossless compression of floating-point series that XORs each value with its predecessor (as in Facebook's Gorilla).
+ * <p>
+ * Slowly changing values share sign, exponent and high mantissa bits, so only the few meaningful bits
+ * between the leading and trailing zeros of the XOR result are stored. Repeated values take a single bit.
+ */
+public final class XorEncoding
+{
+    private static final int LEADING_ZEROS_BITS = 5;
+
+    private static final int MAX_LEADING_ZEROS = (1 << LEADING_ZEROS_BITS) - 1;
+
+
+    private XorEncoding()
+    {
+
+    }
+
+
+    /**
+     * Upper bound of the number of bytes needed to store the specified number of floats.
+     */
+    public static int maxEncodedFloatsBytes(int length)
+    {
+        // control bits, leading zeros, length and 32 meaningful bits
+        return (length * (2 + LEADING_ZEROS_BITS + 5 + 32) + 7) / 8;
+    }
+
+    /**
+     * Upper bound of the number of bytes needed to store the specified number of doubles.
+     */
+    public static int maxEncodedDoublesBytes(int length)
+    {
+        return (length * (2 + LEADING_ZEROS_BITS + 6 + 64) + 7) / 8;
+    }
+
+
+    public static void encodeFloats(float[] in, ByteBuffer out)
+    {
+        final BitWriter writer = new BitWriter(out);
+        final Compressor compressor = new Compressor(writer, Float.SIZE);
+        for (final float value : in)
+        {
+            compressor.write(Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
+        }
+
+        writer.flush();
+    }
+
+    public static void encodeDoubles(double[] in, ByteBuffer out)
+    {
+        final BitWriter writer = new BitWriter(out);
+        final Compressor compressor = new Compressor(writer, Double.SIZE);
+        for (final double value : in)
+        {
+            compressor.write(Double.doubleToRawLongBits(value));
+        }
+
+        writer.flush();
+    }
+
+
+    /**
+     * Decode length floats into out, starting at offset.
+     *
+     * @throws IllegalArgumentException         If the input is corrupt
+     * @throws java.nio.BufferUnderflowException If the input ends prematurely
+     */
+    public static void decodeFloats(ByteBuffer in, float[] out, int offset, int length)
+    {
+        final Decompressor decompressor = new Decompressor(new BitReader(in), Float.SIZE);
+        final int end = offset + length;
+        for (int i = offset; i < end; ++i)
+        {
+            out[i] = Float.intBitsToFloat((int) decompressor.read());
+        }
+    }
+
+    /**
+     * Decode length doubles into out, starting at offset.
+     *
+     * @throws IllegalArgumentException         If the input is corrupt
+     * @throws java.nio.BufferUnderflowException If the input ends prematurely
+     */
+    public static void decodeDoubles(ByteBuffer in, double[] out, int offset, int length)
+    {
+        final Decompressor decompressor = new Decompressor(new BitReader(in), Double.SIZE);
+        final int end = offset + length;
+        for (int i = offset; i < end; ++i)
+        {
+            out[i] = Double.longBitsToDouble(decompressor.read());
+        }
+    }
+
+
+    private static int lengthBits(int width)
+    {
+        return width == Double.SIZE ? 6 : 5;
+    }
+
+
+    private static final class Compressor
+    {
+        private final BitWriter writer;
+
+        private final int width;
+
+        private final int lengthBits;
+
+        private boolean first = true;
+
+        private long previous;
+
+        // window of meaningful bits of the last block
+        private int blockLeading;
+
+        private int blockTrailing;
+
+        private int blockLength = 0;
+
+
+        private Compressor(BitWriter writer, int width)
+        {
+            this.writer = writer;
+            this.width = width;
+            this.lengthBits = lengthBits(width);
+        }
+
+
+        private void write(long value)
+        {
+            if (first)
+            {
+                writer.write(value, width);
+                previous = value;
+                first = false;
+                return;
+            }
+
+            final long xor = value ^ previous;
+            previous = value;
+            if (xor == 0)
+            {
+                // same value
+                writer.writeBit(false);
+                return;
+            }
+
+            writer.writeBit(true);
+
+            final int leading = Math.min(MAX_LEADING_ZEROS, Long.numberOfLeadingZeros(xor) - (Long.SIZE - width));
+            final int trailing = Long.numberOfTrailingZeros(xor);
+            if (blockLength > 0 && leading >= blockLeading && trailing >= blockTrailing)
+            {
+                // meaningful bits fit into the window of the last block
+                writer.writeBit(false);
+                writer.write(xor >>> blockTrailing, blockLength);
+            }
+            else
+            {
+                blockLeading = leading;
+                blockTrailing = trailing;
+                blockLength = width - leading - trailing;
+
+                writer.writeBit(true);
+                writer.write(leading, LEADING_ZEROS_BITS);
+                writer.write(blockLength - 1, lengthBits);
+                writer.write(xor >>> trailing, blockLength);
+            }
+        }
+    }
+
+
+    private static final class Decompressor
+    {
+        private final BitReader reader;
+
+        private final int width;
+
+        private final int lengthBits;
+
+        private boolean first = true;
+
+        private long previous;
+
+        private int blockTrailing;
+
+        private int blockLength = 0;
+
+
+        private Decompressor(BitReader reader, int width)
+        {
+            this.reader = reader;
+            this.width = width;
+            this.lengthBits = lengthBits(width);
+        }
+
+
+        private long read()
+        {
+            if (first)
+            {
+                previous = reader.read(width);
+                first = false;
+
+                return previous;
+            }
+
+            if (reader.readBit())
+            {
+                if (reader.readBit())
+                {
+                    final int leading = (int) reader.read(LEADING_ZEROS_BITS);
+                    blockLength = (int) reader.read(lengthBits) + 1;
+                    blockTrailing = width - leading - blockLength;
+                    if (blockTrailing < 0)
+                    {
+                        throw new IllegalArgumentException("invalid block: " + leading + " leading zeros, " + blockLength + " meaningful bits");
+                    }
+                }
+                else if (blockLength == 0)
+                {
+                    throw new IllegalArgumentException("block re-used before first block");
+                }
+
+                previous ^= reader.read(blockLength) << blockTrailing;
+            }
+
+            return previous;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+-- Stores the strings of UTF8_DICTIONARY encoded text fields, chunks refer to them by id
+CREATE TABLE IF NOT EXISTS dictionary (
+  id    INTEGER PRIMARY KEY NOT NULL, -- alias for rowid
+  value TEXT UNIQUE         NOT NULL
+);
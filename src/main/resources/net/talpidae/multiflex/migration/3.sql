@@ -0,0 +1,6 @@
+-- Stores the statistics (count, min, max, sum, first, last) of the integer fields of each chunk
+CREATE TABLE IF NOT EXISTS track_stats (
+  ts    INTEGER PRIMARY KEY NOT NULL, -- ts of the chunk in table track
+  stats BLOB                NOT NULL
+)
+  WITHOUT ROWID;
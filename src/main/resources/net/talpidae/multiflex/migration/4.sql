@@ -0,0 +1,12 @@
+-- Stores the count, sum, min and max of the integer fields of each track per time bucket of several lengths (levels)
+CREATE TABLE IF NOT EXISTS rollup (
+  level    INTEGER NOT NULL, -- length of the bucket in seconds
+  track_id INTEGER NOT NULL,
+  ts       INTEGER NOT NULL, -- begin of the bucket, a multiple of level
+  count    INTEGER NOT NULL,
+  sum      INTEGER NOT NULL,
+  min      INTEGER NOT NULL,
+  max      INTEGER NOT NULL,
+  PRIMARY KEY (level, track_id, ts)
+)
+  WITHOUT ROWID;
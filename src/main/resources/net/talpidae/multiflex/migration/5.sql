@@ -0,0 +1,23 @@
+-- Chunk timestamps become microseconds since EPOCH_MICROS (were seconds) and chunks get an explicit duration (was one second),
+-- the primary keys change so the tables are copied
+CREATE TABLE track_v5 (
+  ts            INTEGER PRIMARY KEY NOT NULL, -- ts is the microseconds since EPOCH_MICROS
+  duration      INTEGER             NOT NULL, -- length of the chunk in microseconds
+  descriptor_id INTEGER             NOT NULL,
+  chunk         BLOB                NOT NULL
+)
+  WITHOUT ROWID;
+
+INSERT INTO track_v5 (ts, duration, descriptor_id, chunk) SELECT ts * 1000000, 1000000, descriptor_id, chunk FROM track;
+DROP TABLE track;
+ALTER TABLE track_v5 RENAME TO track;
+
+CREATE TABLE track_stats_v5 (
+  ts    INTEGER PRIMARY KEY NOT NULL, -- ts of the chunk in table track
+  stats BLOB                NOT NULL
+)
+  WITHOUT ROWID;
+
+INSERT INTO track_stats_v5 (ts, stats) SELECT ts * 1000000, stats FROM track_stats;
+DROP TABLE track_stats;
+ALTER TABLE track_stats_v5 RENAME TO track_stats;
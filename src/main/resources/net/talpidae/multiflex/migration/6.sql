@@ -0,0 +1,6 @@
+-- Stores the index of the chunks merged into a single chunk by Store.compact(), so the original chunks can be sliced out
+CREATE TABLE IF NOT EXISTS track_parts (
+  ts    INTEGER PRIMARY KEY NOT NULL, -- ts of the merged chunk in table track
+  parts BLOB                NOT NULL
+)
+  WITHOUT ROWID;
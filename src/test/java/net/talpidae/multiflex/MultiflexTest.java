@@ -17,11 +17,17 @@
 
 package net.talpidae.multiflex;
 
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteStatement;
 import net.talpidae.multiflex.format.Chunk;
 import net.talpidae.multiflex.format.Descriptor;
 import net.talpidae.multiflex.format.Encoding;
+import net.talpidae.multiflex.store.AggregateFunction;
+import net.talpidae.multiflex.store.Aggregation;
+import net.talpidae.multiflex.store.ChunkCursor;
 import net.talpidae.multiflex.store.Store;
 import net.talpidae.multiflex.store.StoreException;
+import net.talpidae.multiflex.store.StoreOptions;
 import net.talpidae.multiflex.store.base.BaseChunk;
 import net.talpidae.multiflex.util.Wave;
 import org.junit.Test;
@@ -31,11 +37,20 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -53,6 +68,292 @@ public class MultiflexTest
         }
     }
 
+    @Test
+    public void testOpenWithOptions() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        final StoreOptions options = StoreOptions.builder()
+                .pageSize(8192)
+                .journalMode(StoreOptions.JournalMode.WAL)
+                .synchronous(StoreOptions.Synchronous.NORMAL)
+                .cacheSize(-8192)
+                .mmapSize(64 * 1024 * 1024)
+                .tempStore(StoreOptions.TempStore.MEMORY)
+                .build();
+
+        try (Store store = Multiflex.openSqlite(file, true, options))
+        {
+            store.putMeta("key", "value");
+
+            assertTrue("write-ahead log is missing", new File(file.getPath() + "-wal").exists());
+        }
+
+        try (Store store = Multiflex.openSqlite(file, false, options))
+        {
+            assertEquals("wrong meta value", store.getMeta("key"), "value");
+        }
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        final StoreOptions options = StoreOptions.builder()
+                .journalMode(StoreOptions.JournalMode.WAL)
+                .busyTimeout(5000)
+                .readers(4)
+                .build();
+
+        try (Store store = Multiflex.openSqlite(file, true, options))
+        {
+            assertEquals("wrong version", store.getVersion(), 6);
+            assertNotNull("store id is null", store.getId());
+
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            final List<Chunk> chunks = new ArrayList<>();
+            for (long t = 0; t < 1000; ++t)
+            {
+                builder.timestamp(t);
+                builder.integers(1, new int[]{(int) t});
+
+                chunks.add(builder.build());
+            }
+
+            store.putAll(chunks);
+
+            // read from many threads while writing more chunks
+            final ExecutorService clients = Executors.newFixedThreadPool(8);
+            try
+            {
+                final List<Future<Long>> results = new ArrayList<>();
+                for (int i = 0; i < 32; ++i)
+                {
+                    final long ts = i * 31;
+                    results.add(clients.submit(() ->
+                    {
+                        assertArrayEquals("wrong integers are returned", store.findByTimestamp(ts).getIntegers(1), new int[]{(int) ts});
+
+                        try (Stream<Chunk> scanned = store.scan(0, 1000).stream())
+                        {
+                            return scanned.count();
+                        }
+                    }));
+                }
+
+                for (long t = 1000; t < 1100; ++t)
+                {
+                    builder.timestamp(t);
+                    builder.integers(1, new int[]{(int) t});
+
+                    store.put(builder.build());
+                }
+
+                for (final Future<Long> result : results)
+                {
+                    assertEquals("wrong number of chunks scanned", (long) result.get(), 1000L);
+                }
+            }
+            finally
+            {
+                clients.shutdown();
+            }
+
+            assertEquals("wrong maximum timestamp", store.findMaxTimestamp(), 1099L);
+        }
+
+        try (Store store = Multiflex.openSqlite(file, false, options))
+        {
+            assertEquals("wrong number of chunks", store.findByTimestampRange(0, 2000).size(), 1100);
+        }
+    }
+
+    @Test
+    public void testPutAsync() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        final StoreOptions options = StoreOptions.builder()
+                .journalMode(StoreOptions.JournalMode.WAL)
+                .readers(1)
+                .writeQueueCapacity(64)
+                .build();
+
+        try (Store store = Multiflex.openSqlite(file, true, options))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            // chunks are encoded by the producers, written by the store's writer thread
+            final ExecutorService producers = Executors.newFixedThreadPool(4);
+            try
+            {
+                final List<Future<List<CompletableFuture<Void>>>> results = new ArrayList<>();
+                for (int i = 0; i < 4; ++i)
+                {
+                    final int producer = i;
+                    results.add(producers.submit(() ->
+                    {
+                        final Chunk.Builder builder = store.chunkBuilder(descriptor);
+                        final List<CompletableFuture<Void>> puts = new ArrayList<>();
+                        for (long t = producer; t < 2000; t += 4)
+                        {
+                            builder.timestamp(t);
+                            builder.integers(1, new int[]{(int) t});
+
+                            puts.add(store.putAsync(builder.build()));
+                        }
+
+                        return puts;
+                    }));
+                }
+
+                for (final Future<List<CompletableFuture<Void>>> result : results)
+                {
+                    CompletableFuture.allOf(result.get().toArray(new CompletableFuture<?>[0])).get();
+                }
+            }
+            finally
+            {
+                producers.shutdown();
+            }
+
+            assertEquals("wrong number of chunks", store.findByTimestampRange(0, 2000).size(), 2000);
+            assertArrayEquals("wrong integers are returned", store.findByTimestamp(1234).getIntegers(1), new int[]{1234});
+
+            final CompletableFuture<Void> invalidPut = store.putAsync(null);
+            try
+            {
+                invalidPut.get();
+                fail("invalid chunk has been written");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue("wrong exception type", e.getCause() instanceof StoreException);
+            }
+        }
+
+        // a writer thread without readers, closing the store commits the queued chunks
+        final List<CompletableFuture<Void>> puts = new ArrayList<>();
+        try (Store store = Multiflex.openSqlite(file, true, StoreOptions.builder().writerThread(true).build()))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            for (long t = 2000; t < 2100; ++t)
+            {
+                builder.timestamp(t);
+                builder.integers(1, new int[]{(int) t});
+
+                puts.add(store.putAsync(builder.build()));
+            }
+        }
+
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0])).get(0, TimeUnit.SECONDS);
+        try (Store store = Multiflex.openSqlite(file, false))
+        {
+            assertEquals("wrong number of chunks", store.findByTimestampRange(2000, 2100).size(), 100);
+        }
+
+        // the default store writes the chunk before returning
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            final CompletableFuture<Void> put = store.putAsync(store.chunkBuilder(descriptor).timestamp(2100).integers(1, new int[]{2100}).build());
+            assertTrue("default store has a writer thread", put.isDone());
+            put.get();
+            assertNotNull("chunk hasn't been written", store.findByTimestamp(2100));
+        }
+    }
+
+    @Test
+    public void testPutAsyncWithinBatch() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        final StoreOptions options = StoreOptions.builder()
+                .journalMode(StoreOptions.JournalMode.WAL)
+                .readers(1)
+                .build();
+
+        try (Store store = Multiflex.openSqlite(file, true, options))
+        {
+            store.putMeta("created", "yes");
+        }
+
+        // make inserting the chunk at 5 seconds fail
+        final SQLiteConnection db = new SQLiteConnection(file).open(false);
+        try
+        {
+            db.exec("CREATE TRIGGER fail_chunk BEFORE INSERT ON track WHEN NEW.ts = 5000000 BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+        }
+        finally
+        {
+            db.dispose();
+        }
+
+        try (Store store = Multiflex.openSqlite(file, true, options))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+
+            try (Store.Batch batch = store.writeBatch())
+            {
+                batch.put(builder.timestamp(1).integers(1, new int[]{1}).build());
+
+                // group commits and puts don't join the batch, their chunks are visible to readers once written
+                store.putAsync(builder.timestamp(2).integers(1, new int[]{2}).build()).get();
+                assertNotNull("chunk of completed putAsync() hasn't been committed", store.findByTimestamp(2));
+
+                final ExecutorService other = Executors.newSingleThreadExecutor();
+                try
+                {
+                    other.submit(() ->
+                    {
+                        store.put(builder.timestamp(3).integers(1, new int[]{3}).build());
+
+                        return null;
+                    }).get();
+                }
+                finally
+                {
+                    other.shutdown();
+                }
+                assertNotNull("chunk of put() hasn't been committed", store.findByTimestamp(3));
+
+                batch.put(builder.timestamp(4).integers(1, new int[]{4}).build());
+                try
+                {
+                    batch.put(builder.timestamp(5).integers(1, new int[]{5}).build());
+                    fail("chunk was not rejected");
+                }
+                catch (StoreException e)
+                {
+                    // expected, the chunks pending since the last commit are rolled back
+                }
+
+                batch.put(builder.timestamp(6).integers(1, new int[]{6}).build());
+            }
+
+            // the first chunk of the batch has been committed before the group commit
+            for (final long t : new long[]{1, 2, 3, 6})
+            {
+                assertArrayEquals("wrong integers are returned", store.findByTimestamp(t).getIntegers(1), new int[]{(int) t});
+            }
+            assertNull("rolled back chunk was stored", store.findByTimestamp(4));
+            assertNull("rejected chunk was stored", store.findByTimestamp(5));
+        }
+    }
+
     @Test
     public void testPutChunkGetChunkRandomSize() throws Exception
     {
@@ -91,7 +392,7 @@ public class MultiflexTest
             }
 
             assertNotNull("id is invalid UUID", store.getId());
-            assertEquals("version is not set", store.getVersion(), 1);
+            assertEquals("version is not set", store.getVersion(), 6);
             assertEquals("epoch not stored correctly", store.getEpoch(), epochMicros);
 
             // read chunk by chunk, comparing values
@@ -116,6 +417,1393 @@ public class MultiflexTest
     }
 
 
+    @Test
+    public void testPutAllWriteBatch() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR)
+                    .track(2, Encoding.UTF8_STRING)
+                    .build();
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+
+            final List<Chunk> chunks = new ArrayList<>();
+            for (long t = 0; t < 100; ++t)
+            {
+                builder.timestamp(t);
+                builder.integers(1, new int[]{(int) t, (int) t * 2, (int) t * 3});
+                builder.text(2, "chunk " + t);
+
+                chunks.add(builder.build());
+            }
+
+            store.putAll(chunks.subList(0, 50));
+
+            try (Store.Batch batch = store.writeBatch(7))
+            {
+                for (final Chunk chunk : chunks.subList(50, 100))
+                {
+                    batch.put(chunk);
+                }
+
+                // joins the batch's transaction
+                store.putMeta("batch", "open");
+            }
+
+            assertEquals("meta not stored during batch", store.getMeta("batch"), "open");
+
+            final List<Chunk> storedChunks = store.findByTimestampRange(0, 100);
+            assertEquals("wrong number of chunks", storedChunks.size(), 100);
+
+            for (final Chunk chunk : storedChunks)
+            {
+                final long t = chunk.getTimestamp();
+                assertArrayEquals("wrong integers are returned", chunk.getIntegers(1), new int[]{(int) t, (int) t * 2, (int) t * 3});
+                assertEquals("wrong text is returned", chunk.getText(2), "chunk " + t);
+            }
+        }
+    }
+
+
+    @Test
+    public void testScan() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            try (Store.Batch batch = store.writeBatch())
+            {
+                for (long t = 0; t < 1000; ++t)
+                {
+                    builder.timestamp(t);
+                    builder.integers(1, new int[]{(int) t});
+
+                    batch.put(builder.build());
+                }
+            }
+
+            try (ChunkCursor cursor = store.scan(100, 200))
+            {
+                long t = 100;
+                while (cursor.hasNext())
+                {
+                    final Chunk chunk = cursor.next();
+                    assertEquals("wrong chunk order", chunk.getTimestamp(), t);
+                    assertArrayEquals("wrong integers are returned", chunk.getIntegers(1), new int[]{(int) t});
+                    ++t;
+                }
+
+                assertEquals("wrong number of chunks", t, 200);
+            }
+
+            try (Stream<Chunk> chunks = store.scan(0, 2000).stream())
+            {
+                assertEquals("wrong number of chunks streamed", chunks.count(), 1000);
+            }
+
+            try (ChunkCursor cursor = store.scan(1000, 2000))
+            {
+                assertFalse("empty range has chunks", cursor.hasNext());
+            }
+        }
+    }
+
+
+    @Test
+    public void testPutFloatsAndDoubles() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.FLOAT32_XOR)
+                    .track(2, Encoding.FLOAT64_XOR)
+                    .build();
+
+            // slowly changing sensor readings with special values mixed in
+            final float[] floats = new float[1000];
+            final double[] doubles = new double[1000];
+            for (int i = 0; i < floats.length; ++i)
+            {
+                floats[i] = Math.round(20f + (float) Math.sin(i / 100.0) * 100f) / 10f;
+                doubles[i] = Math.round(100.0 * Math.cos(i / 250.0)) / 10.0;
+            }
+            floats[7] = Float.NaN;
+            floats[8] = Float.NEGATIVE_INFINITY;
+            doubles[9] = -0.0;
+            doubles[10] = Double.MAX_VALUE;
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            builder.timestamp(1);
+            builder.floats(1, floats);
+            builder.doubles(2, doubles);
+
+            final Chunk chunk = builder.build();
+            assertTrue("floating-point data has not been compressed",
+                    ((BaseChunk) chunk).getData().remaining() < (floats.length * 4 + doubles.length * 8) / 2);
+
+            store.put(chunk);
+
+            final Chunk storedChunk = store.findByTimestamp(1);
+            assertArrayEquals("wrong floats are returned", storedChunk.getFloats(1), floats, 0f);
+            assertArrayEquals("wrong doubles are returned", storedChunk.getDoubles(2), doubles, 0.0);
+            assertEquals("negative zero changed", Double.doubleToRawLongBits(storedChunk.getDoubles(2)[9]), Double.doubleToRawLongBits(-0.0));
+
+            try
+            {
+                builder.timestamp(2).integers(1, new int[]{1});
+                fail("integers accepted for floating-point track");
+            }
+            catch (StoreException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testPutLongs() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT64_DELTA_OF_DELTA)
+                    .track(2, Encoding.INT64_ZIGZAG_VAR_BYTE)
+                    .track(3, Encoding.INT64_DELTA_OF_DELTA)
+                    .build();
+
+            // nanosecond timestamps with some jitter, counter and extremes
+            final Random random = new Random(42);
+            final long[] timestamps = new long[1000];
+            final long[] counters = new long[1000];
+            for (int i = 0; i < timestamps.length; ++i)
+            {
+                timestamps[i] = 1500000000000000000L + i * 1000000L + (i % 100 == 0 ? random.nextInt(5000) : 0);
+                counters[i] = (1L << 40) + i * (long) random.nextInt(100) - 50;
+            }
+            final long[] extremes = {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MIN_VALUE, 1, Long.MAX_VALUE};
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            builder.timestamp(1);
+            builder.longs(1, timestamps);
+            builder.longs(2, counters);
+            builder.longs(3, extremes);
+
+            final Chunk chunk = builder.build();
+            assertTrue("timestamps have not been compressed", chunk.getIntegerCount(1) == timestamps.length
+                    && ((BaseChunk) chunk).getData().remaining() < timestamps.length * 8);
+
+            store.put(chunk);
+
+            final Chunk storedChunk = store.findByTimestamp(1);
+            assertArrayEquals("wrong timestamps are returned", storedChunk.getLongs(1), timestamps);
+            assertArrayEquals("wrong counters are returned", storedChunk.getLongs(2), counters);
+            assertArrayEquals("wrong extremes are returned", storedChunk.getLongs(3), extremes);
+        }
+    }
+
+    @Test
+    public void testAutoEncoding() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_AUTO)
+                    .build();
+
+            final Random random = new Random(42);
+            final int[] ramp = new int[1000];
+            final int[] noise = new int[1000];
+            for (int i = 0; i < ramp.length; ++i)
+            {
+                ramp[i] = 1000000 + i * 3;
+                noise[i] = random.nextInt(256);
+            }
+            final int[] extremes = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, Integer.MIN_VALUE};
+
+            // short runs of small values, RLE looks best unless the sample is long enough for FastPFOR to pack whole blocks
+            final int[] shortRuns = new int[1024];
+            for (int i = 0; i < shortRuns.length; )
+            {
+                final int value = random.nextInt(4);
+                for (int run = 2 + random.nextInt(2); run > 0 && i < shortRuns.length; --run)
+                {
+                    shortRuns[i++] = value;
+                }
+            }
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            final int[][] signals = {ramp, noise, shortRuns, extremes, new int[0]};
+            for (int t = 0; t < signals.length; ++t)
+            {
+                builder.timestamp(t);
+                builder.integers(1, signals[t]);
+
+                store.put(builder.build());
+            }
+
+            for (int t = 0; t < signals.length; ++t)
+            {
+                assertArrayEquals("wrong integers are returned", store.findByTimestamp(t).getIntegers(1), signals[t]);
+            }
+
+            // the best encoding plus a tag byte is stored
+            final Encoding[] expectedEncodings = {Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR, Encoding.INT32_VAR_BYTE_FAST_PFOR, Encoding.INT32_VAR_BYTE_FAST_PFOR};
+            for (int t = 0; t < expectedEncodings.length; ++t)
+            {
+                final Descriptor expectedDescriptor = store.descriptorBuilder()
+                        .track(1, expectedEncodings[t])
+                        .build();
+
+                final Chunk expectedChunk = store.chunkBuilder(expectedDescriptor).timestamp(t).integers(1, signals[t]).build();
+                assertEquals("wrong encoding selected", ((BaseChunk) store.findByTimestamp(t)).getData().remaining(),
+                        ((BaseChunk) expectedChunk).getData().remaining() + 1);
+            }
+
+            // large values, Center31BitEncoding can't store them (or their deltas to its lines)
+            for (final int offset : new int[]{1100000000, -1100000000, 600000000, (1 << 29) - 1001})
+            {
+                final int[][] sines = new int[60][];
+                for (int t = 0; t < sines.length; ++t)
+                {
+                    sines[t] = new int[1000];
+                    for (int i = 0; i < sines[t].length; ++i)
+                    {
+                        sines[t][i] = offset + (int) (Math.sin((t * sines[t].length + i) / 50.0) * 1000);
+                    }
+
+                    store.put(store.chunkBuilder(descriptor).timestamp(100 + t).integers(1, sines[t]).build());
+                }
+
+                for (int t = 0; t < sines.length; ++t)
+                {
+                    assertArrayEquals("wrong large integers are returned", store.findByTimestamp(100 + t).getIntegers(1), sines[t]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRunLengthAndConstantFields() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_RLE)
+                    .track(2, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            final int[] steps = new int[10000];
+            for (int i = 0; i < steps.length; ++i)
+            {
+                steps[i] = (i / 1000) * 17 - 50;
+            }
+            final int[] flat = new int[10000];
+            Arrays.fill(flat, -123456);
+
+            final Chunk chunk = store.chunkBuilder(descriptor)
+                    .timestamp(1)
+                    .integers(1, steps)
+                    .integers(2, flat)
+                    .build();
+
+            assertTrue("flat signals are not stored compactly", ((BaseChunk) chunk).getData().remaining() < 128);
+
+            store.put(chunk);
+
+            final Chunk storedChunk = store.findByTimestamp(1);
+            assertArrayEquals("wrong run-length encoded integers are returned", storedChunk.getIntegers(1), steps);
+            assertArrayEquals("wrong constant integers are returned", storedChunk.getIntegers(2), flat);
+            assertEquals("wrong constant integer count", storedChunk.getIntegerCount(2), flat.length);
+
+            final int[] dest = new int[flat.length + 1];
+            assertEquals("wrong number of integers copied", storedChunk.getIntegers(2, dest, 1), flat.length);
+            assertEquals("constant field overwrote preceding integer", dest[0], 0);
+            assertEquals("wrong constant integer copied", dest[flat.length], -123456);
+
+            final Chunk partialChunk = store.findByTimestamp(1, 2);
+            assertArrayEquals("wrong constant integers are returned for single track", partialChunk.getIntegers(2), flat);
+        }
+    }
+
+    @Test
+    public void testDeltaZigZagEncoding() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Encoding[] encodings = {Encoding.INT32_DELTA_ZIGZAG_FAST_PFOR, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR, Encoding.INT32_VAR_BYTE_FAST_PFOR};
+            final Descriptor.Builder descriptorBuilder = store.descriptorBuilder();
+            for (int i = 0; i < encodings.length; ++i)
+            {
+                descriptorBuilder.track(i, encodings[i]);
+            }
+            final Descriptor descriptor = descriptorBuilder.build();
+
+            // oscillating signal with lots of negative deltas
+            final int[] wave = Wave.sine(-20000, 20000, 1000, 10000, 50);
+            final int[] extremes = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, Integer.MIN_VALUE, 1};
+
+            final int[] sizes = new int[encodings.length];
+            for (int i = 0; i < encodings.length; ++i)
+            {
+                final Descriptor singleTrackDescriptor = store.descriptorBuilder()
+                        .track(i, encodings[i])
+                        .build();
+
+                sizes[i] = ((BaseChunk) store.chunkBuilder(singleTrackDescriptor).timestamp(0).integers(i, wave).build()).getData().remaining();
+            }
+
+            assertTrue("zigzag deltas are larger than plain deltas", sizes[0] < sizes[1]);
+            assertTrue("zigzag deltas are larger than plain integers", sizes[0] < sizes[2]);
+
+            final int[][] signals = {wave, extremes, new int[]{7}, new int[0]};
+            for (int t = 0; t < signals.length; ++t)
+            {
+                final Chunk.Builder builder = store.chunkBuilder(descriptor).timestamp(t);
+                for (int i = 0; i < encodings.length; ++i)
+                {
+                    builder.integers(i, signals[t]);
+                }
+
+                store.put(builder.build());
+            }
+
+            for (int t = 0; t < signals.length; ++t)
+            {
+                assertArrayEquals("wrong integers are returned", store.findByTimestamp(t).getIntegers(0), signals[t]);
+            }
+        }
+    }
+
+    @Test
+    public void testDictionaryEncoding() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        final File otherFile = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        final String[] states = {"RUNNING", "IDLE", "STOPPED", "RUNNING"};
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.UTF8_DICTIONARY)
+                    .track(2, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            for (int t = 0; t < states.length; ++t)
+            {
+                builder.timestamp(t);
+                builder.text(1, states[t]);
+                builder.integers(2, new int[]{1, 2});
+
+                store.put(builder.build());
+            }
+
+            assertEquals("repeated text is not stored as the same ID",
+                    ((BaseChunk) store.findByTimestamp(0)).getData(), ((BaseChunk) store.findByTimestamp(3)).getData());
+            assertSame("decoded text is not interned", store.findByTimestamp(0).getText(1), store.findByTimestamp(3).getText(1));
+            assertEquals("wrong single track text", store.findByTimestamp(2, 1).getText(1), "STOPPED");
+
+            // dictionary IDs are local to the store, chunks put into another store are re-encoded
+            try (Store otherStore = Multiflex.openSqlite(otherFile, true))
+            {
+                final Descriptor otherDescriptor = otherStore.descriptorBuilder()
+                        .track(1, Encoding.UTF8_DICTIONARY)
+                        .build();
+
+                otherStore.put(otherStore.chunkBuilder(otherDescriptor).timestamp(0).text(1, "UNRELATED").build());
+                otherStore.put(store.findByTimestamp(1));
+
+                final Chunk copied = otherStore.findByTimestamp(1);
+                assertEquals("wrong text in other store", copied.getText(1), "IDLE");
+                assertArrayEquals("wrong integers in other store", copied.getIntegers(2), new int[]{1, 2});
+            }
+        }
+
+        try (Store store = Multiflex.openSqlite(file, false))
+        {
+            for (int t = 0; t < states.length; ++t)
+            {
+                assertEquals("wrong text after re-open", store.findByTimestamp(t).getText(1), states[t]);
+            }
+        }
+
+        try (Store store = Multiflex.openSqlite(file, true, StoreOptions.builder().readers(2).build()))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.UTF8_DICTIONARY)
+                    .build();
+
+            store.put(store.chunkBuilder(descriptor).timestamp(4).text(1, "FAILED").build());
+
+            assertEquals("wrong text from concurrent store", store.findByTimestamp(4).getText(1), "FAILED");
+            assertEquals("wrong existing text from concurrent store", store.findByTimestamp(1).getText(1), "IDLE");
+        }
+    }
+
+    @Test
+    public void testDictionaryAfterBatchRollback() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            store.putMeta("created", "yes");
+        }
+
+        // make inserting the chunk at 5 seconds fail
+        final SQLiteConnection db = new SQLiteConnection(file).open(false);
+        try
+        {
+            db.exec("CREATE TRIGGER fail_chunk BEFORE INSERT ON track WHEN NEW.ts = 5000000 BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+        }
+        finally
+        {
+            db.dispose();
+        }
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.UTF8_DICTIONARY)
+                    .build();
+
+            final Store.Batch batch = store.writeBatch();
+            batch.put(store.chunkBuilder(descriptor).timestamp(1).text(1, "first").build());
+
+            // built before the rollback, "second" is interned when putting it
+            final Chunk pending = store.chunkBuilder(descriptor).timestamp(2).text(1, "second").build();
+            try
+            {
+                batch.put(store.chunkBuilder(descriptor).timestamp(5).text(1, "second").build());
+                fail("chunk was not rejected");
+            }
+            catch (StoreException e)
+            {
+                // expected, the chunks pending since the last commit are rolled back
+            }
+
+            batch.put(pending);
+            batch.put(store.chunkBuilder(descriptor).timestamp(3).text(1, "third").build());
+            batch.close();
+
+            assertEquals("chunk committed along with the new dictionary value is missing", store.findByTimestamp(1).getText(1), "first");
+            assertNull("rejected chunk was stored", store.findByTimestamp(5));
+            assertEquals("wrong text of chunk built before rollback", store.findByTimestamp(2).getText(1), "second");
+            assertEquals("wrong text of chunk built after rollback", store.findByTimestamp(3).getText(1), "third");
+        }
+    }
+
+    @Test
+    public void testDictionaryInternedOnPut() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.UTF8_DICTIONARY)
+                    .build();
+
+            final Chunk discarded = store.chunkBuilder(descriptor).timestamp(1).text(1, "discarded").build();
+            assertEquals("wrong text of chunk not put", discarded.getText(1), "discarded");
+
+            store.put(store.chunkBuilder(descriptor).timestamp(2).text(1, "stored").build());
+        }
+
+        try (Store store = Multiflex.openSqlite(file, false))
+        {
+            // read-only stores can build chunks with dictionary encoded text, too
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.UTF8_DICTIONARY)
+                    .build();
+
+            final Chunk chunk = store.chunkBuilder(descriptor).timestamp(3).text(1, "copied").build();
+            assertEquals("wrong text of chunk built by read-only store", chunk.getText(1), "copied");
+
+            try (Store writableStore = Multiflex.openSqlite(file, true))
+            {
+                writableStore.put(chunk);
+                assertEquals("wrong text of chunk put into other store", writableStore.findByTimestamp(3).getText(1), "copied");
+            }
+        }
+
+        final SQLiteConnection db = new SQLiteConnection(file).open(false);
+        try
+        {
+            final SQLiteStatement countValues = db.prepare("SELECT count(*) FROM dictionary");
+            try
+            {
+                assertTrue("no dictionary values", countValues.step());
+                assertEquals("value of chunk that was never put has been stored", countValues.columnInt(0), 2);
+            }
+            finally
+            {
+                countValues.dispose();
+            }
+        }
+        finally
+        {
+            db.dispose();
+        }
+    }
+
+    @Test
+    public void testFailedOperationWithinBatch() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            store.putMeta("created", "yes");
+        }
+
+        // make compact() fail after it has replaced the first chunk by the merged one
+        final SQLiteConnection db = new SQLiteConnection(file).open(false);
+        try
+        {
+            db.exec("CREATE TRIGGER fail_parts BEFORE INSERT ON track_parts BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+        }
+        finally
+        {
+            db.dispose();
+        }
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            try (Store.Batch batch = store.writeBatch())
+            {
+                for (int t = 0; t < 10; ++t)
+                {
+                    batch.put(store.chunkBuilder(descriptor).timestamp(t).integers(1, new int[]{t, t + 1}).build());
+                }
+
+                try
+                {
+                    store.compact(0, 10, 60);
+                    fail("compaction didn't fail");
+                }
+                catch (StoreException e)
+                {
+                    // expected, only the changes of compact() are rolled back
+                }
+
+                batch.put(store.chunkBuilder(descriptor).timestamp(10).integers(1, new int[]{10, 11}).build());
+            }
+
+            final List<Chunk> chunks = store.findByTimestampRange(0, 11);
+            assertEquals("wrong number of chunks after failed compaction", chunks.size(), 11);
+            for (int t = 0; t < chunks.size(); ++t)
+            {
+                assertEquals("wrong chunk duration after failed compaction", chunks.get(t).getDurationMicros(), 1000000L);
+                assertArrayEquals("wrong integers after failed compaction", chunks.get(t).getIntegers(1), new int[]{t, t + 1});
+            }
+        }
+    }
+
+    @Test
+    public void testBlockEncodings() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.BINARY)
+                    .track(2, Encoding.BINARY_DEFLATE)
+                    .track(3, Encoding.BINARY_LZ4)
+                    .track(4, Encoding.UTF8_DEFLATE)
+                    .track(5, Encoding.UTF8_LZ4)
+                    .build();
+
+            final Random random = new Random(42);
+            final StringBuilder records = new StringBuilder();
+            for (int i = 0; i < 500; ++i)
+            {
+                records.append("{\"state\":\"").append(random.nextBoolean() ? "RUNNING" : "IDLE")
+                        .append("\",\"temperature\":").append(random.nextInt(100)).append(",\"unit\":\"°C\"}\n");
+            }
+            final byte[] repetitive = records.toString().getBytes(StandardCharsets.UTF_8);
+            final byte[] noise = new byte[5000];
+            random.nextBytes(noise);
+            final byte[] overlapping = new byte[1000];
+            Arrays.fill(overlapping, (byte) 'a');
+
+            final byte[][] payloads = {repetitive, noise, overlapping, "short".getBytes(StandardCharsets.UTF_8), new byte[0]};
+            for (int t = 0; t < payloads.length; ++t)
+            {
+                final String text = new String(payloads[t], StandardCharsets.ISO_8859_1);
+                final Chunk.Builder builder = store.chunkBuilder(descriptor).timestamp(t);
+                for (int trackId = 1; trackId <= 3; ++trackId)
+                {
+                    builder.binary(trackId, ByteBuffer.wrap(payloads[t]));
+                }
+                builder.text(4, text);
+                builder.text(5, text);
+
+                store.put(builder.build());
+            }
+
+            for (int t = 0; t < payloads.length; ++t)
+            {
+                final Chunk chunk = store.findByTimestamp(t);
+                final String text = new String(payloads[t], StandardCharsets.ISO_8859_1);
+                for (int trackId = 1; trackId <= 3; ++trackId)
+                {
+                    assertEquals("wrong binary returned", chunk.getBinary(trackId), ByteBuffer.wrap(payloads[t]));
+
+                    final ByteBuffer dest = ByteBuffer.allocateDirect(payloads[t].length + 1);
+                    dest.put((byte) 1);
+                    assertEquals("wrong number of bytes copied", chunk.getBinary(trackId, dest), payloads[t].length);
+                    dest.flip().position(1);
+                    assertEquals("wrong binary copied", dest, ByteBuffer.wrap(payloads[t]));
+                }
+
+                assertEquals("wrong deflated text returned", chunk.getText(4), text);
+                assertEquals("wrong LZ4 text returned", chunk.getText(5), text);
+            }
+
+            final Chunk chunk = store.findByTimestamp(0);
+            final Descriptor binaryDescriptor = store.descriptorBuilder()
+                    .track(1, Encoding.BINARY)
+                    .build();
+            for (final Encoding encoding : new Encoding[]{Encoding.BINARY_DEFLATE, Encoding.BINARY_LZ4})
+            {
+                final Descriptor compressedDescriptor = store.descriptorBuilder()
+                        .track(1, encoding)
+                        .build();
+
+                final int plainSize = ((BaseChunk) store.chunkBuilder(binaryDescriptor).timestamp(0).binary(1, chunk.getBinary(1)).build()).getData().remaining();
+                final int compressedSize = ((BaseChunk) store.chunkBuilder(compressedDescriptor).timestamp(0).binary(1, chunk.getBinary(1)).build()).getData().remaining();
+                assertTrue(encoding.name() + " doesn't compress repetitive data", compressedSize < plainSize / 2);
+            }
+
+            assertEquals("wrong single track binary", store.findByTimestamp(0, 3).getBinary(3), ByteBuffer.wrap(repetitive));
+
+            // fields exceeding the re-used decoding buffers alternating with small ones
+            final Descriptor largeDescriptor = store.descriptorBuilder()
+                    .track(1, Encoding.UTF8_LZ4)
+                    .track(2, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .build();
+            final String largeText = String.join("", Collections.nCopies(100, records));
+            final int[] largeIntegers = random.ints(1 << 19).toArray();
+            store.put(store.chunkBuilder(largeDescriptor).timestamp(10).text(1, largeText).integers(2, largeIntegers).build());
+            store.put(store.chunkBuilder(largeDescriptor).timestamp(11).text(1, "short").integers(2, new int[]{1, 2, 3}).build());
+            for (int i = 0; i < 2; ++i)
+            {
+                final Chunk large = store.findByTimestamp(10);
+                assertEquals("wrong large text returned", large.getText(1), largeText);
+                assertArrayEquals("wrong large integers returned", large.getIntegers(2), largeIntegers);
+
+                final Chunk small = store.findByTimestamp(11);
+                assertEquals("wrong small text returned", small.getText(1), "short");
+                assertArrayEquals("wrong small integers returned", small.getIntegers(2), new int[]{1, 2, 3});
+            }
+        }
+    }
+
+    @Test
+    public void testLossyCenter31BitEncoding() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        final int maxError = 8;
+        final Random random = new Random(42);
+        final int[] curve = new int[3000];
+        for (int i = 0; i < curve.length; ++i)
+        {
+            curve[i] = (int) (Math.sin(i / 50.0) * 10000) + random.nextInt(7) - 3;
+        }
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR)
+                    .track(2, Encoding.INT32_CENTER31BIT_LOSSY, maxError)
+                    .build();
+
+            store.put(store.chunkBuilder(descriptor).timestamp(1).integers(1, curve).integers(2, curve).build());
+
+            final Descriptor losslessDescriptor = store.descriptorBuilder().track(1, Encoding.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR).build();
+            final Descriptor lossyDescriptor = store.descriptorBuilder().track(1, Encoding.INT32_CENTER31BIT_LOSSY, maxError).build();
+            final int losslessSize = ((BaseChunk) store.chunkBuilder(losslessDescriptor).timestamp(0).integers(1, curve).build()).getData().remaining();
+            final int lossySize = ((BaseChunk) store.chunkBuilder(lossyDescriptor).timestamp(0).integers(1, curve).build()).getData().remaining();
+            assertTrue("lossy encoding doesn't reduce size", lossySize < losslessSize * 4 / 5);
+
+            try
+            {
+                store.descriptorBuilder().track(1, Encoding.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR, maxError);
+                fail("max error accepted for lossless encoding");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+
+        try (Store store = Multiflex.openSqlite(file, false))
+        {
+            final Chunk chunk = store.findByTimestamp(1);
+            assertEquals("wrong max error of lossless track", chunk.getDescriptor().getTrack(1).getMaxError(), 0);
+            assertEquals("wrong max error of lossy track", chunk.getDescriptor().getTrack(2).getMaxError(), maxError);
+            assertArrayEquals("lossless track changed", chunk.getIntegers(1), curve);
+
+            final int[] lossy = chunk.getIntegers(2);
+            assertEquals("wrong number of lossy integers", lossy.length, curve.length);
+            for (int i = 0; i < curve.length; ++i)
+            {
+                assertTrue("error too large at index " + i, Math.abs(lossy[i] - curve[i]) <= maxError);
+            }
+        }
+    }
+
+    @Test
+    public void testChunkStats() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR)
+                    .track(2, Encoding.INT32_RLE)
+                    .track(3, Encoding.UTF8_STRING)
+                    .build();
+            final Descriptor textDescriptor = store.descriptorBuilder()
+                    .track(1, Encoding.UTF8_STRING)
+                    .build();
+
+            final int[] integers = {5, -3, Integer.MAX_VALUE, 12, Integer.MAX_VALUE, 7};
+            final int[] flat = new int[100];
+            Arrays.fill(flat, -2);
+
+            store.put(store.chunkBuilder(descriptor).timestamp(1).integers(1, integers).integers(2, flat).text(3, "x").build());
+            store.put(store.chunkBuilder(textDescriptor).timestamp(2).text(1, "no integers").build());
+
+            for (final Chunk chunk : new Chunk[]{store.findByTimestamp(1), store.findByTimestamp(1, 3)})
+            {
+                final Chunk.Stats stats = chunk.getStats(1);
+                assertEquals("wrong count", stats.getCount(), integers.length);
+                assertEquals("wrong min", stats.getMin(), -3);
+                assertEquals("wrong max", stats.getMax(), Integer.MAX_VALUE);
+                assertEquals("wrong sum", stats.getSum(), 21L + 2L * Integer.MAX_VALUE);
+                assertEquals("wrong first", stats.getFirst(), 5);
+                assertEquals("wrong last", stats.getLast(), 7);
+
+                final Chunk.Stats flatStats = chunk.getStats(2);
+                assertEquals("wrong constant field count", flatStats.getCount(), flat.length);
+                assertEquals("wrong constant field min", flatStats.getMin(), -2);
+                assertEquals("wrong constant field max", flatStats.getMax(), -2);
+                assertEquals("wrong constant field sum", flatStats.getSum(), -200L);
+
+                assertNull("text track has stats", chunk.getStats(3));
+                assertNull("unknown track has stats", chunk.getStats(4));
+            }
+
+            assertNull("stats of chunk without int[] fields", store.findByTimestamp(2).getStats(1));
+
+            // replacing the chunk replaces its stats
+            store.put(store.chunkBuilder(textDescriptor).timestamp(1).text(1, "replaced").build());
+            assertNull("stats of replaced chunk remain", store.findByTimestamp(1).getStats(1));
+
+            try (ChunkCursor cursor = store.scan(0, 3))
+            {
+                assertTrue("no chunk found by scan", cursor.hasNext());
+                assertNull("stats of replaced chunk remain in scan", cursor.next().getStats(1));
+            }
+        }
+    }
+
+    @Test
+    public void testAggregate() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        final AggregateFunction[] functions = AggregateFunction.values();
+        final double[][] expected = new double[functions.length][];
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR)
+                    .track(2, Encoding.UTF8_STRING)
+                    .build();
+
+            final Random random = new Random(42);
+            final List<Chunk> chunks = new ArrayList<>();
+            for (int ts = 0; ts < 100; ++ts)
+            {
+                if (ts >= 45 && ts < 65)
+                {
+                    continue; // gap with empty windows
+                }
+
+                final int[] integers = new int[1 + random.nextInt(20)];
+                for (int i = 0; i < integers.length; ++i)
+                {
+                    integers[i] = random.nextInt(2000) - 1000;
+                }
+
+                chunks.add(store.chunkBuilder(descriptor).timestamp(ts).integers(1, integers).text(2, "x").build());
+            }
+            store.putAll(chunks);
+
+            // compute expected values for windows of 10 seconds from 5 to 95 (exclusive)
+            final int windows = 9;
+            for (int f = 0; f < functions.length; ++f)
+            {
+                expected[f] = new double[windows];
+                for (int w = 0; w < windows; ++w)
+                {
+                    final List<Integer> values = new ArrayList<>();
+                    for (final Chunk chunk : store.findByTimestampRange(5 + w * 10, 15 + w * 10))
+                    {
+                        for (final int value : chunk.getIntegers(1))
+                        {
+                            values.add(value);
+                        }
+                    }
+
+                    final double value;
+                    switch (functions[f])
+                    {
+                        case MIN:
+                            value = values.isEmpty() ? Double.NaN : values.stream().mapToInt(Integer::intValue).min().getAsInt();
+                            break;
+                        case MAX:
+                            value = values.isEmpty() ? Double.NaN : values.stream().mapToInt(Integer::intValue).max().getAsInt();
+                            break;
+                        case AVG:
+                            value = values.isEmpty() ? Double.NaN : (double) values.stream().mapToLong(Integer::longValue).sum() / values.size();
+                            break;
+                        case COUNT:
+                            value = values.size();
+                            break;
+                        case FIRST:
+                            value = values.isEmpty() ? Double.NaN : values.get(0);
+                            break;
+                        default:
+                            value = values.isEmpty() ? Double.NaN : values.get(values.size() - 1);
+                            break;
+                    }
+                    expected[f][w] = value;
+                }
+            }
+
+            final Aggregation aggregation = store.aggregate(1, 5, 95, 10, functions);
+            assertEquals("wrong number of windows", aggregation.size(), windows);
+            assertEquals("wrong window timestamp", aggregation.getTimestamps()[8], 85L);
+            assertTrue("empty window has min", Double.isNaN(aggregation.getValues(AggregateFunction.MIN)[4]));
+            for (int f = 0; f < functions.length; ++f)
+            {
+                assertArrayEquals("wrong " + functions[f] + " values", aggregation.getValues(functions[f]), expected[f], 1e-9);
+            }
+
+            assertEquals("text track aggregated", store.aggregate(2, 0, 100, 100, AggregateFunction.COUNT).getValues(AggregateFunction.COUNT)[0], 0.0, 0.0);
+
+            try
+            {
+                store.aggregate(1, 0, 100, 10, AggregateFunction.MAX).getValues(AggregateFunction.MIN);
+                fail("values of function that has not been requested returned");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+
+        // chunks stored without statistics are decoded instead
+        final SQLiteConnection db = new SQLiteConnection(file).open(false);
+        try
+        {
+            db.exec("DELETE FROM track_stats WHERE ts < 30");
+        }
+        finally
+        {
+            db.dispose();
+        }
+
+        try (Store store = Multiflex.openSqlite(file, false))
+        {
+            final Aggregation aggregation = store.aggregate(1, 5, 95, 10, functions);
+            for (int f = 0; f < functions.length; ++f)
+            {
+                assertArrayEquals("wrong " + functions[f] + " values without stats", aggregation.getValues(functions[f]), expected[f], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testSubSecondChunks() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            // ten chunks of 100ms each and a single chunk spanning a minute
+            final List<Chunk> chunks = new ArrayList<>();
+            for (int i = 0; i < 10; ++i)
+            {
+                chunks.add(store.chunkBuilder(descriptor).timestampMicros(i * 100000L).durationMicros(100000L).integers(1, new int[]{i, i}).build());
+            }
+            chunks.add(store.chunkBuilder(descriptor).timestamp(10).durationMicros(60000000L).integers(1, new int[]{42}).build());
+            store.putAll(chunks);
+
+            try (ChunkCursor cursor = store.scanMicros(200000L, 500000L))
+            {
+                for (long tsMicros = 200000L; tsMicros < 500000L; tsMicros += 100000L)
+                {
+                    assertTrue("missing sub-second chunk", cursor.hasNext());
+                    final Chunk chunk = cursor.next();
+                    assertEquals("wrong timestamp", chunk.getTimestampMicros(), tsMicros);
+                    assertEquals("wrong timestamp seconds", chunk.getTimestamp(), 0L);
+                    assertEquals("wrong duration", chunk.getDurationMicros(), 100000L);
+                    assertArrayEquals("wrong integers", chunk.getIntegers(1), new int[]{(int) (tsMicros / 100000L), (int) (tsMicros / 100000L)});
+                }
+                assertFalse("chunk outside of range", cursor.hasNext());
+            }
+
+            assertEquals("wrong number of chunks in first second", store.findByTimestampRange(0, 1).size(), 10);
+            assertEquals("wrong duration", store.findByTimestamp(10).getDurationMicros(), 60000000L);
+            assertEquals("wrong duration of partial chunk", store.findByTimestamp(10, 1).getDurationMicros(), 60000000L);
+            assertEquals("wrong maximum timestamp", store.findMaxTimestamp(), 10L);
+
+            final double[] counts = store.aggregate(1, 0, 20, 1, AggregateFunction.COUNT).getValues(AggregateFunction.COUNT);
+            assertEquals("wrong count of sub-second chunks", counts[0], 20.0, 0.0);
+            assertEquals("wrong count of long chunk", counts[10], 1.0, 0.0);
+
+            try
+            {
+                store.chunkBuilder(descriptor).durationMicros(0L);
+                fail("zero duration accepted");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRollups() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        final AggregateFunction[] functions = {AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.AVG, AggregateFunction.COUNT};
+        final long days = 3 * 86400L;
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR)
+                    .track(2, Encoding.INT32_DELTA_ZIGZAG_FAST_PFOR)
+                    .build();
+
+            final Random random = new Random(42);
+            final List<Chunk> chunks = new ArrayList<>();
+            for (long ts = 0; ts < days / 2; ts += 37)
+            {
+                chunks.add(store.chunkBuilder(descriptor).timestamp(ts).integers(1, randomIntegers(random)).integers(2, randomIntegers(random)).build());
+            }
+            store.putAll(chunks);
+
+            // without rollups the chunks are aggregated
+            assertOverviewEquals(store, store.overview(1, 0, days, 96), 1, 0, days, 2700, functions);
+
+            store.rebuildRollups();
+
+            // 2700 second windows from the 15 minute level
+            final Aggregation overview = store.overview(1, 0, days, 100);
+            assertEquals("wrong number of windows", overview.size(), 96);
+            assertOverviewEquals(store, overview, 1, 0, days, 2700, functions);
+
+            // rollups are maintained when appending and replacing chunks
+            chunks.clear();
+            for (long ts = days / 2; ts < days; ts += 37)
+            {
+                chunks.add(store.chunkBuilder(descriptor).timestamp(ts).integers(1, randomIntegers(random)).integers(2, randomIntegers(random)).build());
+            }
+            store.putAll(chunks);
+            store.put(store.chunkBuilder(descriptor).timestamp(37 * 100).integers(1, new int[]{1}).integers(2, new int[]{2}).build());
+
+            final Descriptor textDescriptor = store.descriptorBuilder()
+                    .track(3, Encoding.UTF8_STRING)
+                    .build();
+            store.put(store.chunkBuilder(textDescriptor).timestamp(37 * 200).text(3, "replaced").build());
+
+            assertOverviewEquals(store, store.overview(1, 0, days, 100), 1, 0, days, 2700, functions);
+            assertOverviewEquals(store, store.overview(2, 0, days, 100), 2, 0, days, 2700, functions);
+            assertOverviewEquals(store, store.overview(1, 0, days, 3), 1, 0, days, 86400, functions);
+
+            // unaligned range, the first window begins at the start of the hour
+            final Aggregation unaligned = store.overview(2, 4000, 50000, 10);
+            assertEquals("wrong first window", unaligned.getTimestamps()[0], 3600L);
+            assertOverviewEquals(store, unaligned, 2, 3600, 50400, 7200, functions);
+        }
+
+        final SQLiteConnection db = new SQLiteConnection(file).open(false);
+        try
+        {
+            final SQLiteStatement countDays = db.prepare("SELECT count(*) FROM rollup WHERE level = 86400 AND track_id = 1");
+            try
+            {
+                assertTrue("no rollups", countDays.step());
+                assertEquals("wrong number of day buckets", countDays.columnInt(0), 3);
+            }
+            finally
+            {
+                countDays.dispose();
+            }
+        }
+        finally
+        {
+            db.dispose();
+        }
+    }
+
+    private static int[] randomIntegers(Random random)
+    {
+        final int[] integers = new int[1 + random.nextInt(10)];
+        for (int i = 0; i < integers.length; ++i)
+        {
+            integers[i] = random.nextInt(20000) - 10000;
+        }
+
+        return integers;
+    }
+
+    private static void assertOverviewEquals(Store store, Aggregation overview, int trackId, long tsFirst, long tsLast, long windowSeconds, AggregateFunction... functions) throws StoreException
+    {
+        final Aggregation expected = store.aggregate(trackId, tsFirst, tsLast, windowSeconds, functions);
+        assertArrayEquals("wrong window timestamps", overview.getTimestamps(), expected.getTimestamps());
+        for (final AggregateFunction function : functions)
+        {
+            assertArrayEquals("wrong " + function + " values", overview.getValues(function), expected.getValues(function), 1e-9);
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        final AggregateFunction[] functions = {AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.AVG, AggregateFunction.COUNT};
+        final int[][] integers = new int[600][];
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR)
+                    .track(2, Encoding.INT64_ZIGZAG_VAR_BYTE)
+                    .track(3, Encoding.FLOAT64_XOR)
+                    .track(4, Encoding.UTF8_LZ4)
+                    .track(5, Encoding.BINARY_DEFLATE)
+                    .build();
+
+            // one chunk per second with a gap at 300
+            final Random random = new Random(42);
+            final List<Chunk> chunks = new ArrayList<>();
+            for (int ts = 0; ts < integers.length; ++ts)
+            {
+                if (ts != 300)
+                {
+                    integers[ts] = randomIntegers(random);
+                    chunks.add(store.chunkBuilder(descriptor).timestamp(ts)
+                            .integers(1, integers[ts])
+                            .longs(2, new long[]{ts, ts * 1000000000L})
+                            .doubles(3, new double[]{ts / 3.0})
+                            .text(4, ts % 7 != 0 ? "chunk " + ts : "")
+                            .binary(5, ByteBuffer.wrap(("binary " + ts).getBytes(StandardCharsets.UTF_8)))
+                            .build());
+                }
+            }
+
+            // dictionary encoded text is never merged
+            final Descriptor dictionaryDescriptor = store.descriptorBuilder()
+                    .track(6, Encoding.UTF8_DICTIONARY)
+                    .build();
+            chunks.add(store.chunkBuilder(dictionaryDescriptor).timestamp(1000).text(6, "a").build());
+            chunks.add(store.chunkBuilder(dictionaryDescriptor).timestamp(1001).text(6, "b").build());
+
+            store.putAll(chunks);
+            store.rebuildRollups();
+
+            assertEquals("wrong number of removed chunks", store.compact(0, 2000, 120), 593);
+            assertEquals("merged chunks were compacted again", store.compact(0, 2000, 120), 0);
+
+            final List<Chunk> merged = store.findByTimestampRange(0, 600);
+            assertEquals("wrong number of merged chunks", merged.size(), 6);
+            assertEquals("wrong duration of merged chunk", merged.get(0).getDurationMicros(), 120 * 1000000L);
+            assertArrayEquals("wrong merged integers", merged.get(0).getIntegers(1), concat(integers, 0, 120));
+
+            // stale minute buckets of the merged chunks are removed
+            assertOverviewEquals(store, store.overview(1, 0, 600, 10), 1, 0, 600, 60, functions);
+
+            // merge already merged chunks
+            assertEquals("wrong number of removed chunks", store.compact(0, 2000, 600), 4);
+            assertEquals("wrong number of merged chunks", store.findByTimestampRange(0, 600).size(), 2);
+            assertOverviewEquals(store, store.overview(1, 0, 600, 10), 1, 0, 600, 60, functions);
+
+            for (int ts = 0; ts < integers.length; ++ts)
+            {
+                final Chunk chunk = store.findByTimestamp(ts);
+                if (ts == 300)
+                {
+                    assertNull("found chunk within gap", chunk);
+                    continue;
+                }
+
+                assertNotNull("chunk not found: " + ts, chunk);
+                assertEquals("wrong timestamp", chunk.getTimestamp(), ts);
+                assertEquals("wrong duration", chunk.getDurationMicros(), 1000000L);
+                assertArrayEquals("wrong integers", chunk.getIntegers(1), integers[ts]);
+                assertArrayEquals("wrong longs", chunk.getLongs(2), new long[]{ts, ts * 1000000000L});
+                assertArrayEquals("wrong doubles", chunk.getDoubles(3), new double[]{ts / 3.0}, 0.0);
+                assertEquals("wrong text", chunk.getText(4), ts % 7 != 0 ? "chunk " + ts : "");
+                assertEquals("wrong binary", chunk.getBinary(5), ByteBuffer.wrap(("binary " + ts).getBytes(StandardCharsets.UTF_8)));
+                assertArrayEquals("wrong single track integers", store.findByTimestamp(ts, 1).getIntegers(1), integers[ts]);
+            }
+
+            assertEquals("dictionary chunk was merged", store.findByTimestamp(1001).getText(6), "b");
+        }
+
+        final SQLiteConnection db = new SQLiteConnection(file).open(false);
+        try
+        {
+            final SQLiteStatement countChunks = db.prepare("SELECT count(*) FROM track");
+            try
+            {
+                assertTrue("no chunks", countChunks.step());
+                assertEquals("wrong number of chunks", countChunks.columnInt(0), 4);
+            }
+            finally
+            {
+                countChunks.dispose();
+            }
+        }
+        finally
+        {
+            db.dispose();
+        }
+    }
+
+    private static int[] concat(int[][] integers, int begin, int end)
+    {
+        final IntBuffer buffer = IntBuffer.allocate(Arrays.stream(integers, begin, end).mapToInt(values -> values.length).sum());
+        for (int i = begin; i < end; ++i)
+        {
+            buffer.put(integers[i]);
+        }
+
+        return buffer.array();
+    }
+
+    @Test
+    public void testReadRangesAfterCompact() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        final AggregateFunction[] functions = {
+                AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.AVG,
+                AggregateFunction.COUNT, AggregateFunction.FIRST, AggregateFunction.LAST
+        };
+        final int[][] integers = new int[600][];
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_VAR_BYTE_FAST_PFOR)
+                    .track(2, Encoding.UTF8_STRING)
+                    .build();
+
+            final Random random = new Random(23);
+            final List<Chunk> chunks = new ArrayList<>();
+            final StringBuilder texts = new StringBuilder();
+            for (int ts = 0; ts < integers.length; ++ts)
+            {
+                integers[ts] = randomIntegers(random);
+                chunks.add(store.chunkBuilder(descriptor).timestamp(ts).integers(1, integers[ts]).text(2, ts + ",").build());
+                texts.append(ts).append(',');
+            }
+
+            store.rebuildRollups();
+            store.putAll(chunks);
+
+            final Aggregation expectedAggregation = store.aggregate(1, 30, 570, 45, functions);
+            final Aggregation expectedOverview = store.overview(1, 0, 600, 5);
+
+            assertEquals("wrong number of removed chunks", store.compact(0, 600, 300), 598);
+
+            // ranges beginning within a merged chunk
+            final List<Chunk> range = store.findByTimestampRange(150, 450);
+            assertEquals("wrong number of chunks in range", range.size(), 2);
+            assertEquals("wrong timestamp of sliced chunk", range.get(0).getTimestamp(), 150);
+            assertEquals("wrong duration of sliced chunk", range.get(0).getDurationMicros(), 150 * 1000000L);
+            assertArrayEquals("wrong integers of sliced chunk", range.get(0).getIntegers(1), concat(integers, 150, 300));
+            assertEquals("wrong text of sliced chunk", range.get(0).getText(2), texts.substring(texts.indexOf("150,"), texts.indexOf("300,")));
+            assertEquals("wrong timestamp of sliced chunk", range.get(1).getTimestamp(), 300);
+            assertArrayEquals("wrong integers of sliced chunk", range.get(1).getIntegers(1), concat(integers, 300, 450));
+            assertEquals("wrong integer count of sliced chunk", range.get(1).getIntegerCount(1), concat(integers, 300, 450).length);
+            assertEquals("wrong stats of sliced chunk", range.get(1).getStats(1).getLast(), integers[449][integers[449].length - 1]);
+
+            final List<Chunk> innerRange = store.findByTimestampRange(10, 20);
+            assertEquals("wrong number of chunks in range", innerRange.size(), 1);
+            assertArrayEquals("wrong integers of sliced chunk", innerRange.get(0).getIntegers(1), concat(integers, 10, 20));
+            assertTrue("no chunk begins within range", store.findByTimestampRange(299, 299).isEmpty());
+
+            try (ChunkCursor cursor = store.scan(150, 450))
+            {
+                final IntBuffer scanned = IntBuffer.allocate(concat(integers, 150, 450).length);
+                long ts = 150;
+                while (cursor.hasNext())
+                {
+                    final Chunk chunk = cursor.next();
+                    assertEquals("wrong timestamp of scanned chunk", chunk.getTimestamp(), ts);
+                    ts += chunk.getDurationMicros() / 1000000L;
+                    chunk.getIntegers(1, scanned);
+                }
+
+                assertEquals("scan ended early", ts, 450);
+                assertArrayEquals("wrong scanned integers", scanned.array(), concat(integers, 150, 450));
+            }
+
+            // merged chunks are spread over the windows of their parts
+            assertAggregationEquals(store.aggregate(1, 30, 570, 45, functions), expectedAggregation, functions);
+            assertAggregationEquals(store.overview(1, 0, 600, 5), expectedOverview, AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.AVG, AggregateFunction.COUNT);
+
+            store.rebuildRollups();
+            assertAggregationEquals(store.overview(1, 0, 600, 5), expectedOverview, AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.AVG, AggregateFunction.COUNT);
+        }
+    }
+
+    private static void assertAggregationEquals(Aggregation aggregation, Aggregation expected, AggregateFunction... functions)
+    {
+        assertArrayEquals("wrong window timestamps", aggregation.getTimestamps(), expected.getTimestamps());
+        for (final AggregateFunction function : functions)
+        {
+            assertArrayEquals("wrong " + function + " values", aggregation.getValues(function), expected.getValues(function), 1e-9);
+        }
+    }
+
+    @Test
+    public void testGetIntegersIntoTimeline() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor descriptor = store.descriptorBuilder()
+                    .track(1, Encoding.INT32_CENTER31BIT_VAR_BYTE_FAST_PFOR)
+                    .build();
+
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+            final int[] wave = Wave.sine(Short.MIN_VALUE, Short.MAX_VALUE, 1000, 500, 7);
+            final int seconds = 10;
+            final int[] expected = new int[wave.length * seconds];
+            for (int t = 0; t < seconds; ++t)
+            {
+                builder.timestamp(t);
+                builder.integers(1, wave);
+                store.put(builder.build());
+
+                System.arraycopy(wave, 0, expected, t * wave.length, wave.length);
+            }
+
+            final int[] timeline = new int[expected.length];
+            final IntBuffer directTimeline = ByteBuffer.allocateDirect(expected.length * 4).asIntBuffer();
+            try (ChunkCursor cursor = store.scan(0, seconds))
+            {
+                int offset = 0;
+                while (cursor.hasNext())
+                {
+                    final Chunk chunk = cursor.next();
+                    assertEquals("wrong integer count", chunk.getIntegerCount(1), wave.length);
+                    assertEquals("missing track has integer count", chunk.getIntegerCount(2), -1);
+
+                    offset += chunk.getIntegers(1, timeline, offset);
+                    chunk.getIntegers(1, directTimeline);
+                }
+
+                assertEquals("wrong number of integers decoded", offset, expected.length);
+            }
+
+            final int[] directValues = new int[expected.length];
+            directTimeline.flip();
+            directTimeline.get(directValues);
+
+            assertArrayEquals("wrong timeline is returned", timeline, expected);
+            assertArrayEquals("wrong timeline is returned from IntBuffer", directValues, expected);
+        }
+    }
+
+
+    @Test
+    public void testFindByTimestampSingleTrack() throws Exception
+    {
+        final File file = File.createTempFile(MultiflexTest.class.getSimpleName(), ".mfx");
+
+        try (Store store = Multiflex.openSqlite(file, true))
+        {
+            final Descriptor.Builder descriptorBuilder = store.descriptorBuilder();
+            for (int trackId = 0; trackId < 60; ++trackId)
+            {
+                descriptorBuilder.track(trackId, Encoding.INT32_DELTA_VAR_BYTE_FAST_PFOR);
+            }
+
+            final Descriptor descriptor = descriptorBuilder.build();
+            final Chunk.Builder builder = store.chunkBuilder(descriptor);
+
+            builder.timestamp(7);
+            for (int trackId = 0; trackId < 60; ++trackId)
+            {
+                builder.integers(trackId, Wave.sine(Short.MIN_VALUE, Short.MAX_VALUE, 1000, 1000, trackId + 1));
+            }
+
+            store.put(builder.build());
+
+            for (final int trackId : new int[]{0, 31, 59})
+            {
+                try (final Chunk chunk = store.findByTimestamp(7, trackId))
+                {
+                    assertArrayEquals("wrong wave is returned", chunk.getIntegers(trackId), Wave.sine(Short.MIN_VALUE, Short.MAX_VALUE, 1000, 1000, trackId + 1));
+
+                    try
+                    {
+                        chunk.getIntegers(trackId == 0 ? 1 : 0);
+                        fail("track that has not been read is accessible");
+                    }
+                    catch (StoreException e)
+                    {
+                        // expected
+                    }
+                }
+            }
+
+            assertNull("chunk found for missing timestamp", store.findByTimestamp(8, 0));
+        }
+    }
+
+
     @Test
     public void testPutChunkGetChunkOptimalSize() throws Exception
     {
@@ -174,7 +1862,7 @@ public class MultiflexTest
             }
 
             assertNotNull("id is invalid UUID", store.getId());
-            assertEquals("version is not set", store.getVersion(), 1);
+            assertEquals("version is not set", store.getVersion(), 6);
             assertEquals("epoch not stored correctly", store.getEpoch(), epochMicros);
 
             // read chunk by chunk, comparing values with original values stored in rawFile
@@ -198,6 +1886,7 @@ public class MultiflexTest
                         }
                         while (rawBuffer.hasRemaining());
 
+                        rawBuffer.flip();
                         rawBuffer.asIntBuffer().get(rawWave);
 
                         assertArrayEquals("wrong wave is returned", chunk.getIntegers(42), rawWave);